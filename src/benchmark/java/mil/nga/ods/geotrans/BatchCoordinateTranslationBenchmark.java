@@ -0,0 +1,109 @@
+package mil.nga.ods.geotrans;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * Compares the throughput of translating DMS strings one request at a time
+ * with doCoordinateTranslation() against one doBatchCoordinateTranslation()
+ * request of the same strings. BatchCoordinateTranslationTest checks that
+ * both give the same results.
+ * <p>
+ * Usage: BatchCoordinateTranslationBenchmark [coordinates [rounds]]
+ */
+public class BatchCoordinateTranslationBenchmark {
+
+    private static final int DEFAULT_COORDINATES = 20000;
+    private static final int DEFAULT_ROUNDS = 5;
+
+    private final GeoTransMaster geoTransMaster = new GeoTransMaster();
+
+    private final String[] coordinateStrings;
+    private final int[] coordinateTypes;
+
+    public BatchCoordinateTranslationBenchmark(int coordinates) {
+        coordinateStrings = new String[coordinates];
+        coordinateTypes = new int[coordinates];
+
+        for (int i = 0; i < coordinates; i++) {
+            // Alternate latitudes and longitudes in DMS and DM notation.
+            int degrees = i % 89;
+            int minutes = (i / 89) % 60;
+            int seconds = (i / 5340) % 60;
+
+            if (i % 2 == 0) {
+                coordinateStrings[i] = degrees + " " + minutes + " " + seconds + (i % 4 == 0 ? "N" : "S");
+                coordinateTypes[i] = 0;
+            } else {
+                coordinateStrings[i] = (degrees * 2) + " " + minutes + "." + seconds + (i % 4 == 1 ? "E" : "W");
+                coordinateTypes[i] = 1;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int coordinates = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COORDINATES;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+
+        new BatchCoordinateTranslationBenchmark(coordinates).run(rounds);
+    }
+
+    /**
+     * Runs the given number of rounds and prints the rates of each; the first
+     * rounds include the JIT warm-up.
+     */
+    public void run(int rounds) throws Exception {
+        String batchRequest = buildBatchRequest();
+        String[] singleRequests = new String[coordinateStrings.length];
+
+        for (int i = 0; i < singleRequests.length; i++) {
+            singleRequests[i] = buildSingleRequest(i);
+        }
+
+        System.out.println("Coordinate translation of " + coordinateStrings.length + " strings, strings/s:");
+        System.out.println("round  doCoordinateTranslation()  doBatchCoordinateTranslation()");
+
+        int checksum = 0;
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (String request : singleRequests) {
+                checksum += geoTransMaster.doCoordinateTranslation(request).getString("CoordinateString").length();
+            }
+            long single = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            JSONArray batchResults = geoTransMaster.doBatchCoordinateTranslation(batchRequest).getJSONArray("CoordinateStrings");
+            long batch = System.nanoTime() - start;
+
+            for (int i = 0; i < batchResults.length(); i++) {
+                checksum -= batchResults.getString(i).length();
+            }
+
+            System.out.println(String.format("%5d  %25d  %30d", round, rate(single), rate(batch)));
+        }
+
+        if (checksum != 0) {
+            throw new IllegalStateException("The batch results differ from the single translations!");
+        }
+    }
+
+    private String buildSingleRequest(int i) throws Exception {
+        return new JSONObject().put("inputCoordinateString", coordinateStrings[i]).put("inputCoordinateType", String.valueOf(coordinateTypes[i]))
+                .toString();
+    }
+
+    private String buildBatchRequest() throws Exception {
+        JSONArray strings = new JSONArray();
+        JSONArray types = new JSONArray();
+
+        for (int i = 0; i < coordinateStrings.length; i++) {
+            strings.put(coordinateStrings[i]);
+            types.put(String.valueOf(coordinateTypes[i]));
+        }
+        return new JSONObject().put("inputCoordinateStrings", strings).put("inputCoordinateTypes", types).toString();
+    }
+
+    private long rate(long nanos) {
+        return coordinateStrings.length * 1000000000L / Math.max(1, nanos);
+    }
+}
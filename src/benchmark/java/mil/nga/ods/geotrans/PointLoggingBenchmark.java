@@ -0,0 +1,96 @@
+package mil.nga.ods.geotrans;
+
+import geotrans3.enumerations.Range;
+import mil.nga.ods.geotrans.utils.ConversionLog;
+import mil.nga.ods.geotrans.utils.InputVerifier;
+import mil.nga.ods.geotrans.utils.StringToRawVal;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the per-point cost of verifying and formatting a point through
+ * the gated logging of InputVerifier and StringToRawVal, with the per-point
+ * logging compiled out (-Dgeotrans.log.points=false) and compiled in
+ * (-Dgeotrans.log.points=true). ConversionLog.TRACE_POINTS is read once when
+ * the class loads, so each setting runs in its own child JVM on the same
+ * class path.
+ * <p>
+ * Run it with the logger levels used in production, with debug off, so the
+ * difference is what the points pay for logging that is not written.
+ * <p>
+ * Usage: PointLoggingBenchmark [points [rounds]]
+ */
+public class PointLoggingBenchmark {
+
+    private static final String CHILD = "--child";
+    private static final String TRACE_POINTS_PROPERTY = "geotrans.log.points";
+
+    private static final int DEFAULT_POINTS = 200000;
+    private static final int DEFAULT_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(CHILD)) {
+            measure(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+
+        String points = args.length > 0 ? args[0] : String.valueOf(DEFAULT_POINTS);
+        String rounds = args.length > 1 ? args[1] : String.valueOf(DEFAULT_ROUNDS);
+
+        for (String tracePoints : new String[] { "false", "true" }) {
+            List<String> command = new ArrayList<String>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.add("-D" + TRACE_POINTS_PROPERTY + "=" + tracePoints);
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(PointLoggingBenchmark.class.getName());
+            command.add(CHILD);
+            command.add(points);
+            command.add(rounds);
+
+            int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exitCode != 0) {
+                throw new IllegalStateException("The benchmark JVM with " + TRACE_POINTS_PROPERTY + "=" + tracePoints + " exited with "
+                        + exitCode);
+            }
+        }
+    }
+
+    private static void measure(int points, int rounds) throws Exception {
+        InputVerifier iv = new InputVerifier();
+        StringToRawVal stringToRawVal = new StringToRawVal(Range._180_180, false, ' ');
+        Map<String, Object> input = new HashMap<String, Object>();
+        BigDecimal[] latitudes = new BigDecimal[points];
+        BigDecimal[] longitudes = new BigDecimal[points];
+
+        for (int i = 0; i < points; i++) {
+            latitudes[i] = BigDecimal.valueOf((i % 180000) / 1000.0 - 90.0);
+            longitudes[i] = BigDecimal.valueOf((i % 360000) / 1000.0 - 180.0);
+        }
+        input.put("sourceLatitude", " 45.5 ");
+
+        System.out.println("Verifying and formatting " + points + " points with " + TRACE_POINTS_PROPERTY + "="
+                + ConversionLog.TRACE_POINTS + ", ns/point:");
+
+        long checksum = 0;
+        for (int round = 1; round <= rounds; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < points; i++) {
+                checksum += iv.verifyInputStringIsValid(input, "sourceLatitude").length();
+                checksum += stringToRawVal.latitudeToString(latitudes[i], false, true, true).length();
+                checksum += stringToRawVal.longitudeToString(longitudes[i], false, true, true).length();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(String.format("round %d: %d", round, elapsed / points));
+        }
+
+        // Keeps the JIT from dropping the work.
+        System.out.println("checksum " + checksum);
+    }
+}
@@ -0,0 +1,77 @@
+package mil.nga.ods.geotrans;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * Compares converting UTM coordinates that interleave zones and hemispheres
+ * in input order against converting them grouped by zone
+ * (-Dgeotrans.bulk.groupByZone). Both runs go through doConversion() in the
+ * same JVM, alternating within every round. ZoneGroupingTest checks that both
+ * give the same results.
+ * <p>
+ * Usage: ZoneGroupingBenchmark [coordinates [rounds]]
+ */
+public class ZoneGroupingBenchmark {
+
+    private static final String GROUP_BY_ZONE = "geotrans.bulk.groupByZone";
+
+    private static final int DEFAULT_COORDINATES = 20000;
+    private static final int DEFAULT_ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int coordinates = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COORDINATES;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+
+        GeoTransMaster geoTransMaster = new GeoTransMaster();
+        String request = buildRequest(coordinates);
+
+        System.out.println("Conversion of " + coordinates + " mixed zone UTM coordinates, ns/coordinate:");
+        System.out.println("round  input order  grouped by zone");
+
+        try {
+            for (int round = 1; round <= rounds; round++) {
+                System.setProperty(GROUP_BY_ZONE, "false");
+                long start = System.nanoTime();
+                String inputOrderResult = geoTransMaster.doConversion(request).toString();
+                long inputOrder = System.nanoTime() - start;
+
+                System.setProperty(GROUP_BY_ZONE, "true");
+                start = System.nanoTime();
+                String groupedResult = geoTransMaster.doConversion(request).toString();
+                long grouped = System.nanoTime() - start;
+
+                if (!inputOrderResult.equals(groupedResult)) {
+                    throw new IllegalStateException("The grouped results differ from the input order results!");
+                }
+
+                System.out.println(String.format("%5d  %11d  %15d", round, inputOrder / coordinates, grouped / coordinates));
+            }
+        } finally {
+            System.clearProperty(GROUP_BY_ZONE);
+        }
+    }
+
+    private static String buildRequest(int count) throws Exception {
+        JSONArray coordinates = new JSONArray();
+
+        for (int i = 0; i < count; i++) {
+            // Consecutive coordinates are never in the same zone.
+            coordinates.put(new JSONObject()
+                    .put("sourceZoneData", String.valueOf(1 + (i * 37) % 60))
+                    .put("sourceHemisphere", i % 2 == 0 ? "N" : "S")
+                    .put("sourceEasting", String.valueOf(300000 + (i % 4000) * 100))
+                    .put("sourceNorthing", String.valueOf(1000000 + (i % 7000) * 1000)));
+        }
+
+        return new JSONObject()
+                .put("sourceDatum", "WGE")
+                .put("sourceCoordinateType", "34")
+                .put("sourceZone", "false")
+                .put("targetDatum", "WGE")
+                .put("targetCoordinateType", "10")
+                .put("targetHeightType", "0")
+                .put("sourceCoordinates", coordinates)
+                .toString();
+    }
+}
@@ -6,17 +6,44 @@ import geotrans3.coordinates.CoordinateTuple;
 import geotrans3.enumerations.CoordinateType;
 import geotrans3.enumerations.HeightType;
 import geotrans3.exception.CoordinateConversionException;
-import geotrans3.jni.JNICoordinateConversionService;
 import geotrans3.jni.JNIDatumLibrary;
 import geotrans3.jni.JNIEllipsoidLibrary;
 import geotrans3.misc.Info;
+import geotrans3.misc.StringToVal;
 import geotrans3.parameters.CoordinateSystemParameters;
 import geotrans3.parameters.GeodeticParameters;
-import mil.nga.ods.geotrans.utils.CustomConversion;
+import mil.nga.ods.geotrans.utils.BatchCoordinateTranslator;
+import mil.nga.ods.geotrans.utils.BinaryBulkConversion;
+import mil.nga.ods.geotrans.utils.BulkCompression;
+import mil.nga.ods.geotrans.utils.BulkResultHandler;
+import mil.nga.ods.geotrans.utils.BulkRowErrorListener;
+import mil.nga.ods.geotrans.utils.ConversionCoalescer;
+import mil.nga.ods.geotrans.utils.ConversionLog;
+import mil.nga.ods.geotrans.utils.ConversionSession;
 import mil.nga.ods.geotrans.utils.GeoTransConstants;
 import mil.nga.ods.geotrans.utils.GeoTransUtility;
+import mil.nga.ods.geotrans.utils.GeometryConversion;
+import mil.nga.ods.geotrans.utils.GeometryResultHandler;
+import mil.nga.ods.geotrans.utils.GridConversion;
+import mil.nga.ods.geotrans.utils.IncrementalBulkConversion;
+import mil.nga.ods.geotrans.utils.NativeConversionService;
+import mil.nga.ods.geotrans.utils.OffHeapBulkConversion;
+import mil.nga.ods.geotrans.utils.ResumableBulkJob;
+import mil.nga.ods.geotrans.utils.SpoolWorker;
+import mil.nga.ods.geotrans.utils.StreamingConversion;
+import mil.nga.ods.geotrans.utils.TolerantBulkConversion;
+import mil.nga.ods.geotrans.utils.TransformGrid;
 
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
 
 import org.codehaus.jettison.json.JSONArray;
 import org.codehaus.jettison.json.JSONException;
@@ -30,6 +57,9 @@ public class GeoTransMaster {
     private static final String JNIMSP_LIB_NAME = "jnimsp_ccs";
     private static final String MSPDTCC_LIB_NAME = "MSPdtcc";
 
+    // Shared by all instances, so identical requests coalesce across them.
+    private static final ConversionCoalescer COALESCER = new ConversionCoalescer();
+
     static {
         log.debug("Loading C++ libraries {} and {}", MSPDTCC_LIB_NAME, JNIMSP_LIB_NAME);
 
@@ -45,45 +75,631 @@ public class GeoTransMaster {
         return (String) assembleAndExecuteConversion(new GeoTransUtility(fileInput), true);
     }
 
+    /**
+     * Bulk conversion of a file on disk. The file is memory mapped and its
+     * coordinate records are parsed in place, avoiding the per line and per
+     * field copies of the InputStream variant. The file format is the same.
+     * 
+     * @param file
+     *            Bulk conversion file, at most 2GB.
+     * @return The converted coordinates, one line per input record.
+     * @throws Exception
+     */
+    public String doBulkConversion(Path file) throws Exception {
+        log.debug("Entering doBulkConversion(Path)");
+
+        return (String) assembleAndExecuteConversion(new GeoTransUtility(file), true);
+    }
+
+    /**
+     * Bulk conversion that writes its output lines, UTF-8 encoded, to a
+     * stream instead of returning them as one String. The results are
+     * formatted in parallel and written in input order. The output stream is
+     * flushed but not closed.
+     * 
+     * @param fileInput
+     *            Bulk conversion data.
+     * @param output
+     *            Destination of the converted coordinates.
+     * @throws Exception
+     */
+    public void doBulkConversion(InputStream fileInput, OutputStream output) throws Exception {
+        log.debug("Entering doBulkConversion(InputStream, OutputStream)");
+
+        executeBulkConversion(new GeoTransUtility(fileInput), output, false);
+    }
+
+    /**
+     * Memory mapped variant of doBulkConversion(InputStream, OutputStream).
+     * 
+     * @param file
+     *            Bulk conversion file, at most 2GB.
+     * @param output
+     *            Destination of the converted coordinates.
+     * @throws Exception
+     */
+    public void doBulkConversion(Path file, OutputStream output) throws Exception {
+        log.debug("Entering doBulkConversion(Path, OutputStream)");
+
+        executeBulkConversion(new GeoTransUtility(file), output, false);
+    }
+
+    /**
+     * Variant of doBulkConversion(InputStream, OutputStream) that can gzip
+     * compress the output while it is written. Gzip compressed input is
+     * detected automatically by all bulk conversion methods.
+     * 
+     * @param fileInput
+     *            Bulk conversion data, plain or gzip compressed.
+     * @param output
+     *            Destination of the converted coordinates.
+     * @param compressOutput
+     *            true to gzip compress the output.
+     * @throws Exception
+     */
+    public void doBulkConversion(InputStream fileInput, OutputStream output, boolean compressOutput) throws Exception {
+        log.debug("Entering doBulkConversion(InputStream, OutputStream, boolean)");
+
+        executeBulkConversion(new GeoTransUtility(fileInput), output, compressOutput);
+    }
+
+    /**
+     * Variant of doBulkConversion(Path, OutputStream) that can gzip compress
+     * the output while it is written.
+     * 
+     * @param file
+     *            Bulk conversion file, plain or gzip compressed.
+     * @param output
+     *            Destination of the converted coordinates.
+     * @param compressOutput
+     *            true to gzip compress the output.
+     * @throws Exception
+     */
+    public void doBulkConversion(Path file, OutputStream output, boolean compressOutput) throws Exception {
+        log.debug("Entering doBulkConversion(Path, OutputStream, boolean)");
+
+        executeBulkConversion(new GeoTransUtility(file), output, compressOutput);
+    }
+
+    /**
+     * Streaming conversion of line delimited JSON. The first line is a request
+     * header like the doConversion() input without sourceCoordinates, each
+     * following line holds one source coordinate object. One result line is
+     * written per coordinate line while the input is still being read, so
+     * unbounded feeds can be converted with constant memory. A coordinate
+     * line that fails produces an {"error", "line"} object instead of a
+     * result.
+     * 
+     * @param input
+     *            NDJSON request, UTF-8 encoded.
+     * @param output
+     *            Destination of the NDJSON results; flushed but not closed.
+     * @throws Exception
+     */
+    public void doStreamingConversion(InputStream input, OutputStream output) throws Exception {
+        log.debug("Entering doStreamingConversion()");
+
+        new StreamingConversion(input, output).run();
+
+        log.debug("Leaving doStreamingConversion()");
+    }
+
+    /**
+     * Bulk conversion of the binary coordinate format documented in
+     * BinaryBulkConversion: a text header followed by fixed width
+     * little-endian records, converted in chunks without any text parsing or
+     * formatting.
+     * 
+     * @param input
+     *            Binary bulk request.
+     * @param output
+     *            Destination of the binary results; not closed.
+     * @throws Exception
+     */
+    public void doBulkConversionBinary(ReadableByteChannel input, WritableByteChannel output) throws Exception {
+        log.debug("Entering doBulkConversionBinary()");
+
+        new BinaryBulkConversion(input, output).run();
+
+        log.debug("Leaving doBulkConversionBinary()");
+    }
+
+    /**
+     * Bulk conversion that writes its results as fixed width binary records
+     * into the given buffer instead of building them on the heap. The buffer,
+     * usually a direct buffer from OffHeapBulkConversion.allocateResultBuffer()
+     * that is reused across conversions, is handed to the handler whenever it
+     * is full and reused once the handler returns. The record layout is
+     * documented in OffHeapBulkConversion.
+     * 
+     * @param fileInput
+     *            Bulk conversion data, plain or gzip compressed.
+     * @param resultBuffer
+     *            Buffer for the result records.
+     * @param includeAccuracy
+     *            true to append CE90, LE90 and SE90 to every record.
+     * @param handler
+     *            Receiver of the result records.
+     * @throws Exception
+     */
+    public void doBulkConversion(InputStream fileInput, ByteBuffer resultBuffer, boolean includeAccuracy, BulkResultHandler handler)
+            throws Exception {
+        log.debug("Entering doBulkConversion(InputStream, ByteBuffer, boolean, BulkResultHandler)");
+
+        new OffHeapBulkConversion(new GeoTransUtility(fileInput), resultBuffer, includeAccuracy).run(handler);
+    }
+
+    /**
+     * Memory mapped variant of
+     * doBulkConversion(InputStream, ByteBuffer, boolean, BulkResultHandler).
+     * 
+     * @param file
+     *            Bulk conversion file, plain or gzip compressed.
+     * @param resultBuffer
+     *            Buffer for the result records.
+     * @param includeAccuracy
+     *            true to append CE90, LE90 and SE90 to every record.
+     * @param handler
+     *            Receiver of the result records.
+     * @throws Exception
+     */
+    public void doBulkConversion(Path file, ByteBuffer resultBuffer, boolean includeAccuracy, BulkResultHandler handler) throws Exception {
+        log.debug("Entering doBulkConversion(Path, ByteBuffer, boolean, BulkResultHandler)");
+
+        new OffHeapBulkConversion(new GeoTransUtility(file), resultBuffer, includeAccuracy).run(handler);
+    }
+
+    /**
+     * Bulk conversion that does not stop at rows that fail. Each failed row is
+     * reported to the listener with its line number and reason and is left
+     * out of the output; all other rows are written to the stream in file
+     * order, UTF-8 encoded, as soon as their part of the file is converted.
+     * 
+     * @param fileInput
+     *            Bulk conversion data, plain or gzip compressed.
+     * @param output
+     *            Destination of the converted rows; flushed but not closed.
+     * @param errors
+     *            Receiver of the failed rows.
+     * @return The number of failed rows.
+     * @throws Exception
+     *             If the header is invalid or the output cannot be written.
+     */
+    public long doBulkConversion(InputStream fileInput, OutputStream output, BulkRowErrorListener errors) throws Exception {
+        log.debug("Entering doBulkConversion(InputStream, OutputStream, BulkRowErrorListener)");
+
+        return executeTolerantBulkConversion(new GeoTransUtility(fileInput), output, errors);
+    }
+
+    /**
+     * Memory mapped variant of
+     * doBulkConversion(InputStream, OutputStream, BulkRowErrorListener).
+     * 
+     * @param file
+     *            Bulk conversion file, plain or gzip compressed.
+     * @param output
+     *            Destination of the converted rows; flushed but not closed.
+     * @param errors
+     *            Receiver of the failed rows.
+     * @return The number of failed rows.
+     * @throws Exception
+     *             If the header is invalid or the output cannot be written.
+     */
+    public long doBulkConversion(Path file, OutputStream output, BulkRowErrorListener errors) throws Exception {
+        log.debug("Entering doBulkConversion(Path, OutputStream, BulkRowErrorListener)");
+
+        return executeTolerantBulkConversion(new GeoTransUtility(file), output, errors);
+    }
+
+    /**
+     * Bulk conversion of a file into a file that can be resumed after a
+     * process restart. Progress is kept in the checkpoint file after every
+     * chunk of the input; calling this method again with the same files
+     * continues after the last completed chunk. See ResumableBulkJob.
+     * 
+     * @param input
+     *            Bulk conversion file, plain or gzip compressed.
+     * @param output
+     *            File the converted coordinates are written to.
+     * @param checkpoint
+     *            File holding the progress of the job; deleted when the job
+     *            completes.
+     * @return The number of chunks converted by this call.
+     * @throws Exception
+     */
+    public int doResumableBulkConversion(Path input, Path output, Path checkpoint) throws Exception {
+        log.debug("Entering doResumableBulkConversion()");
+
+        return new ResumableBulkJob(input, output, checkpoint).run();
+    }
+
+    /**
+     * Bulk conversion of recurring files that only converts new or changed
+     * rows. The output of every row is kept in a store per conversion key,
+     * i.e. per set of header fields, in the store directory; rows found there
+     * from an earlier run are copied instead of converted. The output is the
+     * same as that of doBulkConversion(InputStream, OutputStream). See
+     * IncrementalBulkConversion.
+     * 
+     * @param fileInput
+     *            Bulk conversion data, plain or gzip compressed.
+     * @param output
+     *            Destination of the converted rows; flushed but not closed.
+     * @param storeDirectory
+     *            Directory holding the output of earlier runs.
+     * @return The number of rows that had to be converted.
+     * @throws Exception
+     */
+    public long doIncrementalBulkConversion(InputStream fileInput, OutputStream output, Path storeDirectory) throws Exception {
+        log.debug("Entering doIncrementalBulkConversion(InputStream)");
+
+        return executeIncrementalBulkConversion(new GeoTransUtility(fileInput), output, storeDirectory);
+    }
+
+    /**
+     * Memory mapped variant of
+     * doIncrementalBulkConversion(InputStream, OutputStream, Path).
+     * 
+     * @param file
+     *            Bulk conversion file, plain or gzip compressed.
+     * @param output
+     *            Destination of the converted rows; flushed but not closed.
+     * @param storeDirectory
+     *            Directory holding the output of earlier runs.
+     * @return The number of rows that had to be converted.
+     * @throws Exception
+     */
+    public long doIncrementalBulkConversion(Path file, OutputStream output, Path storeDirectory) throws Exception {
+        log.debug("Entering doIncrementalBulkConversion(Path)");
+
+        return executeIncrementalBulkConversion(new GeoTransUtility(file), output, storeDirectory);
+    }
+
+    /**
+     * Runs a spool directory worker in the calling thread until the thread is
+     * interrupted. Any number of workers, in this or other processes or
+     * hosts, can share the directory; each converts the bulk files dropped
+     * into its incoming/ subdirectory that it claims first, and large files
+     * are split into shards for all workers to share. See SpoolWorker for the
+     * directory layout.
+     * 
+     * @param spoolDirectory
+     *            The shared spool directory.
+     */
+    public void runSpoolWorker(Path spoolDirectory) {
+        log.debug("Entering runSpoolWorker() for {}", spoolDirectory);
+
+        new SpoolWorker(spoolDirectory).run();
+
+        log.debug("Leaving runSpoolWorker()");
+    }
+
+    /**
+     * Converts the coordinates of a JSON request. Identical requests that
+     * arrive while one of them is being converted share that conversion and
+     * its result instead of converting again; see ConversionCoalescer.
+     * 
+     * @param jsonInput
+     *            The conversion request.
+     * @return JSON object holding the converted coordinates.
+     * @throws Exception
+     */
     public JSONObject doConversion(String jsonInput) throws Exception {
         log.debug("Entering doConversion()");
 
-        return (JSONObject) assembleAndExecuteConversion(new GeoTransUtility(new JSONObject(jsonInput)), false);
+        final JSONObject request = new JSONObject(jsonInput);
+
+        return COALESCER.execute(ConversionCoalescer.canonicalKey(request), new Callable<JSONObject>() {
+            @Override
+            public JSONObject call() throws Exception {
+                return (JSONObject) assembleAndExecuteConversion(new GeoTransUtility(request), false);
+            }
+        });
     }
 
-    private Object assembleAndExecuteConversion(GeoTransUtility gtUtility, boolean isBulk) throws Exception {
-        log.debug("Entering assembleAndExecuteConversion()");
+    /**
+     * Converts one set of source coordinates into several target coordinate
+     * systems. The request holds the usual source fields and format options,
+     * plus a targets array of objects that each carry the target prefixed
+     * fields (and optionally format options) of one target. The source
+     * coordinates are parsed and converted to WGS84 geodetic once, and every
+     * target is converted from that shared intermediate result.
+     * 
+     * @param jsonInput
+     *            The multi-target conversion request.
+     * @return JSON object holding a targets array with one conversion result
+     *         per requested target, in request order.
+     * @throws Exception
+     */
+    public JSONObject doMultiTargetConversion(String jsonInput) throws Exception {
+        log.debug("Entering doMultiTargetConversion()");
 
+        GeoTransUtility gtUtility = new GeoTransUtility(new JSONObject(jsonInput));
+        JSONArray targets = gtUtility.retrieveTargets();
+
+        GeoTransUtility intermediateUtility = gtUtility.buildIntermediateUtility();
+        intermediateUtility.initializeForConversion();
+
+        ConvertResults[] intermediateResults;
+
+        try (ConversionSession intermediateSession = new ConversionSession(intermediateUtility)) {
+            intermediateResults = intermediateSession.convert(intermediateUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, false));
+        }
+
+        CoordinateTuple[] intermediateTuples = new CoordinateTuple[intermediateResults.length];
+        Accuracy[] intermediateAccuracies = new Accuracy[intermediateResults.length];
+
+        for (int i = 0; i < intermediateResults.length; i++) {
+            intermediateTuples[i] = intermediateResults[i].getCoordinateTuple();
+            intermediateAccuracies[i] = intermediateResults[i].getAccuracy();
+        }
+
+        JSONArray targetResults = new JSONArray();
+
+        for (int i = 0; i < targets.length(); i++) {
+            GeoTransUtility targetUtility = gtUtility.buildTargetUtility(targets.getJSONObject(i));
+            targetUtility.initializeForConversion();
+
+            try (ConversionSession targetSession = new ConversionSession(targetUtility)) {
+                targetResults.put(targetUtility.buildResponse(targetSession.convert(intermediateTuples, intermediateAccuracies), false));
+            }
+        }
+
+        log.debug("Leaving doMultiTargetConversion()");
+        return new JSONObject().put(GeoTransConstants.TARGETS, targetResults);
+    }
+
+    /**
+     * Builds a transform grid approximating the conversion of a request, for
+     * doApproximateConversion(). The request holds the usual source and target
+     * fields plus an approximation object with the bounding box (minX, minY,
+     * maxX, maxY in source coordinates, degrees for geodetic), the maximum
+     * error in meters (maxError) and the interpolation ("bilinear" or
+     * "bicubic"); source coordinates are not needed. The grid can be kept and
+     * reused by any number of requests with the same source and target.
+     * 
+     * @param jsonInput
+     *            The approximation request.
+     * @return The transform grid.
+     * @throws Exception
+     */
+    public TransformGrid buildTransformGrid(String jsonInput) throws Exception {
+        log.debug("Entering buildTransformGrid()");
+
+        GeoTransUtility gtUtility = new GeoTransUtility(new JSONObject(jsonInput));
         gtUtility.initializeForConversion();
 
-        CoordinateSystemParameters sourceParameters = gtUtility.retrieveParameters(GeoTransConstants.SOURCE_PREFIX);
-        CoordinateSystemParameters targetParameters = gtUtility.retrieveParameters(GeoTransConstants.TARGET_PREFIX);
+        TransformGrid grid;
 
-        CoordinateTuple[] sourceTuples = gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, isBulk);
-        CoordinateTuple targetTuple = gtUtility.retrieveCoordinates(GeoTransConstants.TARGET_PREFIX, false)[0];
+        try (ConversionSession session = new ConversionSession(gtUtility)) {
+            grid = TransformGrid.build(session, gtUtility.retrieveApproximation());
+        }
 
-        Accuracy sourceAccuracy = gtUtility.retrieveAccuracy(GeoTransConstants.SOURCE_PREFIX);
-        Accuracy targetAccuracy = gtUtility.retrieveAccuracy(GeoTransConstants.TARGET_PREFIX);
+        log.debug("Leaving buildTransformGrid()");
+        return grid;
+    }
 
-        ConvertResults[] results = new ConvertResults[sourceTuples.length];
+    /**
+     * Converts the coordinates of a JSON request like doConversion(), but
+     * interpolates them from a transform grid instead. Points the grid cannot
+     * answer (outside its bounding box, or where it could not meet its
+     * maximum error) are converted exactly.
+     * 
+     * @param jsonInput
+     *            The conversion request, with the source and target the grid
+     *            was built for.
+     * @param grid
+     *            Grid from buildTransformGrid().
+     * @return JSON object holding the converted coordinates.
+     * @throws Exception
+     */
+    public JSONObject doApproximateConversion(String jsonInput, TransformGrid grid) throws Exception {
+        log.debug("Entering doApproximateConversion()");
 
-        if (gtUtility.isUsingCustomDatum()) {
-            log.debug("Calling custom conversion method!");
-            results = CustomConversion.performCustomConversion(sourceParameters, targetParameters, sourceTuples, targetTuple, sourceAccuracy,
-                    targetAccuracy, gtUtility.getHeaderFields());
-        } else {
-            JNICoordinateConversionService jniCoordinateConversionService = new JNICoordinateConversionService(gtUtility.getSourceDatum(),
-                    sourceParameters, gtUtility.getTargetDatum(), targetParameters);
+        GeoTransUtility gtUtility = new GeoTransUtility(new JSONObject(jsonInput));
+
+        if (!grid.matches(gtUtility.getHeaderFields())) {
+            throw new CoordinateConversionException("The transform grid was built for a different source or target!");
+        }
+
+        gtUtility.initializeForConversion();
+
+        CoordinateTuple[] sources = gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, false);
+        ConvertResults[] results = new ConvertResults[sources.length];
+        List<Integer> exact = new ArrayList<Integer>();
 
-            for (int i = 0; i < sourceTuples.length; i++) {
-                results[i] = jniCoordinateConversionService.convertSourceToTarget(sourceTuples[i], sourceAccuracy, targetTuple, targetAccuracy);
+        for (int i = 0; i < sources.length; i++) {
+            results[i] = grid.interpolate(sources[i]);
+
+            if (results[i] == null) {
+                exact.add(i);
+            }
+        }
+
+        if (!exact.isEmpty()) {
+            CoordinateTuple[] exactSources = new CoordinateTuple[exact.size()];
+            for (int i = 0; i < exactSources.length; i++) {
+                exactSources[i] = sources[exact.get(i)];
+            }
+
+            try (ConversionSession session = new ConversionSession(gtUtility)) {
+                ConvertResults[] exactResults = session.convert(exactSources);
+
+                for (int i = 0; i < exactResults.length; i++) {
+                    results[exact.get(i)] = exactResults[i];
+                }
             }
         }
 
+        log.debug("Leaving doApproximateConversion() with {} of {} point(s) converted exactly", exact.size(), sources.length);
+        return (JSONObject) gtUtility.buildResponse(results, false);
+    }
+
+    /**
+     * Converts polygons and lines, densifying their edges so the converted
+     * edges stay within a tolerance. The request holds the usual source and
+     * target fields, a tolerance in meters and a geometries array; each
+     * geometry has a type ("polygon" or "line") and parts, flat x, y arrays in
+     * source coordinates (degrees for geodetic). Vertices shared between
+     * geometries are converted once. Each geometry is handed to the handler
+     * as soon as it is converted, in target coordinates (degrees for
+     * geodetic).
+     *
+     * @param jsonInput
+     *            The geometry conversion request.
+     * @param handler
+     *            Receiver of the converted geometries.
+     * @throws Exception
+     */
+    public void doGeometryConversion(String jsonInput, GeometryResultHandler handler) throws Exception {
+        log.debug("Entering doGeometryConversion()");
+
+        GeoTransUtility gtUtility = new GeoTransUtility(new JSONObject(jsonInput));
+        gtUtility.initializeForConversion();
+
+        try (ConversionSession session = new ConversionSession(gtUtility)) {
+            new GeometryConversion(session, gtUtility.retrieveTolerance()).convert(gtUtility.retrieveGeometries(), handler);
+        }
+
+        log.debug("Leaving doGeometryConversion()");
+    }
+
+    /**
+     * Converts the polygons and lines of a request like
+     * doGeometryConversion(String, GeometryResultHandler) and returns them all
+     * at once.
+     *
+     * @param jsonInput
+     *            The geometry conversion request.
+     * @return JSON object holding the geometries array of the converted
+     *         geometries, in request order.
+     * @throws Exception
+     */
+    public JSONObject doGeometryConversion(String jsonInput) throws Exception {
+        final JSONArray geometries = new JSONArray();
+
+        doGeometryConversion(jsonInput, new GeometryResultHandler() {
+            @Override
+            public void geometry(int index, String type, double[][] parts) throws Exception {
+                JSONArray converted = new JSONArray();
+
+                for (double[] part : parts) {
+                    JSONArray values = new JSONArray();
+                    for (double value : part) {
+                        values.put(value);
+                    }
+                    converted.put(values);
+                }
+                geometries.put(new JSONObject().put(GeoTransConstants.GEOMETRY_TYPE, type).put(GeoTransConstants.PARTS, converted));
+            }
+        });
+
+        return new JSONObject().put(GeoTransConstants.GEOMETRIES, geometries);
+    }
+
+    /**
+     * Converts every node of a regular lattice into a buffer of binary
+     * records, without source coordinates in the request. The request holds
+     * the usual source and target fields plus a lattice object with the first
+     * node (originX, originY), the spacing (stepX, stepY) in source
+     * coordinates, degrees for geodetic, and the number of columns and rows.
+     * The records are those of BinaryBulkConversion for the target coordinate
+     * type, row by row; GridConversion.resultBytes() gives the size the
+     * buffer needs.
+     *
+     * @param jsonInput
+     *            The grid conversion request.
+     * @param resultBuffer
+     *            Buffer for the result records, written from index zero.
+     * @return The finished conversion, with the target coordinate type, the
+     *         record size and the nodes that could not be converted.
+     * @throws Exception
+     */
+    public GridConversion doGridConversion(String jsonInput, ByteBuffer resultBuffer) throws Exception {
+        log.debug("Entering doGridConversion()");
+
+        GeoTransUtility gtUtility = new GeoTransUtility(new JSONObject(jsonInput));
+        gtUtility.initializeForConversion();
+
+        GridConversion conversion = new GridConversion(gtUtility, gtUtility.retrieveLattice());
+        conversion.run(resultBuffer);
+
+        log.debug("Leaving doGridConversion()");
+        return conversion;
+    }
+
+    private Object assembleAndExecuteConversion(GeoTransUtility gtUtility, boolean isBulk) throws Exception {
+        log.debug("Entering assembleAndExecuteConversion()");
+
+        ConvertResults[] results = convertSourceCoordinates(gtUtility, isBulk);
+
         log.debug("Leaving assembleAndExecuteConversion()");
         return gtUtility.buildResponse(results, isBulk);
     }
 
+    private void executeBulkConversion(GeoTransUtility gtUtility, OutputStream output, boolean compressOutput) throws Exception {
+        log.debug("Entering executeBulkConversion()");
+
+        ConvertResults[] results = convertSourceCoordinates(gtUtility, true);
+
+        if (compressOutput) {
+            GZIPOutputStream compressed = BulkCompression.compress(output);
+
+            gtUtility.writeBulkResponse(results, compressed);
+            // Completes the gzip stream without closing the caller's stream.
+            compressed.finish();
+            output.flush();
+        } else {
+            gtUtility.writeBulkResponse(results, output);
+        }
+
+        log.debug("Leaving executeBulkConversion()");
+    }
+
+    private long executeTolerantBulkConversion(GeoTransUtility gtUtility, OutputStream output, BulkRowErrorListener errors)
+            throws Exception {
+        TolerantBulkConversion conversion = new TolerantBulkConversion(gtUtility, errors);
+        conversion.run(output);
+
+        log.debug("Leaving executeTolerantBulkConversion() with {} failed row(s)", conversion.getFailedRows());
+        return conversion.getFailedRows();
+    }
+
+    private long executeIncrementalBulkConversion(GeoTransUtility gtUtility, OutputStream output, Path storeDirectory) throws Exception {
+        IncrementalBulkConversion conversion = new IncrementalBulkConversion(gtUtility, storeDirectory);
+        conversion.run(output);
+
+        log.debug("Leaving executeIncrementalBulkConversion() with {} of {} row(s) converted", conversion.getConvertedRows(),
+                conversion.getConvertedRows() + conversion.getReusedRows());
+        return conversion.getConvertedRows();
+    }
+
+    private ConvertResults[] convertSourceCoordinates(GeoTransUtility gtUtility, boolean isBulk) throws Exception {
+        boolean sampled = ConversionLog.sampleRequest();
+        long start = sampled ? System.nanoTime() : 0;
+        String operation = isBulk ? "bulk" : "conversion";
+
+        try {
+            gtUtility.initializeForConversion();
+
+            ConvertResults[] results;
+
+            try (ConversionSession session = new ConversionSession(gtUtility)) {
+                results = session.convert(gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, isBulk));
+            }
+
+            if (sampled) {
+                ConversionLog.logRequest(operation, gtUtility.getHeaderFields(), results.length, start, null);
+            }
+            return results;
+        } catch (Exception e) {
+            if (sampled) {
+                ConversionLog.logRequest(operation, gtUtility.getHeaderFields(), 0, start, e);
+            }
+            throw e;
+        }
+    }
+
     public JSONObject doCoordinateTranslation(String jsonInput) throws CoordinateConversionException, JSONException {
         log.debug("Entering doCoordinateTranslation()");
 
@@ -96,22 +712,83 @@ public class GeoTransMaster {
         return jsonToReturn;
     }
 
+    /**
+     * Translates many latitude and longitude strings into decimal degrees in
+     * one call. The request holds an inputCoordinateStrings array and either
+     * an inputCoordinateTypes array with the type of each string, so
+     * latitudes and longitudes may be mixed, or a single inputCoordinateType
+     * for all of them; lonRange is optional as for doCoordinateTranslation().
+     * 
+     * @param jsonInput
+     *            The batch translation request.
+     * @return JSON object holding a CoordinateStrings array with the decimal
+     *         degrees of each input string, in request order, null for
+     *         strings that could not be translated. If there are such strings
+     *         an errors array holds an {"index", "error"} object for each.
+     * @throws CoordinateConversionException
+     * @throws JSONException
+     */
+    public JSONObject doBatchCoordinateTranslation(String jsonInput) throws CoordinateConversionException, JSONException {
+        log.debug("Entering doBatchCoordinateTranslation()");
+
+        JSONObject request = new JSONObject(jsonInput);
+        JSONArray inputStrings = request.getJSONArray(GeoTransConstants.INPUT_PREFIX + GeoTransConstants.COORDINATE_STRINGS);
+        JSONArray inputTypes = request.optJSONArray(GeoTransConstants.INPUT_PREFIX + GeoTransConstants.COORDINATE_TYPES);
+        StringToVal stringToVal = new StringToVal();
+
+        String[] coordinateStrings = new String[inputStrings.length()];
+        int[] coordinateTypes = new int[coordinateStrings.length];
+        int sharedType = inputTypes == null ? stringToVal.stringToInt(request.getString(GeoTransConstants.INPUT_PREFIX
+                + GeoTransConstants.COORDINATE_TYPE)) : 0;
+
+        for (int i = 0; i < coordinateStrings.length; i++) {
+            coordinateStrings[i] = inputStrings.getString(i);
+            coordinateTypes[i] = inputTypes == null ? sharedType : i < inputTypes.length() ? stringToVal.stringToInt(inputTypes.getString(i)) : -1;
+        }
+
+        int lonRange = request.has(GeoTransConstants.LONGITUDE_RANGE) ? stringToVal.stringToInt(request.getString(
+                GeoTransConstants.LONGITUDE_RANGE).trim()) : 0;
+        String[] errors = new String[coordinateStrings.length];
+        String[] results = new BatchCoordinateTranslator(lonRange).translate(coordinateStrings, coordinateTypes, errors);
+
+        JSONArray translated = new JSONArray();
+        JSONArray failures = new JSONArray();
+
+        for (int i = 0; i < results.length; i++) {
+            translated.put(results[i] == null ? JSONObject.NULL : results[i]);
+
+            if (errors[i] != null) {
+                failures.put(new JSONObject().put(GeoTransConstants.INDEX, i).put(GeoTransConstants.ERROR, errors[i]));
+            }
+        }
+
+        JSONObject jsonToReturn = new JSONObject().put(GeoTransConstants.COORDINATE_STRINGS, translated);
+        if (failures.length() > 0) {
+            jsonToReturn.put(GeoTransConstants.ERRORS, failures);
+        }
+
+        log.debug("Leaving doBatchCoordinateTranslation() with {} failure(s)", failures.length());
+        return jsonToReturn;
+    }
+
     public JSONObject retrieveAvailableDatums() throws Exception {
         CoordinateSystemParameters tmp = new GeodeticParameters( CoordinateType.GEODETIC, HeightType.NO_HEIGHT );
-        JNICoordinateConversionService jniCoordinateConversionService = new JNICoordinateConversionService(GeoTransConstants.WGS84_DATUM_CODE, tmp,
-                GeoTransConstants.WGS84_DATUM_CODE, tmp);
-        JNIDatumLibrary jniDatumLibrary = new JNIDatumLibrary(jniCoordinateConversionService.getDatumLibrary());
-
-        Info datumInfo;
-        JSONObject currentDatum;
         JSONArray availableDatums = new JSONArray();
 
-        for( int i = 0; i < jniDatumLibrary.getDatumCount(); i++ ) {
-            datumInfo = jniDatumLibrary.getDatumInfo( i );
-            currentDatum = new JSONObject();
-            currentDatum.put("code",  datumInfo.getCode());
-            currentDatum.put("name",  datumInfo.getName());
-            availableDatums.put( currentDatum );
+        try (NativeConversionService nativeConversionService = new NativeConversionService(GeoTransConstants.WGS84_DATUM_CODE, tmp,
+                GeoTransConstants.WGS84_DATUM_CODE, tmp)) {
+            JNIDatumLibrary jniDatumLibrary = new JNIDatumLibrary(nativeConversionService.getDatumLibrary());
+
+            Info datumInfo;
+            JSONObject currentDatum;
+
+            for( int i = 0; i < jniDatumLibrary.getDatumCount(); i++ ) {
+                datumInfo = jniDatumLibrary.getDatumInfo( i );
+                currentDatum = new JSONObject();
+                currentDatum.put("code",  datumInfo.getCode());
+                currentDatum.put("name",  datumInfo.getName());
+                availableDatums.put( currentDatum );
+            }
         }
 
         return new JSONObject().put("availableDatums",  availableDatums);
@@ -119,20 +796,22 @@ public class GeoTransMaster {
 
     public JSONObject retrieveAvailableEllipsoids() throws Exception {
         CoordinateSystemParameters tmp = new GeodeticParameters( CoordinateType.GEODETIC, HeightType.NO_HEIGHT );
-        JNICoordinateConversionService jniCoordinateConversionService = new JNICoordinateConversionService(GeoTransConstants.WGS84_DATUM_CODE, tmp,
-                GeoTransConstants.WGS84_DATUM_CODE, tmp);
-        JNIEllipsoidLibrary jniEllipsoidLibrary = new JNIEllipsoidLibrary(jniCoordinateConversionService.getEllipsoidLibrary());
-
-        Info ellipsoidInfo;
-        JSONObject currentEllipsoid;
         JSONArray availableEllipsoids = new JSONArray();
 
-        for( int i = 0; i < jniEllipsoidLibrary.getEllipsoidCount(); i++ ) {
-            ellipsoidInfo = jniEllipsoidLibrary.getEllipsoidInfo(i);
-            currentEllipsoid = new JSONObject();
-            currentEllipsoid.put("code",  ellipsoidInfo.getCode());
-            currentEllipsoid.put("name",  ellipsoidInfo.getName().trim());
-            availableEllipsoids.put( currentEllipsoid );
+        try (NativeConversionService nativeConversionService = new NativeConversionService(GeoTransConstants.WGS84_DATUM_CODE, tmp,
+                GeoTransConstants.WGS84_DATUM_CODE, tmp)) {
+            JNIEllipsoidLibrary jniEllipsoidLibrary = new JNIEllipsoidLibrary(nativeConversionService.getEllipsoidLibrary());
+
+            Info ellipsoidInfo;
+            JSONObject currentEllipsoid;
+
+            for( int i = 0; i < jniEllipsoidLibrary.getEllipsoidCount(); i++ ) {
+                ellipsoidInfo = jniEllipsoidLibrary.getEllipsoidInfo(i);
+                currentEllipsoid = new JSONObject();
+                currentEllipsoid.put("code",  ellipsoidInfo.getCode());
+                currentEllipsoid.put("name",  ellipsoidInfo.getName().trim());
+                availableEllipsoids.put( currentEllipsoid );
+            }
         }
 
         return new JSONObject().put("availableEllipsoids",  availableEllipsoids);
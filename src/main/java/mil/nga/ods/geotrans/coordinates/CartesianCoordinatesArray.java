@@ -4,16 +4,15 @@ import geotrans3.coordinates.CartesianCoordinates;
 import geotrans3.coordinates.ConvertResults;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.FormatOptions;
-import geotrans3.misc.StringToVal;
+import mil.nga.ods.geotrans.utils.BulkRecordReader;
+import mil.nga.ods.geotrans.utils.CoordinateParser;
+import mil.nga.ods.geotrans.utils.FieldSchema;
 import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 import mil.nga.ods.geotrans.utils.StringToRawVal;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.codehaus.jettison.json.JSONArray;
@@ -26,6 +25,9 @@ public class CartesianCoordinatesArray extends CoordinatesArray {
 
     private static final Logger log = LoggerFactory.getLogger(CartesianCoordinatesArray.class.getName());
 
+    // Binary record: x, y, z.
+    public static final int RECORD_BYTES = 24;
+
     // Single Results input
     public CartesianCoordinatesArray(CartesianCoordinates coords) {
         log.debug("Entering CartesianCoordinatesArray(CartesianCoordinates)");
@@ -50,50 +52,67 @@ public class CartesianCoordinatesArray extends CoordinatesArray {
         log.debug("Leaving CartesianCoordinatesArray(ConvertResults[])");
     }
 
-    // File input
-    public CartesianCoordinatesArray(ArrayList<String> coords, int projectionType) throws CoordinateConversionException {
-        log.debug("Entering CartesianCoordinatesArray(ArrayList<String>, int)");
+    // Mapped file input
+    public CartesianCoordinatesArray(BulkRecordReader records, int projectionType) throws CoordinateConversionException {
+        log.debug("Entering CartesianCoordinatesArray(BulkRecordReader, int)");
+
+        CartesianCoordinates[] coordinates = new CartesianCoordinates[records.countRecords()];
 
-        CartesianCoordinates[] coordinates = new CartesianCoordinates[coords.size()];
-        Iterator<String> iter = coords.iterator();
+        for (int i = 0; records.nextRecord(); i++) {
+            coordinates[i] = new CartesianCoordinates(
+                    projectionType,
+                    records.getDouble(0),
+                    records.getDouble(1),
+                    records.getDouble(2));
+        }
+
+        setCoordinates(coordinates);
+
+        log.debug("Leaving CartesianCoordinatesArray(BulkRecordReader, int)");
+    }
 
-        String coordinateTuple[];
-        StringToVal stringToVal = new StringToVal();
+    // Binary input
+    public CartesianCoordinatesArray(ByteBuffer records, int count, int projectionType) {
+        log.debug("Entering CartesianCoordinatesArray(ByteBuffer, int, int)");
 
-        for (int i = 0; iter.hasNext(); i++) {
-            coordinateTuple = iter.next().split(",");
+        CartesianCoordinates[] coordinates = new CartesianCoordinates[count];
 
+        for (int i = 0; i < count; i++) {
             coordinates[i] = new CartesianCoordinates(
                     projectionType,
-                    stringToVal.stringToDouble(coordinateTuple[0].trim()),
-                    stringToVal.stringToDouble(coordinateTuple[1].trim()),
-                    stringToVal.stringToDouble(coordinateTuple[2].trim()));
+                    records.getDouble(),
+                    records.getDouble(),
+                    records.getDouble());
         }
 
         setCoordinates(coordinates);
 
-        log.debug("Leaving CartesianCoordinatesArray(ArrayList<String>, int)");
+        log.debug("Leaving CartesianCoordinatesArray(ByteBuffer, int, int)");
     }
 
     // Json input
     public CartesianCoordinatesArray(String prefix, Map<String, Object> input, int projectionType) throws CoordinateConversionException, JSONException {
         log.debug("Entering CartesianCoordinatesArray(String, Map<String,Object>)");
 
-        InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
+        FieldSchema fields = new FieldSchema(keys.xValue, keys.yValue, keys.zValue);
+        String[] record = fields.newRecord();
+        CoordinateParser parser = new CoordinateParser();
+        boolean isTarget = prefix.equals(GeoTransConstants.TARGET_PREFIX);
         CartesianCoordinates[] coordsToSet;
 
-        if( input.get(prefix + GeoTransConstants.COORDINATES) != null) {
-            JSONArray sourceCoords = new JSONArray(input.get(prefix + GeoTransConstants.COORDINATES).toString());
+        if( input.get(keys.coordinates) != null) {
+            JSONArray sourceCoords = new JSONArray(input.get(keys.coordinates).toString());
 
             coordsToSet = new CartesianCoordinates[sourceCoords.length()];
 
             for( int i = 0; i < sourceCoords.length(); i++ ) {
-                coordsToSet[i] = buildFromMap( iv.convertJSONToMap(sourceCoords.getJSONObject(i)), prefix, projectionType);
+                coordsToSet[i] = buildFromRecord( isTarget ? null : fields.read(sourceCoords.getJSONObject(i), record), parser, projectionType );
             }
         }
         else {
             coordsToSet = new CartesianCoordinates[1];
-            coordsToSet[0] = buildFromMap( input, prefix, projectionType );
+            coordsToSet[0] = buildFromRecord( isTarget ? null : fields.read(input, record), parser, projectionType );
         }
 
         setCoordinates(coordsToSet);
@@ -119,48 +138,52 @@ public class CartesianCoordinatesArray extends CoordinatesArray {
             jsonToReturn = buildJSONOutput( cartCoordinates[0], format );
         }
 
-        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn.toString());
+        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn);
         return jsonToReturn;
     }
 
-    // File output
-    public String toString(FormatOptions format) throws IOException, CoordinateConversionException {
-        log.debug("Entering toString(FormatOptions)");
+    // Binary output
+    @Override
+    public void writeRecord(ByteBuffer out, int index) {
+        CartesianCoordinates coordinate = (CartesianCoordinates) getCoordinates()[index];
 
-        InputVerifier iv = new InputVerifier();
-        StringWriter sw = new StringWriter();
-        BufferedWriter writer = new BufferedWriter(sw);
+        out.putDouble(coordinate.getX());
+        out.putDouble(coordinate.getY());
+        out.putDouble(coordinate.getZ());
+    }
 
+    // File output
+    @Override
+    protected void formatRange(StringBuilder out, FormatOptions format, int from, int to) throws CoordinateConversionException {
+        InputVerifier iv = new InputVerifier();
         CartesianCoordinates[] coords = (CartesianCoordinates[]) getCoordinates();
+
         StringToRawVal stringToRawVal = new StringToRawVal(format.getRange(), format.getLeadingZeros(), format.getSeparator());
 
-        for (int i = 0; i < coords.length; i++) {
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getX()) ));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getY()) ));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getZ()) ));
-            writer.newLine();
+        for (int i = from; i < to; i++) {
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getX()) ));
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getY()) ));
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getZ()) ));
+            out.append(NEW_LINE);
         }
-        writer.close();
-
-        log.debug("Leaving toString(FormatOptions)");
-        return sw.toString();
     }
 
-    private CartesianCoordinates buildFromMap(Map<String,Object> input, String prefix, int projectionType) throws CoordinateConversionException {
-        InputVerifier iv = new InputVerifier();
-        StringToVal stringToVal = new StringToVal();
-        
-        if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {
-	        return new CartesianCoordinates(projectionType);        	
+    /**
+     * @param record
+     *            The fields of the point, or null for the target coordinates.
+     */
+    private CartesianCoordinates buildFromRecord(String[] record, CoordinateParser parser, int projectionType) throws CoordinateConversionException {
+        if( record == null ) {
+	        return new CartesianCoordinates(projectionType);
         }
         else {
 	        return new CartesianCoordinates(
 	                projectionType,
-	                stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.X_VALUE)),
-	                stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.Y_VALUE)),
-	                stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.Z_VALUE)));
+	                parser.parseDouble(record[0]),
+	                parser.parseDouble(record[1]),
+	                parser.parseDouble(record[2]));
         }
     }
 
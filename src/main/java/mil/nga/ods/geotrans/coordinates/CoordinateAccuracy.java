@@ -4,6 +4,7 @@ import geotrans3.coordinates.Accuracy;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.StringToVal;
 import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 
 import java.util.Map;
 
@@ -22,30 +23,31 @@ public class CoordinateAccuracy extends Accuracy {
         log.debug("Entering retrieveAccuracy() with: {}", prefix);
 
         StringToVal stringToVal = new StringToVal();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
 
         // All accuracies default to Unknown.
         double ce90 = -1.0;
         double le90 = -1.0;
         double se90 = -1.0;
 
-        if (input.get(prefix + GeoTransConstants.ACCURACY_CE) != null) {
-            String ce90String = input.get(prefix + GeoTransConstants.ACCURACY_CE).toString().trim();
+        if (input.get(keys.accuracyCe) != null) {
+            String ce90String = input.get(keys.accuracyCe).toString().trim();
 
             if (!(ce90String.equals("Unk")) && !(ce90String.equals("N/A"))) {
                 ce90 = stringToVal.stringToDouble(ce90String);
             }
         }
 
-        if (input.get(prefix + GeoTransConstants.ACCURACY_LE) != null) {
-            String le90String = input.get(prefix + GeoTransConstants.ACCURACY_LE).toString().trim();
+        if (input.get(keys.accuracyLe) != null) {
+            String le90String = input.get(keys.accuracyLe).toString().trim();
 
             if (!(le90String.equals("Unk")) && !(le90String.equals("N/A"))) {
                 le90 = stringToVal.stringToDouble(le90String);
             }
         }
 
-        if (input.get(prefix + GeoTransConstants.ACCURACY_SE) != null) {
-            String se90String = input.get(prefix + GeoTransConstants.ACCURACY_SE).toString().trim();
+        if (input.get(keys.accuracySe) != null) {
+            String se90String = input.get(keys.accuracySe).toString().trim();
 
             if (!(se90String.equals("Unk")) && !(se90String.equals("N/A"))) {
                 se90 = stringToVal.stringToDouble(se90String);
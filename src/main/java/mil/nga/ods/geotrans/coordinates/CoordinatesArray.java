@@ -3,14 +3,21 @@ package mil.nga.ods.geotrans.coordinates;
 import geotrans3.coordinates.CoordinateTuple;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.FormatOptions;
+import mil.nga.ods.geotrans.utils.BulkRecordFormatter;
+import mil.nga.ods.geotrans.utils.ParallelBulkFormatter;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.codehaus.jettison.json.JSONException;
 import org.codehaus.jettison.json.JSONObject;
 
 public abstract class CoordinatesArray {
 
+    // Same line separator BufferedWriter.newLine() writes.
+    protected static final String NEW_LINE = System.getProperty("line.separator");
+
     protected CoordinateTuple[] coordinatesArray;
 
     public int getLength() {
@@ -29,5 +36,61 @@ public abstract class CoordinatesArray {
     public abstract JSONObject toJson(FormatOptions format) throws JSONException, CoordinateConversionException;
 
     // File output
-    public abstract String toString(FormatOptions format) throws IOException, CoordinateConversionException;
+    public String toString(FormatOptions format) throws IOException, CoordinateConversionException {
+        return ParallelBulkFormatter.format(getLength(), rangeFormatter(format));
+    }
+
+    // Stream output, UTF-8 encoded; the stream is flushed but not closed.
+    public void writeTo(OutputStream out, FormatOptions format) throws IOException, CoordinateConversionException {
+        ParallelBulkFormatter.write(out, getLength(), rangeFormatter(format));
+    }
+
+    /**
+     * @return The output line of every coordinate, each ending with its line
+     *         separator, so that concatenating them gives toString(format).
+     */
+    public String[] toLines(FormatOptions format) throws CoordinateConversionException {
+        StringBuilder out = new StringBuilder();
+        String[] lines = new String[getLength()];
+
+        formatRange(out, format, 0, lines.length);
+
+        int from = 0;
+        for (int i = 0; i < lines.length; i++) {
+            int to = out.indexOf(NEW_LINE, from) + NEW_LINE.length();
+
+            lines[i] = out.substring(from, to);
+            from = to;
+        }
+        return lines;
+    }
+
+    /**
+     * Writes one fixed width binary record per coordinate at the position of
+     * the buffer, in the buffer's byte order. The record layout is the
+     * RECORD_BYTES layout of the coordinate family.
+     */
+    public void writeRecords(ByteBuffer out) throws CoordinateConversionException {
+        for (int i = 0; i < getLength(); i++) {
+            writeRecord(out, i);
+        }
+    }
+
+    // Writes the binary record of a single coordinate.
+    public abstract void writeRecord(ByteBuffer out, int index) throws CoordinateConversionException;
+
+    /**
+     * Appends one output line per coordinate in [from, to). Called
+     * concurrently for different ranges of the same array.
+     */
+    protected abstract void formatRange(StringBuilder out, FormatOptions format, int from, int to) throws CoordinateConversionException;
+
+    private BulkRecordFormatter rangeFormatter(final FormatOptions format) {
+        return new BulkRecordFormatter() {
+            @Override
+            public void format(StringBuilder out, int from, int to) throws CoordinateConversionException {
+                formatRange(out, format, from, to);
+            }
+        };
+    }
 }
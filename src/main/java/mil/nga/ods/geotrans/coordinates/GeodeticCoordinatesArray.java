@@ -5,18 +5,17 @@ import geotrans3.coordinates.GeodeticCoordinates;
 import geotrans3.enumerations.CoordinateType;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.FormatOptions;
-import geotrans3.misc.StringToVal;
 import geotrans3.utility.Constants;
+import mil.nga.ods.geotrans.utils.BulkRecordReader;
+import mil.nga.ods.geotrans.utils.CoordinateParser;
+import mil.nga.ods.geotrans.utils.FieldSchema;
 import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 import mil.nga.ods.geotrans.utils.StringToRawVal;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.StringWriter;
 import java.math.BigDecimal;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.codehaus.jettison.json.JSONArray;
@@ -29,6 +28,9 @@ public class GeodeticCoordinatesArray extends CoordinatesArray {
 
     private static final Logger log = LoggerFactory.getLogger(GeodeticCoordinatesArray.class.getName());
 
+    // Binary record: longitude and latitude in degrees, height.
+    public static final int RECORD_BYTES = 24;
+
     // Single Results input
     public GeodeticCoordinatesArray(GeodeticCoordinates coords) {
         log.debug("Entering GeodeticCoordinatesArray(GeodeticCoordinates)");
@@ -53,49 +55,65 @@ public class GeodeticCoordinatesArray extends CoordinatesArray {
         log.debug("Leaving GeodeticCoordinatesArray(ConvertResults[])");
     }
 
-    // File input
-    public GeodeticCoordinatesArray(ArrayList<String> coords, int projectionType) throws CoordinateConversionException {
-        log.debug("Entering GeodeticCoordinatesArray(ArrayList<String>, int)");
+    // Mapped file input
+    public GeodeticCoordinatesArray(BulkRecordReader records, int projectionType) throws CoordinateConversionException {
+        log.debug("Entering GeodeticCoordinatesArray(BulkRecordReader, int)");
 
-        GeodeticCoordinates[] coordinates = new GeodeticCoordinates[coords.size()];
-        Iterator<String> iter = coords.iterator();
+        GeodeticCoordinates[] coordinates = new GeodeticCoordinates[records.countRecords()];
 
-        String coordinateTuple[];
-        StringToVal stringToVal = new StringToVal();
+        for (int i = 0; records.nextRecord(); i++) {
+            coordinates[i] = new GeodeticCoordinates(projectionType,
+                    records.getLongitude(0) * Constants.PI_OVER_180,
+                    records.getLatitude(1) * Constants.PI_OVER_180,
+                    records.getDouble(2));
+        }
 
-        for (int i = 0; iter.hasNext(); i++) {
-            coordinateTuple = iter.next().split(",");
+        setCoordinates(coordinates);
 
+        log.debug("Leaving GeodeticCoordinatesArray(BulkRecordReader, int)");
+    }
+
+    // Binary input
+    public GeodeticCoordinatesArray(ByteBuffer records, int count, int projectionType) {
+        log.debug("Entering GeodeticCoordinatesArray(ByteBuffer, int, int)");
+
+        GeodeticCoordinates[] coordinates = new GeodeticCoordinates[count];
+
+        for (int i = 0; i < count; i++) {
             coordinates[i] = new GeodeticCoordinates(projectionType,
-                    stringToVal.stringToLongitude(coordinateTuple[0].trim()) * Constants.PI_OVER_180,
-                    stringToVal.stringToLatitude(coordinateTuple[1].trim()) * Constants.PI_OVER_180,
-                    stringToVal.stringToDouble(coordinateTuple[2].trim()));
+                    records.getDouble() * Constants.PI_OVER_180,
+                    records.getDouble() * Constants.PI_OVER_180,
+                    records.getDouble());
         }
 
         setCoordinates(coordinates);
 
-        log.debug("Leaving GeodeticCoordinatesArray(ArrayList<String>, int)");
+        log.debug("Leaving GeodeticCoordinatesArray(ByteBuffer, int, int)");
     }
 
     // Json input
     public GeodeticCoordinatesArray(String prefix, Map<String, Object> input) throws CoordinateConversionException, JSONException {
         log.debug("Entering GeodeticCoordinatesArray(String, Map<String, Object>)");
 
-        InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
+        FieldSchema fields = new FieldSchema(keys.longitude, keys.latitude, keys.height);
+        String[] record = fields.newRecord();
+        CoordinateParser parser = new CoordinateParser();
+        boolean isTarget = prefix.equals(GeoTransConstants.TARGET_PREFIX);
         GeodeticCoordinates[] coordsToSet;
 
-        if( input.get(prefix + GeoTransConstants.COORDINATES) != null) {
-            JSONArray sourceCoords = new JSONArray(input.get(prefix + GeoTransConstants.COORDINATES).toString());
+        if( input.get(keys.coordinates) != null) {
+            JSONArray sourceCoords = new JSONArray(input.get(keys.coordinates).toString());
 
             coordsToSet = new GeodeticCoordinates[sourceCoords.length()];
 
             for( int i = 0; i < sourceCoords.length(); i++ ) {
-                coordsToSet[i] = buildFromMap( iv.convertJSONToMap(sourceCoords.getJSONObject(i)), prefix);
+                coordsToSet[i] = buildFromRecord( isTarget ? null : fields.read(sourceCoords.getJSONObject(i), record), parser );
             }
         }
         else {
             coordsToSet = new GeodeticCoordinates[1];
-            coordsToSet[0] = buildFromMap( input, prefix );
+            coordsToSet[0] = buildFromRecord( isTarget ? null : fields.read(input, record), parser );
         }
 
         setCoordinates(coordsToSet);
@@ -121,52 +139,54 @@ public class GeodeticCoordinatesArray extends CoordinatesArray {
             jsonToReturn = buildJSONOutput( geodeticCoordinates[0], format );
         }
 
-        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn.toString());
+        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn);
         return jsonToReturn;
     }
 
-    // File output
-    public String toString(FormatOptions format) throws IOException, CoordinateConversionException {
-        log.debug("Entering toString(FormatOptions)");
+    // Binary output
+    @Override
+    public void writeRecord(ByteBuffer out, int index) {
+        GeodeticCoordinates coordinate = (GeodeticCoordinates) getCoordinates()[index];
 
-        InputVerifier iv = new InputVerifier();
-        StringWriter sw = new StringWriter();
-        BufferedWriter writer = new BufferedWriter(sw);
+        out.putDouble(coordinate.getLongitude() * Constants._180_OVER_PI);
+        out.putDouble(coordinate.getLatitude() * Constants._180_OVER_PI);
+        out.putDouble(coordinate.getHeight());
+    }
 
+    // File output
+    @Override
+    protected void formatRange(StringBuilder out, FormatOptions format, int from, int to) throws CoordinateConversionException {
+        InputVerifier iv = new InputVerifier();
         GeodeticCoordinates[] coords = (GeodeticCoordinates[]) getCoordinates();
 
         StringToRawVal stringToRawVal = new StringToRawVal(format.getRange(), format.getLeadingZeros(), format.getSeparator());
 
-        for (int i = 0; i < coords.length; i++) {
-            writer.write(stringToRawVal.longitudeToString(BigDecimal.valueOf(iv.verifyDoubleIsValid(coords[i].getLongitude() * Constants._180_OVER_PI)),
+        for (int i = from; i < to; i++) {
+            out.append(stringToRawVal.longitudeToString(BigDecimal.valueOf(iv.verifyDoubleIsValid(coords[i].getLongitude() * Constants._180_OVER_PI)),
                     format.getUseNSEW(), format.getUseMinutes(), format.getUseSeconds()));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.latitudeToString(BigDecimal.valueOf(iv.verifyDoubleIsValid(coords[i].getLatitude() * Constants._180_OVER_PI)),
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.latitudeToString(BigDecimal.valueOf(iv.verifyDoubleIsValid(coords[i].getLatitude() * Constants._180_OVER_PI)),
                     format.getUseNSEW(), format.getUseMinutes(), format.getUseSeconds()));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getHeight() )));
-            writer.newLine();
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getHeight() )));
+            out.append(NEW_LINE);
         }
-
-        writer.close();
-
-        log.debug("Leaving toString(FormatOptions)");
-        return sw.toString();
     }
 
-    private GeodeticCoordinates buildFromMap(Map<String,Object> input, String prefix) throws CoordinateConversionException {
-        InputVerifier iv = new InputVerifier();
-        StringToVal stringToVal = new StringToVal();
-        
-        if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {
+    /**
+     * @param record
+     *            The fields of the point, or null for the target coordinates.
+     */
+    private GeodeticCoordinates buildFromRecord(String[] record, CoordinateParser parser) throws CoordinateConversionException {
+        if( record == null ) {
 	        return new GeodeticCoordinates(CoordinateType.GEODETIC);
         }
         else {
             return new GeodeticCoordinates(
                     CoordinateType.GEODETIC,
-                    stringToVal.stringToLongitude(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.LONGITUDE)) * Constants.PI_OVER_180,
-                    stringToVal.stringToLatitude(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.LATITUDE)) * Constants.PI_OVER_180,
-                    stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.HEIGHT)));        	
+                    parser.parseLongitude(record[0]) * Constants.PI_OVER_180,
+                    parser.parseLatitude(record[1]) * Constants.PI_OVER_180,
+                    parser.parseDouble(record[2]));
         }
     }
 
@@ -4,16 +4,15 @@ import geotrans3.coordinates.ConvertResults;
 import geotrans3.coordinates.MapProjectionCoordinates;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.FormatOptions;
-import geotrans3.misc.StringToVal;
+import mil.nga.ods.geotrans.utils.BulkRecordReader;
+import mil.nga.ods.geotrans.utils.CoordinateParser;
+import mil.nga.ods.geotrans.utils.FieldSchema;
 import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 import mil.nga.ods.geotrans.utils.StringToRawVal;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.codehaus.jettison.json.JSONArray;
@@ -26,6 +25,9 @@ public class MapProjectionCoordinatesArray extends CoordinatesArray {
 
     private static final Logger log = LoggerFactory.getLogger(MapProjectionCoordinatesArray.class.getName());
 
+    // Binary record: easting, northing.
+    public static final int RECORD_BYTES = 16;
+
     // Single Results input
     public MapProjectionCoordinatesArray(MapProjectionCoordinates coords) {
         log.debug("Entering MapProjectionCoordinatesArray(MapProjectionCoordinates)");
@@ -50,49 +52,65 @@ public class MapProjectionCoordinatesArray extends CoordinatesArray {
         log.debug("Leaving MapProjectionCoordinatesArray(ConvertResults[])");
     }
 
-    // File input
-    public MapProjectionCoordinatesArray(ArrayList<String> coords, int projectionType) throws CoordinateConversionException {
-        log.debug("Entering MapProjectionCoordinatesArray(ArrayList<String>, int)");
+    // Mapped file input
+    public MapProjectionCoordinatesArray(BulkRecordReader records, int projectionType) throws CoordinateConversionException {
+        log.debug("Entering MapProjectionCoordinatesArray(BulkRecordReader, int)");
+
+        MapProjectionCoordinates[] coordinates = new MapProjectionCoordinates[records.countRecords()];
 
-        MapProjectionCoordinates[] coordinates = new MapProjectionCoordinates[coords.size()];
-        Iterator<String> iter = coords.iterator();
+        for (int i = 0; records.nextRecord(); i++) {
+            coordinates[i] = new MapProjectionCoordinates(
+                    projectionType,
+                    records.getDouble(0),
+                    records.getDouble(1));
+        }
+
+        setCoordinates(coordinates);
+
+        log.debug("Leaving MapProjectionCoordinatesArray(BulkRecordReader, int)");
+    }
 
-        String coordinateTuple[];
-        StringToVal stringToVal = new StringToVal();
+    // Binary input
+    public MapProjectionCoordinatesArray(ByteBuffer records, int count, int projectionType) {
+        log.debug("Entering MapProjectionCoordinatesArray(ByteBuffer, int, int)");
 
-        for (int i = 0; iter.hasNext(); i++) {
-            coordinateTuple = iter.next().split(",");
+        MapProjectionCoordinates[] coordinates = new MapProjectionCoordinates[count];
 
+        for (int i = 0; i < count; i++) {
             coordinates[i] = new MapProjectionCoordinates(
                     projectionType,
-                    stringToVal.stringToDouble(coordinateTuple[0].trim()),
-                    stringToVal.stringToDouble(coordinateTuple[1].trim()));
+                    records.getDouble(),
+                    records.getDouble());
         }
 
         setCoordinates(coordinates);
 
-        log.debug("Leaving MapProjectionCoordinatesArray(ArrayList<String>, int)");
+        log.debug("Leaving MapProjectionCoordinatesArray(ByteBuffer, int, int)");
     }
 
     // Json input
     public MapProjectionCoordinatesArray(String prefix, Map<String, Object> input, int projectionType) throws CoordinateConversionException, JSONException {
         log.debug("Entering MapProjectionCoordinatesArray(String, Map<String, Object>)");
 
-        InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
+        FieldSchema fields = new FieldSchema(keys.easting, keys.northing);
+        String[] record = fields.newRecord();
+        CoordinateParser parser = new CoordinateParser();
+        boolean isTarget = prefix.equals(GeoTransConstants.TARGET_PREFIX);
         MapProjectionCoordinates[] coordsToSet;
 
-        if( input.get(prefix + GeoTransConstants.COORDINATES) != null) {
-            JSONArray sourceCoords = new JSONArray(input.get(prefix + GeoTransConstants.COORDINATES).toString());
+        if( input.get(keys.coordinates) != null) {
+            JSONArray sourceCoords = new JSONArray(input.get(keys.coordinates).toString());
 
             coordsToSet = new MapProjectionCoordinates[sourceCoords.length()];
 
             for( int i = 0; i < sourceCoords.length(); i++ ) {
-                coordsToSet[i] = buildFromMap( iv.convertJSONToMap(sourceCoords.getJSONObject(i)), prefix, projectionType );
+                coordsToSet[i] = buildFromRecord( isTarget ? null : fields.read(sourceCoords.getJSONObject(i), record), parser, projectionType );
             }
         }
         else {
             coordsToSet = new MapProjectionCoordinates[1];
-            coordsToSet[0] = buildFromMap( input, prefix, projectionType );
+            coordsToSet[0] = buildFromRecord( isTarget ? null : fields.read(input, record), parser, projectionType );
         }
 
         setCoordinates(coordsToSet);
@@ -118,47 +136,48 @@ public class MapProjectionCoordinatesArray extends CoordinatesArray {
             jsonToReturn = buildJSONOutput( mapCoordinates[0], format );
         }
 
-        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn.toString());
+        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn);
         return jsonToReturn;
     }
 
-    // File output
-    public String toString(FormatOptions format) throws IOException, CoordinateConversionException {
-        log.debug("Entering toString(FormatOptions)");
+    // Binary output
+    @Override
+    public void writeRecord(ByteBuffer out, int index) {
+        MapProjectionCoordinates coordinate = (MapProjectionCoordinates) getCoordinates()[index];
 
-        InputVerifier iv = new InputVerifier();
-        StringWriter sw = new StringWriter();
-        BufferedWriter writer = new BufferedWriter(sw);
+        out.putDouble(coordinate.getEasting());
+        out.putDouble(coordinate.getNorthing());
+    }
 
+    // File output
+    @Override
+    protected void formatRange(StringBuilder out, FormatOptions format, int from, int to) throws CoordinateConversionException {
+        InputVerifier iv = new InputVerifier();
         MapProjectionCoordinates[] coords = (MapProjectionCoordinates[]) getCoordinates();
 
         StringToRawVal stringToRawVal = new StringToRawVal(format.getRange(), format.getLeadingZeros(), format.getSeparator());
 
-        for (int i = 0; i < coords.length; i++) {
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid( coords[i].getEasting() ) ));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid( coords[i].getNorthing() ) ));
-            writer.newLine();
+        for (int i = from; i < to; i++) {
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid( coords[i].getEasting() ) ));
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid( coords[i].getNorthing() ) ));
+            out.append(NEW_LINE);
         }
-
-        writer.close();
-
-        log.debug("Leaving toString(FormatOptions)");
-        return sw.toString();
     }
 
-    private MapProjectionCoordinates buildFromMap(Map<String,Object> input, String prefix, int projectionType) throws CoordinateConversionException {
-        InputVerifier iv = new InputVerifier();
-        StringToVal stringToVal = new StringToVal();
-        
-        if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {        
+    /**
+     * @param record
+     *            The fields of the point, or null for the target coordinates.
+     */
+    private MapProjectionCoordinates buildFromRecord(String[] record, CoordinateParser parser, int projectionType) throws CoordinateConversionException {
+        if( record == null ) {
 	        return new MapProjectionCoordinates(projectionType);
         }
         else {
             return new MapProjectionCoordinates(
                     projectionType,
-                    stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.EASTING)),
-                    stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.NORTHING)));        	
+                    parser.parseDouble(record[0]),
+                    parser.parseDouble(record[1]));
         }
     }
 
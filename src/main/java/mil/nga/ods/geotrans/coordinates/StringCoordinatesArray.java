@@ -1,23 +1,16 @@
 package mil.nga.ods.geotrans.coordinates;
 
-import geotrans3.coordinates.BNGCoordinates;
 import geotrans3.coordinates.ConvertResults;
-import geotrans3.coordinates.CoordinateTuple;
-import geotrans3.coordinates.GARSCoordinates;
-import geotrans3.coordinates.GEOREFCoordinates;
-import geotrans3.coordinates.MGRSorUSNGCoordinates;
 import geotrans3.coordinates.StringCoordinates;
-import geotrans3.enumerations.CoordinateType;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.FormatOptions;
+import mil.nga.ods.geotrans.utils.BulkRecordReader;
+import mil.nga.ods.geotrans.utils.FieldSchema;
 import mil.nga.ods.geotrans.utils.GeoTransConstants;
-import mil.nga.ods.geotrans.utils.InputVerifier;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Map;
 
 import org.codehaus.jettison.json.JSONArray;
@@ -30,6 +23,22 @@ public class StringCoordinatesArray extends CoordinatesArray {
 
     private static final Logger log = LoggerFactory.getLogger(StringCoordinatesArray.class.getName());
 
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    // Binary record: coordinate string, ASCII, padded with NUL bytes.
+    public static final int RECORD_BYTES = 32;
+
+    /**
+     * Builds the StringCoordinates of one coordinate type; the coordinate
+     * type registry holds one per string type.
+     */
+    public interface Factory {
+
+        StringCoordinates source(int coordinateType, String coordinateString, int precision) throws CoordinateConversionException;
+
+        StringCoordinates target(int coordinateType, int precision);
+    }
+
     // Single Results input
     public StringCoordinatesArray(StringCoordinates coords) {
         log.debug("Entering StringCoordinatesArray(StringCoordinates)");
@@ -54,99 +63,76 @@ public class StringCoordinatesArray extends CoordinatesArray {
         log.debug("Leaving StringCoordinatesArray(ConvertResults[])");
     }
 
-    // File input
-    public StringCoordinatesArray(ArrayList<String> inputCoords, int projectionType, int precision) throws CoordinateConversionException {
-        log.debug("Entering StringCoordinatesArray(ArrayList<String>, int, int)");
-
-        CoordinateTuple[] coordinates;
-        Iterator<String> iter = inputCoords.iterator();
+    // Mapped file input
+    public StringCoordinatesArray(BulkRecordReader records, int projectionType, int precision, Factory factory)
+            throws CoordinateConversionException {
+        log.debug("Entering StringCoordinatesArray(BulkRecordReader, int, int, Factory)");
 
-        switch (projectionType) {
+        StringCoordinates[] coordinates = new StringCoordinates[records.countRecords()];
 
-        case CoordinateType.USNG:
-        case CoordinateType.MGRS:
-            coordinates = new MGRSorUSNGCoordinates[inputCoords.size()];
-
-            for (int i = 0; iter.hasNext(); i++) {
-                coordinates[i] = new MGRSorUSNGCoordinates(projectionType, iter.next(), precision);
-            }
-            break;
+        for (int i = 0; records.nextRecord(); i++) {
+            coordinates[i] = factory.source(projectionType, records.getLine(), precision);
+        }
 
-        case CoordinateType.BNG:
-            coordinates = new BNGCoordinates[inputCoords.size()];
+        setCoordinates(coordinates);
 
-            for (int i = 0; iter.hasNext(); i++) {
-                coordinates[i] = new BNGCoordinates(projectionType, iter.next(), precision);
-            }
-            break;
+        log.debug("Leaving StringCoordinatesArray(BulkRecordReader, int, int, Factory)");
+    }
 
-        case CoordinateType.GARS:
-            coordinates = new GARSCoordinates[inputCoords.size()];
+    // Binary input
+    public StringCoordinatesArray(ByteBuffer records, int count, int projectionType, int precision, Factory factory)
+            throws CoordinateConversionException {
+        log.debug("Entering StringCoordinatesArray(ByteBuffer, int, int, int, Factory)");
 
-            for (int i = 0; iter.hasNext(); i++) {
-                coordinates[i] = new GARSCoordinates(projectionType, iter.next(), precision);
-            }
-            break;
+        StringCoordinates[] coordinates = new StringCoordinates[count];
+        byte[] record = new byte[RECORD_BYTES];
 
-        case CoordinateType.GEOREF:
-            coordinates = new GEOREFCoordinates[inputCoords.size()];
+        for (int i = 0; i < count; i++) {
+            records.get(record);
 
-            for (int i = 0; iter.hasNext(); i++) {
-                coordinates[i] = new GEOREFCoordinates(projectionType, iter.next(), precision);
+            int length = 0;
+            while (length < RECORD_BYTES && record[length] != 0) {
+                length++;
             }
 
-            break;
-
-        case CoordinateType.F16GRS:
-
-            coordinates = new MGRSorUSNGCoordinates[inputCoords.size()];
-            int length;
-            String coordinateString;
-
-            for (int i = 0; iter.hasNext(); i++) {
-                coordinateString = iter.next();
-                length = coordinateString.length();
-
-                if ((coordinateString.charAt(length - 1) == ('0')) && (coordinateString.charAt(length - 2) == ('0'))) {
-                    coordinateString = coordinateString.substring(0, length - 2);
-                }
-
-                coordinates[i] = new MGRSorUSNGCoordinates(CoordinateType.MGRS, coordinateString, precision);
-            }
-            break;
-        default:
-            throw new CoordinateConversionException("Invalid string coordinate type");
+            coordinates[i] = factory.source(projectionType, new String(record, 0, length, ASCII), precision);
         }
 
         setCoordinates(coordinates);
 
-        log.debug("Leaving StringCoordinatesArray(ArrayList<String>, int, int)");
+        log.debug("Leaving StringCoordinatesArray(ByteBuffer, int, int, int, Factory)");
     }
 
     // Json input
-    public StringCoordinatesArray(String prefix, Map<String, Object> input, int projectionType, int precision) throws CoordinateConversionException, JSONException {
-        log.debug("Entering StringCoordinatesArray(String, Map<String, Object>, int)");
-
-        InputVerifier iv = new InputVerifier();
+    public StringCoordinatesArray(String prefix, Map<String, Object> input, int projectionType, int precision, Factory factory)
+            throws CoordinateConversionException, JSONException {
+        log.debug("Entering StringCoordinatesArray(String, Map<String, Object>, int, int, Factory)");
+
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
+        FieldSchema fields = new FieldSchema(keys.coordinateString);
+        String[] record = fields.newRecord();
+        boolean isTarget = prefix.equals(GeoTransConstants.TARGET_PREFIX);
         StringCoordinates[] coordsToSet;
 
-        if( input.get(prefix + GeoTransConstants.COORDINATES) != null) {
-            JSONArray sourceCoords = new JSONArray(input.get(prefix + GeoTransConstants.COORDINATES).toString());
+        if( input.get(keys.coordinates) != null) {
+            JSONArray sourceCoords = new JSONArray(input.get(keys.coordinates).toString());
 
             coordsToSet = new StringCoordinates[sourceCoords.length()];
 
             for( int i = 0; i < sourceCoords.length(); i++ ) {
-                coordsToSet[i] = buildFromMap( iv.convertJSONToMap(sourceCoords.getJSONObject(i)), prefix, projectionType, precision);
+                coordsToSet[i] = isTarget ? factory.target(projectionType, precision)
+                        : factory.source(projectionType, fields.read(sourceCoords.getJSONObject(i), record)[0], precision);
             }
         }
         else {
             coordsToSet = new StringCoordinates[1];
-            coordsToSet[0] = buildFromMap( input, prefix, projectionType, precision );
+            coordsToSet[0] = isTarget ? factory.target(projectionType, precision)
+                    : factory.source(projectionType, fields.read(input, record)[0], precision);
         }
 
         setCoordinates(coordsToSet);
 
-        log.debug("Leaving StringCoordinatesArray(String, Map<String, Object>, int)");
+        log.debug("Leaving StringCoordinatesArray(String, Map<String, Object>, int, int, Factory)");
     }
 
     // Json output
@@ -167,78 +153,35 @@ public class StringCoordinatesArray extends CoordinatesArray {
             jsonToReturn = buildJSONOutput( stringCoordinates[0] );
         }
 
-        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn.toString());
+        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn);
         return jsonToReturn;
     }
 
-    // File output
-    public String toString(FormatOptions format) throws IOException {
-        log.debug("Entering toString(FormatOptions)");
+    // Binary output
+    @Override
+    public void writeRecord(ByteBuffer out, int index) throws CoordinateConversionException {
+        StringCoordinates coordinate = (StringCoordinates) getCoordinates()[index];
 
-        StringWriter sw = new StringWriter();
-        BufferedWriter writer = new BufferedWriter(sw);
+        byte[] coordinateString = coordinate.getCoordinateString().getBytes(ASCII);
 
-        StringCoordinates[] coords = (StringCoordinates[]) getCoordinates();
-
-        for (int i = 0; i < coords.length; i++) {
-            writer.write(coords[i].getCoordinateString());
-            writer.newLine();
+        if (coordinateString.length > RECORD_BYTES) {
+            throw new CoordinateConversionException(coordinate.getCoordinateString() + " does not fit a binary record!");
         }
 
-        writer.close();
-
-        log.debug("Leaving toString(FormatOptions)");
-        return sw.toString();
+        out.put(coordinateString);
+        for (int pad = coordinateString.length; pad < RECORD_BYTES; pad++) {
+            out.put((byte) 0);
+        }
     }
 
-    private StringCoordinates buildFromMap(Map<String,Object> input, String prefix, int projectionType, int precision) throws CoordinateConversionException {
-
-        InputVerifier iv = new InputVerifier();
-
-        log.debug("Switching on Coordinate Type {}", projectionType);
-        switch (projectionType) {
-        case CoordinateType.F16GRS:
-            if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {        
-                return new MGRSorUSNGCoordinates(CoordinateType.MGRS, precision);
-            }
-            
-            String coordinateString = iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_STRING);
-            int length = coordinateString.length();
-
-
-            if ((coordinateString.charAt(length - 1) == ('0')) && (coordinateString.charAt(length - 2) == ('0'))) {
-                coordinateString = coordinateString.substring(0, length - 2);
-            }
+    // File output
+    @Override
+    protected void formatRange(StringBuilder out, FormatOptions format, int from, int to) {
+        StringCoordinates[] coords = (StringCoordinates[]) getCoordinates();
 
-            return new MGRSorUSNGCoordinates(CoordinateType.MGRS, coordinateString, precision);
-
-        case CoordinateType.USNG:
-        case CoordinateType.MGRS:
-            if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {        
-                return new MGRSorUSNGCoordinates(CoordinateType.MGRS, precision);
-            }        	
-            return new MGRSorUSNGCoordinates(projectionType, iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_STRING), precision);
-
-        case CoordinateType.BNG:
-            if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {        
-                return new BNGCoordinates(projectionType, precision);
-            }          	
-            return new BNGCoordinates(projectionType, iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_STRING), precision);
-
-        case CoordinateType.GARS:
-            if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {        
-                return new GARSCoordinates(projectionType, precision);
-            }          	
-            return new GARSCoordinates(projectionType, iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_STRING), precision);
-
-        case CoordinateType.GEOREF:
-            if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {        
-                return new GEOREFCoordinates(projectionType, precision);
-            }         	
-            return new GEOREFCoordinates(projectionType, iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_STRING), precision);
-
-        default:
-            throw new CoordinateConversionException("Invalid string coordinate type");
+        for (int i = from; i < to; i++) {
+            out.append(coords[i].getCoordinateString());
+            out.append(NEW_LINE);
         }
     }
 
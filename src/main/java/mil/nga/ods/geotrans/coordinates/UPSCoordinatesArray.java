@@ -1,21 +1,19 @@
 package mil.nga.ods.geotrans.coordinates;
 
 import geotrans3.coordinates.ConvertResults;
-import geotrans3.coordinates.CoordinateTuple;
 import geotrans3.coordinates.UPSCoordinates;
 import geotrans3.enumerations.CoordinateType;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.FormatOptions;
-import geotrans3.misc.StringToVal;
+import mil.nga.ods.geotrans.utils.BulkRecordReader;
+import mil.nga.ods.geotrans.utils.CoordinateParser;
+import mil.nga.ods.geotrans.utils.FieldSchema;
 import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 import mil.nga.ods.geotrans.utils.StringToRawVal;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.codehaus.jettison.json.JSONArray;
@@ -28,6 +26,9 @@ public class UPSCoordinatesArray extends CoordinatesArray {
 
     private static final Logger log = LoggerFactory.getLogger(UPSCoordinatesArray.class.getName());
 
+    // Binary record: byte hemisphere, easting, northing.
+    public static final int RECORD_BYTES = 17;
+
     // Single Results input
     public UPSCoordinatesArray(UPSCoordinates coords) {
         log.debug("Entering UPSCoordinatesArray(UPSCoordinates)");
@@ -52,53 +53,67 @@ public class UPSCoordinatesArray extends CoordinatesArray {
         log.debug("Leaving UPSCoordinatesArray(ConvertResults[])");
     }
 
-    // File input
-    public UPSCoordinatesArray(ArrayList<String> coords, int projectionType) throws CoordinateConversionException {
-        log.debug("Entering UPSCoordinatesArray(ArrayList<String>, int)");
+    // Mapped file input
+    public UPSCoordinatesArray(BulkRecordReader records, int projectionType) throws CoordinateConversionException {
+        log.debug("Entering UPSCoordinatesArray(BulkRecordReader, int)");
+
+        UPSCoordinates[] coordinates = new UPSCoordinates[records.countRecords()];
 
-        StringToVal stringToVal = new StringToVal();
+        for (int i = 0; records.nextRecord(); i++) {
+            coordinates[i] = new UPSCoordinates(
+                    projectionType,
+                    records.getChar(0),
+                    records.getDouble(1),
+                    records.getDouble(2));
+        }
 
-        CoordinateTuple[] coordinates = new CoordinateTuple[0];
-        Iterator<String> iter = coords.iterator();
+        setCoordinates(coordinates);
 
-        String coordinateTuple[];
+        log.debug("Leaving UPSCoordinatesArray(BulkRecordReader, int)");
+    }
 
-        coordinates = new UPSCoordinates[coords.size()];
+    // Binary input
+    public UPSCoordinatesArray(ByteBuffer records, int count, int projectionType) {
+        log.debug("Entering UPSCoordinatesArray(ByteBuffer, int, int)");
 
-        for (int i = 0; iter.hasNext(); i++) {
-            coordinateTuple = iter.next().split(",");
+        UPSCoordinates[] coordinates = new UPSCoordinates[count];
 
+        for (int i = 0; i < count; i++) {
             coordinates[i] = new UPSCoordinates(
                     projectionType,
-                    coordinateTuple[0].trim().charAt(0),
-                    stringToVal.stringToDouble(coordinateTuple[1].trim()),
-                    stringToVal.stringToDouble(coordinateTuple[2].trim()));
+                    (char) (records.get() & 0xff),
+                    records.getDouble(),
+                    records.getDouble());
         }
 
         setCoordinates(coordinates);
 
-        log.debug("Leaving UPSCoordinatesArray(ArrayList<String>, int)");
+        log.debug("Leaving UPSCoordinatesArray(ByteBuffer, int, int)");
     }
 
     // Json input
     public UPSCoordinatesArray(String prefix, Map<String, Object> input ) throws CoordinateConversionException, JSONException {
         log.debug("Entering UPSCoordinatesArray(String, Map<String, Object>)");
 
-        InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
+        FieldSchema fields = new FieldSchema(keys.hemisphere, keys.easting, keys.northing);
+        String[] record = fields.newRecord();
+        CoordinateParser parser = new CoordinateParser();
+        boolean isTarget = prefix.equals(GeoTransConstants.TARGET_PREFIX);
         UPSCoordinates[] coordsToSet;
 
-        if( input.get(prefix + GeoTransConstants.COORDINATES) != null) {
-            JSONArray sourceCoords = new JSONArray(input.get(prefix + GeoTransConstants.COORDINATES).toString());
+        if( input.get(keys.coordinates) != null) {
+            JSONArray sourceCoords = new JSONArray(input.get(keys.coordinates).toString());
 
             coordsToSet = new UPSCoordinates[sourceCoords.length()];
 
             for( int i = 0; i < sourceCoords.length(); i++ ) {
-                coordsToSet[i] = buildFromMap( iv.convertJSONToMap(sourceCoords.getJSONObject(i)), prefix );
+                coordsToSet[i] = buildFromRecord( isTarget ? null : fields.read(sourceCoords.getJSONObject(i), record), parser );
             }
         }
         else {
             coordsToSet = new UPSCoordinates[1];
-            coordsToSet[0] = buildFromMap( input, prefix );
+            coordsToSet[0] = buildFromRecord( isTarget ? null : fields.read(input, record), parser );
         }
 
         setCoordinates(coordsToSet);
@@ -124,49 +139,52 @@ public class UPSCoordinatesArray extends CoordinatesArray {
             jsonToReturn = buildJSONOutput( upsCoordinates[0], format);
         }
 
-        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn.toString());
+        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn);
         return jsonToReturn;
     }
 
-    // File output
-    public String toString(FormatOptions format) throws IOException, CoordinateConversionException {
-        log.debug("Entering toString(FormatOptions)");
+    // Binary output
+    @Override
+    public void writeRecord(ByteBuffer out, int index) {
+        UPSCoordinates coordinate = (UPSCoordinates) getCoordinates()[index];
 
-        StringToRawVal stringToRawVal = new StringToRawVal(format.getRange(), format.getLeadingZeros(), format.getSeparator());
+        out.put((byte) coordinate.getHemisphere());
+        out.putDouble(coordinate.getEasting());
+        out.putDouble(coordinate.getNorthing());
+    }
 
+    // File output
+    @Override
+    protected void formatRange(StringBuilder out, FormatOptions format, int from, int to) throws CoordinateConversionException {
         InputVerifier iv = new InputVerifier();
-        StringWriter sw = new StringWriter();
-        BufferedWriter writer = new BufferedWriter(sw);
-
         UPSCoordinates[] coords = (UPSCoordinates[]) getCoordinates();
 
-        for (int i = 0; i < coords.length; i++) {
-            writer.write(String.valueOf( coords[i].getHemisphere() ));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getEasting()) ));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getNorthing()) ));
-            writer.newLine();
-        }
-
-        writer.close();
+        StringToRawVal stringToRawVal = new StringToRawVal(format.getRange(), format.getLeadingZeros(), format.getSeparator());
 
-        log.debug("Leaving toString(FormatOptions)");
-        return sw.toString();
+        for (int i = from; i < to; i++) {
+            out.append(coords[i].getHemisphere());
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getEasting()) ));
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getNorthing()) ));
+            out.append(NEW_LINE);
+        }
     }
 
-    private UPSCoordinates buildFromMap(Map<String,Object> input, String prefix) throws CoordinateConversionException {
-        InputVerifier iv = new InputVerifier();
-        StringToVal stringToVal = new StringToVal();
-        if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {        
+    /**
+     * @param record
+     *            The fields of the point, or null for the target coordinates.
+     */
+    private UPSCoordinates buildFromRecord(String[] record, CoordinateParser parser) throws CoordinateConversionException {
+        if( record == null ) {
 	        return new UPSCoordinates(CoordinateType.UPS);
-        } 
+        }
         else {
 	        return new UPSCoordinates(
 	                CoordinateType.UPS,
-	                iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.HEMISPHERE).charAt(0),
-	                stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.EASTING)),
-	                stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.NORTHING)));
+	                record[0].charAt(0),
+	                parser.parseDouble(record[1]),
+	                parser.parseDouble(record[2]));
         }
     }
 
@@ -6,16 +6,15 @@ import geotrans3.coordinates.UTMCoordinates;
 import geotrans3.enumerations.CoordinateType;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.FormatOptions;
-import geotrans3.misc.StringToVal;
+import mil.nga.ods.geotrans.utils.BulkRecordReader;
+import mil.nga.ods.geotrans.utils.CoordinateParser;
+import mil.nga.ods.geotrans.utils.FieldSchema;
 import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 import mil.nga.ods.geotrans.utils.StringToRawVal;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 import org.codehaus.jettison.json.JSONArray;
@@ -28,6 +27,9 @@ public class UTMCoordinatesArray extends CoordinatesArray {
 
     private static final Logger log = LoggerFactory.getLogger(UTMCoordinatesArray.class.getName());
 
+    // Binary record: int zone, byte hemisphere, easting, northing.
+    public static final int RECORD_BYTES = 21;
+
     // Single Results input
     public UTMCoordinatesArray(UTMCoordinates coords) {
         log.debug("Entering UTMCoordinatesArray(UTMCoordinates)");
@@ -52,51 +54,69 @@ public class UTMCoordinatesArray extends CoordinatesArray {
         log.debug("Leaving UTMCoordinatesArray(ConvertResults[])");
     }
 
-    // File input
-    public UTMCoordinatesArray(ArrayList<String> coords, int projectionType) throws CoordinateConversionException {
-        log.debug("Entering UTMCoordinatesArray(ArrayList<String>, int)");
+    // Mapped file input
+    public UTMCoordinatesArray(BulkRecordReader records, int projectionType) throws CoordinateConversionException {
+        log.debug("Entering UTMCoordinatesArray(BulkRecordReader, int)");
+
+        UTMCoordinates[] coordinates = new UTMCoordinates[records.countRecords()];
+
+        for (int i = 0; records.nextRecord(); i++) {
+            coordinates[i] = new UTMCoordinates(
+                    projectionType,
+                    records.getUntrimmedInt(0),
+                    records.getChar(1),
+                    records.getDouble(2),
+                    records.getDouble(3));
+        }
+
+        setCoordinates(coordinates);
 
-        UTMCoordinates[] coordinates = new UTMCoordinates[coords.size()];
-        Iterator<String> iter = coords.iterator();
+        log.debug("Leaving UTMCoordinatesArray(BulkRecordReader, int)");
+    }
 
-        String coordinateTuple[];
-        StringToVal stringToVal = new StringToVal();
+    // Binary input
+    public UTMCoordinatesArray(ByteBuffer records, int count, int projectionType) {
+        log.debug("Entering UTMCoordinatesArray(ByteBuffer, int, int)");
 
-        for (int i = 0; iter.hasNext(); i++) {
-            coordinateTuple = iter.next().split(",");
+        UTMCoordinates[] coordinates = new UTMCoordinates[count];
 
+        for (int i = 0; i < count; i++) {
             coordinates[i] = new UTMCoordinates(
                     projectionType,
-                    stringToVal.stringToInt(coordinateTuple[0]),
-                    coordinateTuple[1].trim().charAt(0),
-                    stringToVal.stringToDouble(coordinateTuple[2].trim()),
-                    stringToVal.stringToDouble(coordinateTuple[3].trim()));
+                    records.getInt(),
+                    (char) (records.get() & 0xff),
+                    records.getDouble(),
+                    records.getDouble());
         }
 
         setCoordinates(coordinates);
 
-        log.debug("Leaving UTMCoordinatesArray(ArrayList<String>, int)");
+        log.debug("Leaving UTMCoordinatesArray(ByteBuffer, int, int)");
     }
 
     // Json input
     public UTMCoordinatesArray(String prefix, Map<String, Object> input) throws CoordinateConversionException, JSONException {
         log.debug("Entering UTMCoordinatesArray(String, Map<String, Object>)");
 
-        InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
+        FieldSchema fields = new FieldSchema(keys.zoneNumber, keys.hemisphere, keys.easting, keys.northing);
+        String[] record = fields.newRecord();
+        CoordinateParser parser = new CoordinateParser();
+        boolean isTarget = prefix.equals(GeoTransConstants.TARGET_PREFIX);
         UTMCoordinates[] coordsToSet;
 
-        if( input.get(prefix + GeoTransConstants.COORDINATES) != null) {
-            JSONArray sourceCoords = new JSONArray(input.get(prefix + GeoTransConstants.COORDINATES).toString());
+        if( input.get(keys.coordinates) != null) {
+            JSONArray sourceCoords = new JSONArray(input.get(keys.coordinates).toString());
 
             coordsToSet = new UTMCoordinates[sourceCoords.length()];
 
             for( int i = 0; i < sourceCoords.length(); i++ ) {
-                coordsToSet[i] = buildFromMap( iv.convertJSONToMap(sourceCoords.getJSONObject(i)), prefix);
+                coordsToSet[i] = buildFromRecord( isTarget ? null : fields.read(sourceCoords.getJSONObject(i), record), parser );
             }
         }
         else {
             coordsToSet = new UTMCoordinates[1];
-            coordsToSet[0] = buildFromMap( input, prefix );
+            coordsToSet[0] = buildFromRecord( isTarget ? null : fields.read(input, record), parser );
         }
 
         setCoordinates(coordsToSet);
@@ -122,52 +142,56 @@ public class UTMCoordinatesArray extends CoordinatesArray {
             jsonToReturn = buildJSONOutput( utmCoordinates[0], format);
         }
 
-        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn.toString());
+        log.debug("Leaving toJson(FormatOptions) with {}", jsonToReturn);
         return jsonToReturn;
     }
 
-    // File output
-    public String toString(FormatOptions format) throws IOException, CoordinateConversionException {
-        log.debug("Entering toString(FormatOptions)");
+    // Binary output
+    @Override
+    public void writeRecord(ByteBuffer out, int index) {
+        UTMCoordinates coordinate = (UTMCoordinates) getCoordinates()[index];
 
-        InputVerifier iv = new InputVerifier();
-        StringWriter sw = new StringWriter();
-        BufferedWriter writer = new BufferedWriter(sw);
+        out.putInt((int) coordinate.getZone());
+        out.put((byte) coordinate.getHemisphere());
+        out.putDouble(coordinate.getEasting());
+        out.putDouble(coordinate.getNorthing());
+    }
 
+    // File output
+    @Override
+    protected void formatRange(StringBuilder out, FormatOptions format, int from, int to) throws CoordinateConversionException {
+        InputVerifier iv = new InputVerifier();
         UTMCoordinates[] coords = (UTMCoordinates[]) getCoordinates();
 
         StringToRawVal stringToRawVal = new StringToRawVal(format.getRange(), format.getLeadingZeros(), format.getSeparator());
 
-        for (int i = 0; i < coords.length; i++) {
-            writer.write(String.valueOf( coords[i].getZone() ));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(String.valueOf( coords[i].getHemisphere() ));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getEasting()) ));
-            writer.write(GeoTransConstants.COMMA_SPACE);
-            writer.write(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getNorthing()) ));
-            writer.newLine();
+        for (int i = from; i < to; i++) {
+            out.append(coords[i].getZone());
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(coords[i].getHemisphere());
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getEasting()) ));
+            out.append(GeoTransConstants.COMMA_SPACE);
+            out.append(stringToRawVal.doubleToString( iv.verifyDoubleIsValid(coords[i].getNorthing()) ));
+            out.append(NEW_LINE);
         }
-
-        writer.close();
-
-        log.debug("Leaving toString(FormatOptions)");
-        return sw.toString();
     }
 
-    private UTMCoordinates buildFromMap(Map<String,Object> input, String prefix) throws CoordinateConversionException {
-        InputVerifier iv = new InputVerifier();
-        StringToVal stringToVal = new StringToVal();
-        if( prefix.equals(GeoTransConstants.TARGET_PREFIX) ) {        
+    /**
+     * @param record
+     *            The fields of the point, or null for the target coordinates.
+     */
+    private UTMCoordinates buildFromRecord(String[] record, CoordinateParser parser) throws CoordinateConversionException {
+        if( record == null ) {
 	        return new UTMCoordinates(CoordinateType.UTM);
-        } 
-        else {        
+        }
+        else {
 	        return new UTMCoordinates(
 	                CoordinateType.UTM,
-	                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.ZONE_NUMBER) ),
-	                iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.HEMISPHERE).charAt(0),
-	                stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.EASTING) ),
-	                stringToVal.stringToDouble(iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.NORTHING) ));
+	                parser.parseInt(record[0]),
+	                record[1].charAt(0),
+	                parser.parseDouble(record[2]),
+	                parser.parseDouble(record[3]));
         }
     }
 
@@ -3,7 +3,7 @@ package mil.nga.ods.geotrans.parameters;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.StringToVal;
 import geotrans3.parameters.GeodeticParameters;
-import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 
 import java.util.Map;
@@ -19,11 +19,12 @@ public class GeodeticParamWrapper extends CoordinateSystemParamWrapper {
         log.debug("Entering GeodeticParamWrapper");
 
         InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
         StringToVal stringToVal = new StringToVal();
 
         setParameters(new GeodeticParameters(
-                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_TYPE) ),
-                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.HEIGHT_TYPE) )));
+                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, keys.coordinateType) ),
+                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, keys.heightType) )));
 
         log.debug("Leaving GeodeticParamWrapper");
     }
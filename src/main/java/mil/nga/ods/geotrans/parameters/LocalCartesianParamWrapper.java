@@ -4,7 +4,7 @@ import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.StringToVal;
 import geotrans3.parameters.LocalCartesianParameters;
 import geotrans3.utility.Constants;
-import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 
 import java.util.Map;
@@ -20,14 +20,15 @@ public class LocalCartesianParamWrapper extends CoordinateSystemParamWrapper {
         log.debug("Entering LocalCartesianParamWrapper");
 
         InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
         StringToVal stringToVal = new StringToVal();
 
         setParameters(new LocalCartesianParameters(
-                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_TYPE) ),
-                stringToVal.stringToLongitude( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.ORIGIN_LONGITUDE) ) * Constants.PI_OVER_180,
-                stringToVal.stringToLatitude( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.ORIGIN_LATITUDE) ) * Constants.PI_OVER_180,
-                stringToVal.stringToDouble( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.ORIGIN_HEIGHT) ),
-                stringToVal.stringToLongitude( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.ORIENTATION) ) * Constants.PI_OVER_180));
+                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, keys.coordinateType) ),
+                stringToVal.stringToLongitude( iv.verifyInputStringIsValid(input, keys.originLongitude) ) * Constants.PI_OVER_180,
+                stringToVal.stringToLatitude( iv.verifyInputStringIsValid(input, keys.originLatitude) ) * Constants.PI_OVER_180,
+                stringToVal.stringToDouble( iv.verifyInputStringIsValid(input, keys.originHeight) ),
+                stringToVal.stringToLongitude( iv.verifyInputStringIsValid(input, keys.orientation) ) * Constants.PI_OVER_180));
         
         log.debug("Leaving LocalCartesianParamWrapper");
     }
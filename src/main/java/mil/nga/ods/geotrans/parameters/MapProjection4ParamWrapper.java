@@ -4,7 +4,7 @@ import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.StringToVal;
 import geotrans3.parameters.MapProjection4Parameters;
 import geotrans3.utility.Constants;
-import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 
 import java.util.Map;
@@ -20,14 +20,15 @@ public class MapProjection4ParamWrapper extends CoordinateSystemParamWrapper {
         log.debug("Entering MapProjection4ParamWrapper");
 
         InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
         StringToVal stringToVal = new StringToVal();
 
         setParameters(new MapProjection4Parameters(
-                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_TYPE) ),
-                stringToVal.stringToLongitude( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.CENTRAL_MERIDIAN) ) * Constants.PI_OVER_180,
-                stringToVal.stringToLatitude( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.ORIGIN_LATITUDE) ) * Constants.PI_OVER_180,
-                stringToVal.stringToDouble( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.FALSE_EASTING) ),
-                stringToVal.stringToDouble( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.FALSE_NORTHING) )));        	
+                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, keys.coordinateType) ),
+                stringToVal.stringToLongitude( iv.verifyInputStringIsValid(input, keys.centralMeridian) ) * Constants.PI_OVER_180,
+                stringToVal.stringToLatitude( iv.verifyInputStringIsValid(input, keys.originLatitude) ) * Constants.PI_OVER_180,
+                stringToVal.stringToDouble( iv.verifyInputStringIsValid(input, keys.falseEasting) ),
+                stringToVal.stringToDouble( iv.verifyInputStringIsValid(input, keys.falseNorthing) )));        	
 
         log.debug("Leaving MapProjection4ParamWrapper");
     }
@@ -3,7 +3,7 @@ package mil.nga.ods.geotrans.parameters;
 import geotrans3.exception.CoordinateConversionException;
 import geotrans3.misc.StringToVal;
 import geotrans3.parameters.UTMParameters;
-import mil.nga.ods.geotrans.utils.GeoTransConstants;
+import mil.nga.ods.geotrans.utils.HeaderKeys;
 import mil.nga.ods.geotrans.utils.InputVerifier;
 
 import java.util.Map;
@@ -22,12 +22,13 @@ public class UTMParamWrapper extends CoordinateSystemParamWrapper {
         int override = 0;
 
         InputVerifier iv = new InputVerifier();
+        HeaderKeys keys = HeaderKeys.forPrefix(prefix);
         StringToVal stringToVal = new StringToVal();
 
-        if ( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.ZONE_OVERRIDE).equalsIgnoreCase("true") ) {
+        if ( iv.verifyInputStringIsValid(input, keys.zoneOverride).equalsIgnoreCase("true") ) {
             override = 1;
 
-            zone = stringToVal.stringToInt( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.ZONE_NUMBER) );
+            zone = stringToVal.stringToInt( iv.verifyInputStringIsValid(input, keys.zoneNumber) );
 
             if ((zone < 1) || (zone > 60)) {
                 throw new CoordinateConversionException("Zone out of range (1-60)");
@@ -35,7 +36,7 @@ public class UTMParamWrapper extends CoordinateSystemParamWrapper {
         }
 
         setParameters(new UTMParameters(
-                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, prefix + GeoTransConstants.COORDINATE_TYPE) ),
+                stringToVal.stringToInt( iv.verifyInputStringIsValid(input, keys.coordinateType) ),
                 zone,
                 override));
 
@@ -0,0 +1,217 @@
+package mil.nga.ods.geotrans.server;
+
+import geotrans3.exception.CoordinateConversionException;
+import mil.nga.ods.geotrans.utils.GeoTransConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Base of the GeoTransServer handlers. It checks the request method, maps
+ * failures to error responses and negotiates gzip: request bodies sent with
+ * "Content-Encoding: gzip" are decompressed, and responses are compressed
+ * when the client accepts gzip.
+ * <p>
+ * Invalid requests (CoordinateConversionException, JSONException) get a 400
+ * response and other failures a 500 response, both with a body of
+ * {"error": message}, as long as no part of the response was sent yet.
+ */
+abstract class GeoTransHandler implements HttpHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(GeoTransHandler.class.getName());
+
+    protected static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    protected static final String GET = "GET";
+    protected static final String POST = "POST";
+
+    protected static final String JSON_TYPE = "application/json; charset=utf-8";
+    protected static final String TEXT_TYPE = "text/plain; charset=utf-8";
+
+    private static final String GZIP = "gzip";
+    private static final int GZIP_BUFFER_BYTES = 64 * 1024;
+
+    private String method;
+
+    /**
+     * @param method
+     *            The only request method the handler accepts.
+     */
+    protected GeoTransHandler(String method) {
+        this.method = method;
+    }
+
+    /**
+     * Handles a request whose method was checked. The response is either
+     * sent whole with ResponseStream.send() or streamed by writing to the
+     * ResponseStream, which sends the headers on the first write.
+     */
+    protected abstract void respond(HttpExchange exchange, ResponseStream response) throws Exception;
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        log.debug("Entering handle() for {} {}", exchange.getRequestMethod(), exchange.getRequestURI());
+
+        ResponseStream response = new ResponseStream(exchange);
+
+        try {
+            if (!method.equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", method);
+                sendError(response, 405, "Method " + exchange.getRequestMethod() + " is not allowed!");
+            } else {
+                respond(exchange, response);
+                response.close();
+            }
+        } catch (CoordinateConversionException | JSONException e) {
+            fail(exchange, response, 400, e);
+        } catch (Exception e) {
+            log.error("Request {} failed: {}", exchange.getRequestURI(), e.getMessage());
+            fail(exchange, response, 500, e);
+        } finally {
+            exchange.close();
+        }
+
+        log.debug("Leaving handle()");
+    }
+
+    /**
+     * @return The request body, decompressed if it was sent gzip encoded.
+     */
+    protected static InputStream requestBody(HttpExchange exchange) throws IOException {
+        if (GZIP.equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            return new GZIPInputStream(exchange.getRequestBody(), GZIP_BUFFER_BYTES);
+        }
+        return exchange.getRequestBody();
+    }
+
+    protected static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = requestBody(exchange)) {
+            return new String(IOUtils.toByteArray(in), UTF_8);
+        }
+    }
+
+    protected static boolean acceptsGzip(HttpExchange exchange) {
+        String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        return accepted != null && accepted.toLowerCase().contains(GZIP);
+    }
+
+    protected static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static void fail(HttpExchange exchange, ResponseStream response, int status, Exception e) throws IOException {
+        if (response.isStarted()) {
+            // Too late for an error status; the client sees a cut off body.
+            log.debug("Request {} failed after the response started: {}", exchange.getRequestURI(), e.getMessage());
+            return;
+        }
+        sendError(response, status, String.valueOf(e.getMessage()));
+    }
+
+    private static void sendError(ResponseStream response, int status, String message) throws IOException {
+        String body;
+
+        try {
+            body = new JSONObject().put(GeoTransConstants.ERROR, message).toString();
+        } catch (JSONException e) {
+            body = "{}";
+        }
+        response.send(status, JSON_TYPE, body.getBytes(UTF_8));
+    }
+
+    /**
+     * The response of an exchange. Either send() sends a complete response,
+     * or the body is streamed as a chunked 200 response whose headers are
+     * sent on the first write, so a handler that fails before producing
+     * output can still send an error status.
+     */
+    protected static class ResponseStream extends OutputStream {
+
+        private HttpExchange exchange;
+        private OutputStream body;
+        private boolean sent;
+
+        ResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        boolean isStarted() {
+            return sent || body != null;
+        }
+
+        /**
+         * Sends a complete response body with a fixed length, compressing it
+         * first if the client accepts gzip.
+         */
+        public void send(int status, String contentType, byte[] bytes) throws IOException {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.getResponseHeaders().add("Vary", "Accept-Encoding");
+
+            if (acceptsGzip(exchange)) {
+                exchange.getResponseHeaders().set("Content-Encoding", GZIP);
+                bytes = gzip(bytes);
+            }
+
+            sent = true;
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private OutputStream body() throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(200, 0);
+                body = exchange.getResponseBody();
+            }
+            return body;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            body().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            body().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (body != null) {
+                body.flush();
+            }
+        }
+
+        /**
+         * Ends the streamed body; an empty 200 response if nothing was
+         * written.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!sent) {
+                body().close();
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package mil.nga.ods.geotrans.server;
+
+import mil.nga.ods.geotrans.GeoTransMaster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Embedded HTTP server exposing the GeoTransMaster methods, built on the
+ * JDK's com.sun.net.httpserver so it needs no further dependencies. Nothing
+ * starts it unless asked to, either with start() or from the command line:
+ *
+ * <pre>
+ * java -cp ... mil.nga.ods.geotrans.server.GeoTransServer [port [threads]]
+ * </pre>
+ *
+ * Endpoints, all relative to the server root:
+ *
+ * <pre>
+ * POST /conversion              doConversion(), JSON in and out
+ * POST /multiTargetConversion   doMultiTargetConversion(), JSON in and out
+ * POST /coordinateTranslation   doCoordinateTranslation(), JSON in and out
+ * POST /batchCoordinateTranslation
+ *                               doBatchCoordinateTranslation(), JSON in and out
+ * POST /bulkConversion          doBulkConversion(), bulk file in, text lines out
+ * POST /streamingConversion     doStreamingConversion(), NDJSON in and out
+ * GET  /datums                  retrieveAvailableDatums()
+ * GET  /ellipsoids              retrieveAvailableEllipsoids()
+ * GET  /coordinateTypes         retrieveAvailableCoordinateTypes()
+ * GET  /sourceCoordinateInput   retrieveSourceCoordinateInputByType()
+ * </pre>
+ *
+ * Connections are kept alive between requests. Bulk and streaming results
+ * are sent chunked as they are produced. Request bodies may be gzip encoded
+ * and responses, except the streaming ones, are gzip encoded for clients
+ * that accept it. The retrieve* catalogs do not change while the server
+ * runs and are built once.
+ * <p>
+ * Requests are handled by a fixed pool of worker threads with a bounded
+ * queue. When all workers are busy and the queue is full, the server stops
+ * accepting requests until a worker is free, so excess connections wait in
+ * the listen backlog instead of using memory.
+ */
+public class GeoTransServer {
+
+    private static final Logger log = LoggerFactory.getLogger(GeoTransServer.class.getName());
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    // Requests waiting for a worker, per worker.
+    private static final int QUEUED_PER_THREAD = 4;
+    private static final int BACKLOG = 256;
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    private InetSocketAddress address;
+    private int threads;
+
+    private GeoTransMaster master = new GeoTransMaster();
+
+    private HttpServer server;
+    private ThreadPoolExecutor workers;
+
+    /**
+     * @param address
+     *            Address to listen on.
+     * @param threads
+     *            Number of worker threads.
+     */
+    public GeoTransServer(InetSocketAddress address, int threads) {
+        this.address = address;
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_THREADS;
+
+        new GeoTransServer(new InetSocketAddress(port), threads).start();
+    }
+
+    /**
+     * Binds the address and starts serving requests in the background.
+     *
+     * @throws IOException
+     *             If the address cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        log.debug("Entering start() on {} with {} thread(s)", address, threads);
+
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(threads
+                * QUEUED_PER_THREAD), new WorkerThreadFactory(), new WaitForWorker());
+
+        server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(workers);
+        createContexts();
+        server.start();
+
+        log.info("GeoTrans server listening on {}", server.getAddress());
+    }
+
+    /**
+     * Stops accepting requests, waits a few seconds for the running ones and
+     * stops the worker threads.
+     */
+    public synchronized void stop() {
+        log.debug("Entering stop()");
+
+        if (server != null) {
+            server.stop(STOP_DELAY_SECONDS);
+            workers.shutdown();
+            server = null;
+        }
+
+        log.debug("Leaving stop()");
+    }
+
+    /**
+     * @return The bound address, e.g. to find the port chosen for port 0.
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return server == null ? address : server.getAddress();
+    }
+
+    private void createContexts() {
+        server.createContext("/conversion", new JsonHandler() {
+            @Override
+            protected JSONObject call(String request) throws Exception {
+                return master.doConversion(request);
+            }
+        });
+        server.createContext("/multiTargetConversion", new JsonHandler() {
+            @Override
+            protected JSONObject call(String request) throws Exception {
+                return master.doMultiTargetConversion(request);
+            }
+        });
+        server.createContext("/coordinateTranslation", new JsonHandler() {
+            @Override
+            protected JSONObject call(String request) throws Exception {
+                return master.doCoordinateTranslation(request);
+            }
+        });
+
+        server.createContext("/batchCoordinateTranslation", new JsonHandler() {
+            @Override
+            protected JSONObject call(String request) throws Exception {
+                return master.doBatchCoordinateTranslation(request);
+            }
+        });
+
+        server.createContext("/bulkConversion", new GeoTransHandler(GeoTransHandler.POST) {
+            @Override
+            protected void respond(HttpExchange exchange, ResponseStream response) throws Exception {
+                boolean compress = acceptsGzip(exchange);
+
+                exchange.getResponseHeaders().set("Content-Type", TEXT_TYPE);
+                if (compress) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+
+                try (InputStream in = requestBody(exchange)) {
+                    master.doBulkConversion(in, response, compress);
+                }
+            }
+        });
+        server.createContext("/streamingConversion", new GeoTransHandler(GeoTransHandler.POST) {
+            @Override
+            protected void respond(HttpExchange exchange, ResponseStream response) throws Exception {
+                exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+
+                try (InputStream in = requestBody(exchange)) {
+                    master.doStreamingConversion(in, response);
+                }
+            }
+        });
+
+        server.createContext("/datums", new CatalogHandler() {
+            @Override
+            protected JSONObject build() throws Exception {
+                return master.retrieveAvailableDatums();
+            }
+        });
+        server.createContext("/ellipsoids", new CatalogHandler() {
+            @Override
+            protected JSONObject build() throws Exception {
+                return master.retrieveAvailableEllipsoids();
+            }
+        });
+        server.createContext("/coordinateTypes", new CatalogHandler() {
+            @Override
+            protected JSONObject build() throws Exception {
+                return master.retrieveAvailableCoordinateTypes();
+            }
+        });
+        server.createContext("/sourceCoordinateInput", new CatalogHandler() {
+            @Override
+            protected JSONObject build() throws Exception {
+                return master.retrieveSourceCoordinateInputByType();
+            }
+        });
+    }
+
+    /**
+     * Handler of a POST endpoint taking and returning a JSON object.
+     */
+    private abstract static class JsonHandler extends GeoTransHandler {
+
+        JsonHandler() {
+            super(POST);
+        }
+
+        protected abstract JSONObject call(String request) throws Exception;
+
+        @Override
+        protected void respond(HttpExchange exchange, ResponseStream response) throws Exception {
+            response.send(200, JSON_TYPE, call(readBody(exchange)).toString().getBytes(UTF_8));
+        }
+    }
+
+    /**
+     * Handler of a GET endpoint returning a catalog that is built on the
+     * first request and then served from memory.
+     */
+    private abstract static class CatalogHandler extends GeoTransHandler {
+
+        private volatile byte[] catalog;
+
+        CatalogHandler() {
+            super(GET);
+        }
+
+        protected abstract JSONObject build() throws Exception;
+
+        @Override
+        protected void respond(HttpExchange exchange, ResponseStream response) throws Exception {
+            byte[] body = catalog;
+
+            if (body == null) {
+                // Two first requests may both build it; they get equal catalogs.
+                body = build().toString().getBytes(UTF_8);
+                catalog = body;
+            }
+            response.send(200, JSON_TYPE, body);
+        }
+    }
+
+    /**
+     * Makes the dispatcher thread wait for room in the queue instead of
+     * dropping the request.
+     */
+    private static class WaitForWorker implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable request, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("The GeoTrans server is stopped");
+            }
+            try {
+                executor.getQueue().put(request);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable worker) {
+            Thread thread = new Thread(worker, "geotrans-http-" + count.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+}
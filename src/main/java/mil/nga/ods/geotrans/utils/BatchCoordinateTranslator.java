@@ -0,0 +1,158 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.enumerations.Range;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.misc.StringToVal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Translates many latitude and longitude strings (DMS, DM or decimal degrees)
+ * into decimal degrees, with the same results as doCoordinateTranslation().
+ * One translator keeps its parser and formatter for all strings, and the
+ * decimal degrees of the common cases are formatted straight from the double
+ * value instead of through BigDecimal, which gives the same text.
+ * <p>
+ * A translator is not thread safe; use one per thread.
+ */
+public class BatchCoordinateTranslator {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchCoordinateTranslator.class.getName());
+
+    // Marks a failed entry in the line based output.
+    public static final String ERROR_PREFIX = "#error: ";
+
+    private int lonRange;
+
+    private StringToVal stringToVal = new StringToVal();
+    private StringToRawVal stringToRawVal;
+
+    /**
+     * @param lonRange
+     *            Longitude range of the results, a geotrans3.enumerations.Range
+     *            value.
+     */
+    public BatchCoordinateTranslator(int lonRange) {
+        this.lonRange = lonRange;
+
+        stringToRawVal = new StringToRawVal(lonRange, false, ' ');
+    }
+
+    /**
+     * @param coordinateString
+     *            Latitude or longitude in any format StringToVal accepts.
+     * @param coordinateType
+     *            GeoTransConstants.LATITUDE_COORDINATE or LONGITUDE_COORDINATE.
+     * @return The value in decimal degrees.
+     * @throws CoordinateConversionException
+     *             If the string or the type is invalid.
+     */
+    public String translate(String coordinateString, int coordinateType) throws CoordinateConversionException {
+        if (coordinateType == GeoTransConstants.LATITUDE_COORDINATE) {
+            double latitude = stringToVal.stringToLatitude(coordinateString);
+            String degrees = plainDegrees(latitude);
+
+            return degrees != null ? degrees : stringToRawVal.latitudeToString(BigDecimal.valueOf(latitude), false, false, false);
+
+        } else if (coordinateType == GeoTransConstants.LONGITUDE_COORDINATE) {
+            double longitude = stringToVal.stringToLongitude(coordinateString);
+            boolean inRange = lonRange == Range._0_360 ? longitude >= 0 : lonRange == Range._180_180 && longitude <= 180;
+            String degrees = inRange ? plainDegrees(longitude) : null;
+
+            return degrees != null ? degrees : stringToRawVal.longitudeToString(BigDecimal.valueOf(longitude), false, false, false);
+
+        } else {
+            throw new CoordinateConversionException("Invalid Coordinate Type!");
+        }
+    }
+
+    /**
+     * Translates all strings, each with the type at the same index.
+     *
+     * @param errors
+     *            Receives the message of each failed entry at its index; may
+     *            be null to fail on the first invalid entry instead.
+     * @return The decimal degrees, null for failed entries.
+     * @throws CoordinateConversionException
+     *             If an entry is invalid and errors is null.
+     */
+    public String[] translate(String[] coordinateStrings, int[] coordinateTypes, String[] errors) throws CoordinateConversionException {
+        log.debug("Entering translate() with {} coordinate(s)", coordinateStrings.length);
+
+        if (coordinateTypes.length != coordinateStrings.length) {
+            throw new CoordinateConversionException("Expected " + coordinateStrings.length + " coordinate types, got " + coordinateTypes.length
+                    + "!");
+        }
+
+        String[] results = new String[coordinateStrings.length];
+
+        for (int i = 0; i < results.length; i++) {
+            try {
+                results[i] = translate(coordinateStrings[i], coordinateTypes[i]);
+            } catch (CoordinateConversionException e) {
+                if (errors == null) {
+                    throw new CoordinateConversionException("Coordinate " + i + ": " + e.getMessage());
+                }
+                errors[i] = e.getMessage();
+            }
+        }
+
+        log.debug("Leaving translate()");
+        return results;
+    }
+
+    /**
+     * Translates a stream of "coordinateType,coordinateString" lines into one
+     * line of decimal degrees each, in order. A line that cannot be
+     * translated produces a line starting with ERROR_PREFIX instead.
+     *
+     * @return The number of lines translated.
+     */
+    public long translateLines(BufferedReader in, Writer out) throws IOException {
+        long count = 0;
+        String line;
+
+        while ((line = in.readLine()) != null) {
+            int comma = line.indexOf(',');
+
+            try {
+                if (comma < 0) {
+                    throw new CoordinateConversionException("Expected coordinateType,coordinateString!");
+                }
+                out.write(translate(line.substring(comma + 1), stringToVal.stringToInt(line.substring(0, comma).trim())));
+            } catch (CoordinateConversionException e) {
+                out.write(ERROR_PREFIX + e.getMessage());
+            }
+            out.write('\n');
+            count++;
+        }
+
+        out.flush();
+        return count;
+    }
+
+    /**
+     * @return What StringToRawVal prints for a value with decimal degrees
+     *         output and no leading zeros, or null if the value needs the
+     *         BigDecimal formatting: BigDecimal.valueOf() keeps the digits of
+     *         Double.toString(), so the two only differ in exponent notation.
+     */
+    private static String plainDegrees(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return null;
+        }
+
+        String digits = Double.toString(Math.abs(value));
+
+        if (digits.indexOf('E') >= 0) {
+            return null;
+        }
+        return value < 0 ? '-' + digits : digits;
+    }
+}
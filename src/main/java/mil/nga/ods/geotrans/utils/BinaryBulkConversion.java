@@ -0,0 +1,221 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.misc.StringToVal;
+import mil.nga.ods.geotrans.coordinates.CoordinatesArray;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk conversion of the binary coordinate format. Input and output have the
+ * same layout, all numbers little-endian:
+ *
+ * <pre>
+ * 4 bytes   magic, the ASCII characters "GTBF"
+ * int32     format version, 1
+ * int32     header length in bytes
+ * header    UTF-8 text of "name: value" lines, using the GeoTransConstants
+ *           field names exactly like the header of a text bulk file, ending
+ *           with an "END OF HEADER" line
+ * records   fixed width records up to the end of the stream
+ * </pre>
+ *
+ * The record layout depends on the coordinate family of the source (input)
+ * or target (output) coordinate type:
+ *
+ * <pre>
+ * Geodetic        float64 longitude, float64 latitude (degrees), float64 height   24 bytes
+ * Map projection  float64 easting, float64 northing                               16 bytes
+ * Cartesian       float64 x, float64 y, float64 z                                 24 bytes
+ * UTM             int32 zone, byte hemisphere, float64 easting, float64 northing  21 bytes
+ * UPS             byte hemisphere, float64 easting, float64 northing              17 bytes
+ * MGRS, USNG, BNG, GARS, GEOREF, F16GRS
+ *                 ASCII coordinate string, padded with NUL bytes                  32 bytes
+ * </pre>
+ *
+ * The output header holds the target fields of the request, with
+ * targetCoordinateType set to the type of the output records. Records are
+ * converted in chunks through reused buffers, so no text is parsed or
+ * formatted; the GeoTrans conversion itself still creates its coordinate
+ * objects per point.
+ */
+public class BinaryBulkConversion {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryBulkConversion.class.getName());
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = { 'G', 'T', 'B', 'F' };
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Largest header accepted, to reject garbage before allocating for it.
+    private static final int MAX_HEADER_BYTES = 1024 * 1024;
+    private static final int CHUNK_RECORDS = 8192;
+
+    private ReadableByteChannel input;
+    private WritableByteChannel output;
+
+    /**
+     * @param input
+     *            Binary bulk request.
+     * @param output
+     *            Destination of the binary results; not closed.
+     */
+    public BinaryBulkConversion(ReadableByteChannel input, WritableByteChannel output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Reads the header, then converts records until the end of the input.
+     *
+     * @throws Exception
+     */
+    public void run() throws Exception {
+        log.debug("Entering run()");
+
+        GeoTransUtility gtUtility = new GeoTransUtility(readHeader());
+        gtUtility.initializeForConversion();
+
+        try (ConversionSession session = new ConversionSession(gtUtility)) {
+            int sourceType = new StringToVal().stringToInt(new InputVerifier().verifyInputStringIsValid(gtUtility.getHeaderFields(),
+                    GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.COORDINATE_TYPE));
+            int sourceBytes = recordBytes(sourceType);
+            int targetType = session.getTargetCoordinateType();
+            int precision = gtUtility.getFormat().getPrecision();
+
+            writeHeader(gtUtility.getHeaderFields(), targetType);
+
+            ByteBuffer records = ByteBuffer.allocate(CHUNK_RECORDS * sourceBytes).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer results = ByteBuffer.allocate(CHUNK_RECORDS * recordBytes(targetType)).order(ByteOrder.LITTLE_ENDIAN);
+            boolean endOfInput = false;
+            long converted = 0;
+
+            while (!endOfInput) {
+                endOfInput = fill(records);
+                records.flip();
+
+                int count = records.remaining() / sourceBytes;
+                if (endOfInput && records.remaining() % sourceBytes != 0) {
+                    throw new CoordinateConversionException("Truncated record after " + (converted + count) + " record(s)!");
+                }
+
+                if (count > 0) {
+                    ConvertResults[] chunkResults = session.convert(readRecords(records, count, sourceType, precision));
+                    CoordinatesArray coords = gtUtility.buildResultsArray(chunkResults);
+
+                    results.clear();
+                    coords.writeRecords(results);
+                    results.flip();
+                    writeFully(results);
+
+                    converted += count;
+                }
+
+                records.compact();
+            }
+
+            log.debug("Leaving run() with {} record(s)", converted);
+        }
+    }
+
+    private ByteBuffer readHeader() throws IOException, CoordinateConversionException {
+        ByteBuffer prefix = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (fill(prefix) && prefix.hasRemaining()) {
+            throw new CoordinateConversionException("Missing binary header!");
+        }
+        prefix.flip();
+
+        for (byte expected : MAGIC) {
+            if (prefix.get() != expected) {
+                throw new CoordinateConversionException("Not a binary bulk conversion request!");
+            }
+        }
+
+        int version = prefix.getInt();
+        if (version != VERSION) {
+            throw new CoordinateConversionException("Unsupported binary format version " + version + "!");
+        }
+
+        int headerBytes = prefix.getInt();
+        if (headerBytes < 0 || headerBytes > MAX_HEADER_BYTES) {
+            throw new CoordinateConversionException("Invalid binary header length " + headerBytes + "!");
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerBytes);
+        if (fill(header) && header.hasRemaining()) {
+            throw new CoordinateConversionException("Truncated binary header!");
+        }
+        header.flip();
+
+        return header;
+    }
+
+    private void writeHeader(Map<String, Object> headerFields, int targetType) throws IOException {
+        StringBuilder text = new StringBuilder();
+
+        for (Map.Entry<String, Object> field : headerFields.entrySet()) {
+            String name = field.getKey();
+
+            if (name.startsWith(GeoTransConstants.TARGET_PREFIX)
+                    && !name.equals(GeoTransConstants.TARGET_PREFIX + GeoTransConstants.COORDINATE_TYPE)) {
+                text.append(name).append(": ").append(field.getValue()).append('\n');
+            }
+        }
+        text.append(GeoTransConstants.TARGET_PREFIX + GeoTransConstants.COORDINATE_TYPE).append(": ").append(targetType).append('\n');
+        text.append(GeoTransConstants.END_OF_HEADER).append('\n');
+
+        byte[] headerBytes = text.toString().getBytes(UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(12 + headerBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.put(MAGIC).putInt(VERSION).putInt(headerBytes.length).put(headerBytes);
+        header.flip();
+        writeFully(header);
+    }
+
+    private static CoordinateTuple[] readRecords(ByteBuffer records, int count, int coordinateType, int precision)
+            throws CoordinateConversionException {
+        return CoordinateTypeRegistry.family(coordinateType).fromBinary(records, count, coordinateType, precision).getCoordinates();
+    }
+
+    /**
+     * @return The size of one binary record of the coordinate type.
+     * @throws CoordinateConversionException
+     *             If the coordinate type is unknown.
+     */
+    public static int recordBytes(int coordinateType) throws CoordinateConversionException {
+        return CoordinateTypeRegistry.family(coordinateType).getRecordBytes();
+    }
+
+    /**
+     * Reads until the buffer is full or the input ends.
+     *
+     * @return true if the input has ended.
+     */
+    private boolean fill(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (input.read(buffer) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package mil.nga.ods.geotrans.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip support for bulk conversion input and output. Compressed input is
+ * recognized by the gzip magic bytes, so callers can pass either plain or
+ * gzip compressed bulk files.
+ */
+public final class BulkCompression {
+
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private BulkCompression() {
+    }
+
+    /**
+     * @return The stream itself if it is not gzip compressed, otherwise a
+     *         stream of the decompressed data.
+     * @throws IOException
+     */
+    public static InputStream decompressIfGzipped(InputStream in) throws IOException {
+        InputStream markable = in.markSupported() ? in : new BufferedInputStream(in, BUFFER_SIZE);
+
+        markable.mark(2);
+        int first = markable.read();
+        int second = markable.read();
+        markable.reset();
+
+        if (first == GZIP_MAGIC_1 && second == GZIP_MAGIC_2) {
+            return decompress(markable);
+        }
+        return markable;
+    }
+
+    /**
+     * @return A stream of the decompressed data of a gzip compressed stream.
+     * @throws IOException
+     */
+    public static InputStream decompress(InputStream in) throws IOException {
+        return new GZIPInputStream(in, BUFFER_SIZE);
+    }
+
+    /**
+     * @return true if the file starts with the gzip magic bytes.
+     * @throws IOException
+     */
+    public static boolean isGzipped(Path file) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(2);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (magic.hasRemaining() && channel.read(magic) != -1) {
+                // Read until both bytes are in or the file ends.
+            }
+        }
+        magic.flip();
+        return isGzipped(magic);
+    }
+
+    /**
+     * @return true if the buffer starts with the gzip magic bytes.
+     */
+    public static boolean isGzipped(ByteBuffer buffer) {
+        return buffer.limit() >= 2 && (buffer.get(0) & 0xff) == GZIP_MAGIC_1 && (buffer.get(1) & 0xff) == GZIP_MAGIC_2;
+    }
+
+    /**
+     * Wraps an output stream so that everything written to it is gzip
+     * compressed. Call finish() on the returned stream when done; closing it
+     * would close the wrapped stream as well.
+     */
+    public static GZIPOutputStream compress(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+}
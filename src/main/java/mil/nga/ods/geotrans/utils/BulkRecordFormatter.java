@@ -0,0 +1,16 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+
+/**
+ * Formats a range of converted coordinates as bulk output lines. Implementations
+ * are called concurrently, each with its own range and buffer.
+ */
+public interface BulkRecordFormatter {
+
+    /**
+     * Appends one line, including its line separator, per coordinate in
+     * [from, to).
+     */
+    void format(StringBuilder out, int from, int to) throws CoordinateConversionException;
+}
@@ -0,0 +1,13 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.exception.CoordinateConversionException;
+
+/**
+ * Parses all records of a bulk file range into coordinates of one coordinate
+ * type. Implementations are called concurrently, each with its own reader.
+ */
+public interface BulkRecordParser {
+
+    CoordinateTuple[] parse(BulkRecordReader records) throws CoordinateConversionException;
+}
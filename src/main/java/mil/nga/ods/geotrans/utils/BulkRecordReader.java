@@ -0,0 +1,474 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the comma separated records of a bulk conversion file directly from a
+ * byte buffer, usually a memory mapped file. Lines, comments and fields are
+ * located in place and numeric fields are parsed straight from the buffer, so
+ * no String is created per field. Fields that are not plain decimal numbers
+ * (e.g. Degrees Minutes Seconds) fall back to the GeoTrans StringToVal class,
+ * so the accepted input and the resulting values are the same as for the
+ * InputStream based bulk input.
+ * <p>
+ * Lines are terminated by '\n', '\r' or "\r\n". Lines starting with '#' and
+ * blank lines are skipped, exactly like the GeoTransUtility(InputStream)
+ * constructor does.
+ */
+public class BulkRecordReader {
+
+    private ByteBuffer buffer;
+    private int start;
+    private int end;
+    private Charset charset = Charset.defaultCharset();
+
+    private int position;
+    private int lineStart;
+    private int lineEnd;
+
+    private int fieldCount;
+    private int[] fieldStarts = new int[4];
+    private int[] fieldEnds = new int[4];
+
+    private byte[] scratch = new byte[64];
+    private CoordinateParser parser = new CoordinateParser();
+    private FieldText fieldText = new FieldText();
+
+    /**
+     * @param buffer
+     *            Buffer holding the bulk file, read with absolute positions.
+     * @param start
+     *            Offset of the first byte to read.
+     * @param end
+     *            Offset just past the last byte to read.
+     */
+    public BulkRecordReader(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+
+        position = start;
+    }
+
+    /**
+     * @return A new reader over the same range, positioned at its start.
+     */
+    public BulkRecordReader duplicate() {
+        return new BulkRecordReader(buffer, start, end);
+    }
+
+    /**
+     * Cuts the unread part of the range into line aligned ranges of roughly
+     * the given size, which can then be read concurrently.
+     *
+     * @param chunkBytes
+     *            Approximate size of each range.
+     * @return The ranges in order; a single range if the remainder is small.
+     */
+    public BulkRecordReader[] split(int chunkBytes) {
+        List<BulkRecordReader> ranges = new ArrayList<BulkRecordReader>();
+        int from = position;
+
+        while (end - from > chunkBytes) {
+            int to = skipTerminator(findLineEnd(from + chunkBytes));
+
+            ranges.add(new BulkRecordReader(buffer.duplicate(), from, to));
+            from = to;
+        }
+        if (from < end || ranges.isEmpty()) {
+            ranges.add(new BulkRecordReader(buffer.duplicate(), from, end));
+        }
+
+        return ranges.toArray(new BulkRecordReader[ranges.size()]);
+    }
+
+    /**
+     * @return A reader over just the current record, for parsing it on its
+     *         own.
+     */
+    public BulkRecordReader currentRecord() {
+        return new BulkRecordReader(buffer, lineStart, position);
+    }
+
+    /**
+     * Counts the line terminators in [from, to), using the same rules as
+     * nextRecord(). Adding one to the count up to a record offset gives the
+     * 1-based line number of that record.
+     */
+    public int countLines(int from, int to) {
+        int lines = 0;
+
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+
+            if (b == '\n') {
+                lines++;
+            } else if (b == '\r') {
+                lines++;
+                if (i + 1 < to && buffer.get(i + 1) == '\n') {
+                    i++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return The CRC32 of all bytes of the range, to recognize the same
+     *         input again.
+     */
+    public long checksum() {
+        CRC32 crc = new CRC32();
+        byte[] block = new byte[8192];
+
+        for (int from = start; from < end; from += block.length) {
+            int length = Math.min(block.length, end - from);
+
+            for (int i = 0; i < length; i++) {
+                block[i] = buffer.get(from + i);
+            }
+            crc.update(block, 0, length);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Adds the bytes of the current line, without its terminator, to the
+     * digest, to recognize the same record again.
+     */
+    public void digestRecord(MessageDigest digest) {
+        byte[] block = new byte[Math.min(8192, Math.max(1, lineEnd - lineStart))];
+
+        for (int from = lineStart; from < lineEnd; from += block.length) {
+            int length = Math.min(block.length, lineEnd - from);
+
+            for (int i = 0; i < length; i++) {
+                block[i] = buffer.get(from + i);
+            }
+            digest.update(block, 0, length);
+        }
+    }
+
+    /**
+     * Writes the bytes in [from, to) of the underlying buffer, e.g. the header
+     * in front of the range, to the channel.
+     */
+    public void transferTo(int from, int to, WritableByteChannel channel) throws IOException {
+        ByteBuffer bytes = buffer.duplicate();
+
+        bytes.limit(to).position(from);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return Offset of the first byte after the current line, which is where
+     *         the next call to nextRecord() continues.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return Offset of the first byte of the current record.
+     */
+    public int getRecordOffset() {
+        return lineStart;
+    }
+
+    /**
+     * Counts the records from the current position to the end of the range,
+     * without moving the current position.
+     *
+     * @return Number of non-comment, non-blank lines remaining.
+     */
+    public int countRecords() {
+        int count = 0;
+        int from = position;
+
+        while (from < end) {
+            int to = findLineEnd(from);
+
+            if (!isSkipped(from, to)) {
+                count++;
+            }
+
+            from = skipTerminator(to);
+        }
+
+        return count;
+    }
+
+    /**
+     * Advances to the next non-comment, non-blank line and locates its comma
+     * separated fields.
+     *
+     * @return false when there are no records left.
+     */
+    public boolean nextRecord() {
+        while (position < end) {
+            lineStart = position;
+            lineEnd = findLineEnd(position);
+            position = skipTerminator(lineEnd);
+
+            if (!isSkipped(lineStart, lineEnd)) {
+                splitFields();
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return The whole current line, untrimmed, as the InputStream based bulk
+     *         input passes it to the string coordinate types.
+     */
+    public String getLine() {
+        return decode(lineStart, lineEnd);
+    }
+
+    /**
+     * @return The trimmed field as a String, for values that have no in-place
+     *         parser.
+     */
+    public String getString(int field) throws CoordinateConversionException {
+        checkField(field);
+        return decode(trimStart(field), trimEnd(field));
+    }
+
+    public double getDouble(int field) throws CoordinateConversionException {
+        return parser.parseDouble(fieldText(field));
+    }
+
+    public int getInt(int field) throws CoordinateConversionException {
+        return parser.parseInt(fieldText(field));
+    }
+
+    /**
+     * Parses the field as it is, surrounding whitespace included, like the
+     * UTM zone of the line based bulk input.
+     */
+    public int getUntrimmedInt(int field) throws CoordinateConversionException {
+        checkField(field);
+
+        fieldText.from = fieldStarts[field];
+        fieldText.to = fieldEnds[field];
+        return parser.parseInt(fieldText);
+    }
+
+    public char getChar(int field) throws CoordinateConversionException {
+        checkField(field);
+
+        int from = trimStart(field);
+        int to = trimEnd(field);
+
+        if (from == to) {
+            throw new CoordinateConversionException("Field " + (field + 1) + " is empty!");
+        }
+
+        byte first = buffer.get(from);
+        if (first >= 0) {
+            return (char) first;
+        }
+        return decode(from, to).charAt(0);
+    }
+
+    /**
+     * Parses a latitude, in place unless CoordinateParser hands it to
+     * StringToVal.stringToLatitude().
+     */
+    public double getLatitude(int field) throws CoordinateConversionException {
+        return parser.parseLatitude(fieldText(field));
+    }
+
+    /**
+     * Parses a longitude, in place unless CoordinateParser hands it to
+     * StringToVal.stringToLongitude().
+     */
+    public double getLongitude(int field) throws CoordinateConversionException {
+        return parser.parseLongitude(fieldText(field));
+    }
+
+    /**
+     * @return The reused view of the trimmed field.
+     */
+    private FieldText fieldText(int field) throws CoordinateConversionException {
+        checkField(field);
+
+        fieldText.from = trimStart(field);
+        fieldText.to = trimEnd(field);
+        return fieldText;
+    }
+
+    private void splitFields() {
+        fieldCount = 0;
+        int fieldStart = lineStart;
+
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buffer.get(i) == ',') {
+                addField(fieldStart, i);
+                fieldStart = i + 1;
+            }
+        }
+        addField(fieldStart, lineEnd);
+
+        // Like String.split(","), trailing empty fields are dropped.
+        while (fieldCount > 0 && fieldStarts[fieldCount - 1] == fieldEnds[fieldCount - 1]) {
+            fieldCount--;
+        }
+    }
+
+    private void addField(int from, int to) {
+        if (fieldCount == fieldStarts.length) {
+            int[] starts = new int[fieldCount * 2];
+            int[] ends = new int[fieldCount * 2];
+            System.arraycopy(fieldStarts, 0, starts, 0, fieldCount);
+            System.arraycopy(fieldEnds, 0, ends, 0, fieldCount);
+            fieldStarts = starts;
+            fieldEnds = ends;
+        }
+
+        fieldStarts[fieldCount] = from;
+        fieldEnds[fieldCount] = to;
+        fieldCount++;
+    }
+
+    private void checkField(int field) throws CoordinateConversionException {
+        if (field >= fieldCount) {
+            throw new CoordinateConversionException("Field " + (field + 1) + " is missing!");
+        }
+    }
+
+    private int trimStart(int field) {
+        int from = fieldStarts[field];
+        int to = fieldEnds[field];
+
+        while (from < to && isWhitespace(buffer.get(from))) {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int field) {
+        int from = fieldStarts[field];
+        int to = fieldEnds[field];
+
+        while (to > from && isWhitespace(buffer.get(to - 1))) {
+            to--;
+        }
+        return to;
+    }
+
+    private int findLineEnd(int from) {
+        int i = from;
+
+        while (i < end) {
+            byte b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private int skipTerminator(int lineEnd) {
+        if (lineEnd < end && buffer.get(lineEnd) == '\r') {
+            lineEnd++;
+
+            if (lineEnd < end && buffer.get(lineEnd) == '\n') {
+                lineEnd++;
+            }
+        } else if (lineEnd < end) {
+            lineEnd++;
+        }
+        return lineEnd;
+    }
+
+    private boolean isSkipped(int from, int to) {
+        if (from < to && buffer.get(from) == '#') {
+            return true;
+        }
+
+        for (int i = from; i < to; i++) {
+            if (!isWhitespace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same definition of whitespace as String.trim().
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private String decode(int from, int to) {
+        int length = to - from;
+
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(from + i);
+        }
+
+        return new String(scratch, 0, length, charset);
+    }
+
+    /**
+     * A field of the current record as a CharSequence, so CoordinateParser
+     * can read it without decoding it. Bytes outside ASCII are never part of
+     * a value parsed in place, so they are shown as '\uFFFF'; toString()
+     * decodes the field properly for StringToVal.
+     */
+    private class FieldText implements CharSequence {
+
+        private int from;
+        private int to;
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            byte b = buffer.get(from + index);
+            return b >= 0 ? (char) b : '\uFFFF';
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return decode(from + start, from + end);
+        }
+
+        @Override
+        public String toString() {
+            return decode(from, to);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package mil.nga.ods.geotrans.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the results of an off-heap bulk conversion, one chunk of fixed
+ * width binary records at a time.
+ */
+public interface BulkResultHandler {
+
+    /**
+     * Called once before the first chunk.
+     *
+     * @param coordinateType
+     *            The CoordinateType of the result records.
+     * @param recordBytes
+     *            The size of one result record, including the accuracy if
+     *            requested.
+     */
+    void begin(int coordinateType, int recordBytes) throws Exception;
+
+    /**
+     * Called per chunk with the result buffer positioned at the first record
+     * and limited to the last one. The buffer is reused for the next chunk
+     * once this method returns.
+     *
+     * @param records
+     *            The result records of the chunk.
+     * @param count
+     *            The number of records in the chunk.
+     */
+    void results(ByteBuffer records, int count) throws Exception;
+}
@@ -0,0 +1,17 @@
+package mil.nga.ods.geotrans.utils;
+
+/**
+ * Receives the rows of a bulk conversion that could not be converted, in
+ * file order.
+ */
+public interface BulkRowErrorListener {
+
+    /**
+     * @param lineNumber
+     *            1-based line number of the row in the bulk file, counting
+     *            header and comment lines.
+     * @param reason
+     *            Why the row failed, usually the GeoTrans error message.
+     */
+    void rowFailed(long lineNumber, String reason);
+}
@@ -0,0 +1,48 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Holds the fork-join pool shared by the parallel stages of a bulk
+ * conversion. The parallelism defaults to the number of available processors
+ * and can be set with the geotrans.bulk.parallelism system property.
+ */
+public final class BulkWorkers {
+
+    public static final String PARALLELISM_PROPERTY = "geotrans.bulk.parallelism";
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Integer.getInteger(PARALLELISM_PROPERTY, Runtime.getRuntime()
+            .availableProcessors()));
+
+    private BulkWorkers() {
+    }
+
+    public static ForkJoinPool getPool() {
+        return POOL;
+    }
+
+    /**
+     * Recovers the CoordinateConversionException of a failed task; the pool
+     * may have wrapped the TaskFailure once more when rethrowing it.
+     */
+    static CoordinateConversionException unwrap(RuntimeException e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CoordinateConversionException) {
+                return (CoordinateConversionException) cause;
+            }
+        }
+        throw e;
+    }
+
+    // Carries the checked exception of a task out of the fork-join pool.
+    static class TaskFailure extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        TaskFailure(CoordinateConversionException cause) {
+            super(cause);
+        }
+    }
+}
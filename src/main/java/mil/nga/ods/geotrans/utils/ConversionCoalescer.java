@@ -0,0 +1,128 @@
+package mil.nga.ods.geotrans.utils;
+
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lets identical conversion requests that run at the same time share one
+ * execution (single-flight). The first request for a key runs the conversion;
+ * requests for the same key arriving while it runs wait for it and get a copy
+ * of its result, or its exception. Once the conversion finishes the key is
+ * forgotten, so nothing is cached beyond the requests in flight.
+ * <p>
+ * Requests are keyed by their canonical form, see canonicalKey(), so the same
+ * fields in another order or with other white space share an execution.
+ */
+public class ConversionCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversionCoalescer.class.getName());
+
+    // The serialized results, taken before the leader's caller gets the
+    // object and can modify it.
+    private ConcurrentHashMap<String, FutureTask<String>> inFlight = new ConcurrentHashMap<String, FutureTask<String>>();
+
+    /**
+     * Runs the conversion, or waits for the identical one already running.
+     *
+     * @param key
+     *            Canonical key of the request.
+     * @param conversion
+     *            The conversion of the request.
+     * @return The result of the conversion; followers get their own copy.
+     * @throws Exception
+     *             The exception of the conversion.
+     */
+    public JSONObject execute(String key, final Callable<JSONObject> conversion) throws Exception {
+        final JSONObject[] leaderResult = new JSONObject[1];
+        FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                leaderResult[0] = conversion.call();
+                return leaderResult[0].toString();
+            }
+        });
+        FutureTask<String> leader = inFlight.putIfAbsent(key, task);
+
+        if (leader == null) {
+            try {
+                task.run();
+                result(task);
+                return leaderResult[0];
+            } finally {
+                inFlight.remove(key, task);
+            }
+        }
+
+        log.debug("Joining an identical conversion in flight");
+
+        // The leader's object is handed to its caller, so followers parse
+        // their own copy of the result serialized before that.
+        return new JSONObject(result(leader));
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * @return The request with the keys of every object sorted, strings
+     *         quoted and all insignificant white space removed.
+     * @throws JSONException
+     */
+    public static String canonicalKey(JSONObject request) throws JSONException {
+        StringBuilder key = new StringBuilder();
+        appendCanonical(key, request);
+        return key.toString();
+    }
+
+    private static void appendCanonical(StringBuilder key, Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            TreeSet<String> names = new TreeSet<String>();
+
+            for (@SuppressWarnings("unchecked") Iterator<String> iter = object.keys(); iter.hasNext();) {
+                names.add(iter.next());
+            }
+
+            key.append('{');
+            for (String name : names) {
+                key.append(JSONObject.quote(name)).append(':');
+                appendCanonical(key, object.get(name));
+                key.append(',');
+            }
+            key.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+
+            key.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                appendCanonical(key, array.get(i));
+                key.append(',');
+            }
+            key.append(']');
+        } else if (value instanceof String) {
+            key.append(JSONObject.quote((String) value));
+        } else {
+            key.append(value);
+        }
+    }
+
+    private static String result(FutureTask<String> task) throws Exception {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+}
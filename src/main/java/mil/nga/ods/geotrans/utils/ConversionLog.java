@@ -0,0 +1,79 @@
+package mil.nga.ods.geotrans.utils;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Switches for the logging of the conversion pipeline.
+ * <p>
+ * Per-point debug logging (one or more lines per coordinate formatted or
+ * parsed) is off unless the JVM is started with -Dgeotrans.log.points=true.
+ * TRACE_POINTS is a constant, so with it off the JIT removes the guarded
+ * log statements and their arguments entirely, whatever the logger level.
+ * <p>
+ * Instead of per-point lines, one in every geotrans.log.sampleInterval
+ * conversions (default 100, 0 for none) is logged as a single structured
+ * line at INFO to the mil.nga.ods.geotrans.requests logger:
+ *
+ * <pre>
+ * operation=conversion sourceType=10 targetType=17 points=1 micros=412 outcome=ok
+ * </pre>
+ */
+public final class ConversionLog {
+
+    public static final boolean TRACE_POINTS = Boolean.getBoolean("geotrans.log.points");
+    public static final int SAMPLE_INTERVAL = Integer.getInteger("geotrans.log.sampleInterval", 100);
+
+    private static final Logger requestLog = LoggerFactory.getLogger("mil.nga.ods.geotrans.requests");
+
+    private static final AtomicLong requests = new AtomicLong();
+
+    private ConversionLog() {
+    }
+
+    /**
+     * @return true if the request about to run should be logged with
+     *         logRequest().
+     */
+    public static boolean sampleRequest() {
+        return SAMPLE_INTERVAL > 0 && requestLog.isInfoEnabled() && requests.getAndIncrement() % SAMPLE_INTERVAL == 0;
+    }
+
+    /**
+     * Logs one sampled request.
+     *
+     * @param operation
+     *            Name of the operation, e.g. "conversion" or "bulk".
+     * @param headerFields
+     *            Fields of the request, for the coordinate types.
+     * @param points
+     *            Number of points converted.
+     * @param startNanos
+     *            System.nanoTime() when the request started.
+     * @param failure
+     *            Exception the request failed with, or null.
+     */
+    public static void logRequest(String operation, Map<String, Object> headerFields, int points, long startNanos, Throwable failure) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+
+        StringBuilder line = new StringBuilder(128);
+        line.append("operation=").append(operation);
+        line.append(" sourceType=").append(headerFields.get(GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.COORDINATE_TYPE));
+        line.append(" targetType=").append(headerFields.get(GeoTransConstants.TARGET_PREFIX + GeoTransConstants.COORDINATE_TYPE));
+        line.append(" points=").append(points);
+        line.append(" micros=").append(micros);
+
+        if (failure == null) {
+            line.append(" outcome=ok");
+        } else {
+            line.append(" outcome=failed error=").append(JSONObject.quote(String.valueOf(failure.getMessage())));
+        }
+
+        requestLog.info(line.toString());
+    }
+}
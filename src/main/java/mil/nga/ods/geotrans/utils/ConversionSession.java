@@ -0,0 +1,181 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.Accuracy;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.parameters.CoordinateSystemParameters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds everything resolved from a request header that is needed to convert
+ * source coordinates into the target coordinate system: the source and target
+ * parameters, the target coordinate template, the accuracies and, for
+ * non-custom datums, the GeoTrans JNI conversion service (or the Java
+ * GeoidHeightConversion, when enabled and applicable). Building a session
+ * once lets any number of source coordinates be converted without resolving
+ * the header again.
+ * <p>
+ * The native conversion service is released by close(), so a session is meant
+ * for a try-with-resources block.
+ */
+public class ConversionSession implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ConversionSession.class.getName());
+
+    private GeoTransUtility gtUtility;
+
+    private CoordinateSystemParameters sourceParameters;
+    private CoordinateSystemParameters targetParameters;
+    private CoordinateTuple targetTuple;
+    private Accuracy sourceAccuracy;
+    private Accuracy targetAccuracy;
+
+    private NativeConversionService nativeConversionService;
+    private GeoidHeightConversion geoidHeightConversion;
+
+    /**
+     * Resolves the source and target coordinate systems of the request.
+     *
+     * @param gtUtility
+     *            Utility holding the request header, already initialized via
+     *            initializeForConversion().
+     * @throws Exception
+     */
+    public ConversionSession(GeoTransUtility gtUtility) throws Exception {
+        log.debug("Entering ConversionSession()");
+
+        this.gtUtility = gtUtility;
+
+        sourceParameters = gtUtility.retrieveParameters(GeoTransConstants.SOURCE_PREFIX);
+        targetParameters = gtUtility.retrieveParameters(GeoTransConstants.TARGET_PREFIX);
+
+        targetTuple = gtUtility.retrieveCoordinates(GeoTransConstants.TARGET_PREFIX, false)[0];
+
+        sourceAccuracy = gtUtility.retrieveAccuracy(GeoTransConstants.SOURCE_PREFIX);
+        targetAccuracy = gtUtility.retrieveAccuracy(GeoTransConstants.TARGET_PREFIX);
+
+        geoidHeightConversion = GeoidHeightConversion.forConversion(gtUtility, sourceParameters, targetParameters);
+
+        if (!gtUtility.isUsingCustomDatum() && geoidHeightConversion == null) {
+            nativeConversionService = new NativeConversionService(gtUtility.getSourceDatum(), sourceParameters,
+                    gtUtility.getTargetDatum(), targetParameters);
+        }
+
+        log.debug("Leaving ConversionSession()");
+    }
+
+    public GeoTransUtility getUtility() {
+        return gtUtility;
+    }
+
+    public int getTargetCoordinateType() {
+        return targetTuple.getCoordinateType();
+    }
+
+    /**
+     * Converts the source coordinates using the source accuracy of the request
+     * header.
+     *
+     * @param sourceTuples
+     *            The source coordinates to convert.
+     * @return One result per source coordinate, in the same order.
+     * @throws Exception
+     */
+    public ConvertResults[] convert(CoordinateTuple[] sourceTuples) throws Exception {
+        return convert(sourceTuples, null);
+    }
+
+    /**
+     * Converts the source coordinates, each with its own source accuracy. This
+     * is used when the source coordinates are themselves the results of an
+     * earlier conversion.
+     *
+     * @param sourceTuples
+     *            The source coordinates to convert.
+     * @param sourceAccuracies
+     *            One accuracy per source coordinate, or null to use the source
+     *            accuracy of the request header for all of them.
+     * @return One result per source coordinate, in the same order.
+     * @throws Exception
+     */
+    public ConvertResults[] convert(CoordinateTuple[] sourceTuples, Accuracy[] sourceAccuracies) throws Exception {
+        log.debug("Entering convert() with {} coordinate(s)", sourceTuples.length);
+
+        ConvertResults[] results;
+
+        if (gtUtility.isUsingCustomDatum()) {
+            log.debug("Calling custom conversion method!");
+
+            if (sourceAccuracies == null) {
+                results = CustomConversion.performCustomConversion(sourceParameters, targetParameters, sourceTuples, targetTuple, sourceAccuracy,
+                        targetAccuracy, gtUtility.getHeaderFields());
+            } else {
+                results = CustomConversion.performCustomConversion(sourceParameters, targetParameters, sourceTuples, targetTuple,
+                        sourceAccuracies, targetAccuracy, gtUtility.getHeaderFields());
+            }
+        } else if (geoidHeightConversion != null) {
+            results = geoidHeightConversion.convert(sourceTuples, sourceAccuracy, sourceAccuracies);
+        } else {
+            results = new ConvertResults[sourceTuples.length];
+
+            // Zoned coordinates may be converted grouped by zone; each result
+            // still goes to the index of its source coordinate.
+            int[] order = ZoneGrouping.isEnabled() ? ZoneGrouping.order(sourceTuples) : null;
+
+            for (int k = 0; k < sourceTuples.length; k++) {
+                int i = order == null ? k : order[k];
+
+                try {
+                    results[i] = convertPoint(sourceTuples, sourceAccuracies, i);
+                } catch (CoordinateConversionException e) {
+                    if (order == null) {
+                        throw e;
+                    }
+                    throw firstFailure(sourceTuples, sourceAccuracies, results, i, e);
+                }
+            }
+        }
+
+        log.debug("Leaving convert()");
+        return results;
+    }
+
+    private ConvertResults convertPoint(CoordinateTuple[] sourceTuples, Accuracy[] sourceAccuracies, int i)
+            throws CoordinateConversionException {
+        return nativeConversionService.convertSourceToTarget(sourceTuples[i], sourceAccuracies == null ? sourceAccuracy
+                : sourceAccuracies[i], targetTuple, targetAccuracy);
+    }
+
+    /**
+     * Finds the failure to report when a point failed while converting
+     * grouped by zone: that of the first failing point in input order, as
+     * without the grouping. Only the points before the failed one that were
+     * not converted yet are converted.
+     */
+    private CoordinateConversionException firstFailure(CoordinateTuple[] sourceTuples, Accuracy[] sourceAccuracies,
+            ConvertResults[] results, int failed, CoordinateConversionException failure) {
+        for (int i = 0; i < failed; i++) {
+            if (results[i] == null) {
+                try {
+                    results[i] = convertPoint(sourceTuples, sourceAccuracies, i);
+                } catch (CoordinateConversionException e) {
+                    return e;
+                }
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Releases the native conversion service of the session.
+     */
+    @Override
+    public void close() {
+        if (nativeConversionService != null) {
+            nativeConversionService.close();
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.misc.StringToVal;
+
+/**
+ * Parses numbers, latitudes and longitudes straight from a CharSequence,
+ * without creating intermediate Strings, for the values that make up nearly
+ * all coordinate input:
+ * <ul>
+ * <li>plain decimals, [-]digits[.digits], with at most 15 significant
+ * digits, which are parsed exactly like Double.parseDouble();</li>
+ * <li>ints of at most 9 digits with an optional '-';</li>
+ * <li>degrees, minutes and seconds: [-]D[sep]M[sep]S, [-]D[sep]M or D with an
+ * optional N/S (latitude) or E/W (longitude) suffix, where sep is one of ' ',
+ * ':' or '/' and only the last part may have a fraction.</li>
+ * </ul>
+ * Everything else, including every value that would be rejected, is passed to
+ * the GeoTrans StringToVal class unchanged, so the accepted input, the
+ * results and the error messages are always those of StringToVal.
+ * <p>
+ * The degrees, minutes and seconds are combined the way StringToVal does;
+ * CoordinateParserTest checks this against StringToVal.
+ * <p>
+ * A parser is not thread safe; use one per thread.
+ */
+public class CoordinateParser {
+
+    // Largest power of ten that is exactly representable as a double.
+    private static final int MAX_EXACT_POWER = 22;
+    // Largest number of significant digits that is exactly representable.
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = new double[MAX_EXACT_POWER + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i <= MAX_EXACT_POWER; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private StringToVal stringToVal = new StringToVal();
+
+    /**
+     * @return The same value as StringToVal.stringToDouble(text.toString()).
+     */
+    public double parseDouble(CharSequence text) throws CoordinateConversionException {
+        double value = parsePlainDecimal(text, 0, text.length());
+
+        if (Double.isNaN(value)) {
+            return stringToVal.stringToDouble(text.toString());
+        }
+        return value;
+    }
+
+    /**
+     * @return The same value as StringToVal.stringToInt(text.toString()).
+     */
+    public int parseInt(CharSequence text) throws CoordinateConversionException {
+        int length = text.length();
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        int digitsStart = negative ? 1 : 0;
+
+        // Up to 9 digits cannot overflow an int.
+        if (digitsStart == length || length - digitsStart > 9) {
+            return stringToVal.stringToInt(text.toString());
+        }
+
+        int value = 0;
+        for (int i = digitsStart; i < length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return stringToVal.stringToInt(text.toString());
+            }
+            value = value * 10 + digit;
+        }
+
+        return negative ? -value : value;
+    }
+
+    /**
+     * @return The same value as StringToVal.stringToLatitude(text.toString()),
+     *         in degrees.
+     */
+    public double parseLatitude(CharSequence text) throws CoordinateConversionException {
+        double value = parseDegrees(text, 'N', 'S', 90.0);
+
+        if (Double.isNaN(value)) {
+            return stringToVal.stringToLatitude(text.toString());
+        }
+        return value;
+    }
+
+    /**
+     * @return The same value as StringToVal.stringToLongitude(text.toString()),
+     *         in degrees.
+     */
+    public double parseLongitude(CharSequence text) throws CoordinateConversionException {
+        double value = parseDegrees(text, 'E', 'W', 180.0);
+
+        if (Double.isNaN(value)) {
+            return stringToVal.stringToLongitude(text.toString());
+        }
+        return value;
+    }
+
+    /**
+     * @return The degrees of a plain decimal or a degrees, minutes
+     *         and seconds value within [-limit, limit], or NaN if the
+     *         text needs StringToVal.
+     */
+    private static double parseDegrees(CharSequence text, char positive, char negative, double limit) {
+        int to = text.length();
+        double value = parsePlainDecimal(text, 0, to);
+
+        if (Double.isNaN(value)) {
+            value = parseDms(text, to, positive, negative);
+        }
+
+        if (value < -limit || value > limit) {
+            return Double.NaN;
+        }
+        return value;
+    }
+
+    private static double parseDms(CharSequence text, int to, char positive, char negative) {
+        int from = 0;
+        boolean isNegative = false;
+
+        if (to > 0 && text.charAt(0) == '-') {
+            isNegative = true;
+            from = 1;
+        }
+        if (to > from && (text.charAt(to - 1) == positive || text.charAt(to - 1) == negative)) {
+            // A sign together with a hemisphere is left to StringToVal.
+            if (isNegative) {
+                return Double.NaN;
+            }
+            isNegative = text.charAt(to - 1) == negative;
+            to--;
+        }
+
+        // Up to three parts, split at the first separator found and any
+        // further ones of the same kind.
+        char separator = 0;
+        int firstEnd = to;
+        int secondEnd = to;
+
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+
+            if (c == '-') {
+                return Double.NaN;
+            }
+            if (c == ' ' || c == ':' || c == '/') {
+                if (separator == 0) {
+                    separator = c;
+                    firstEnd = i;
+                } else if (c == separator && secondEnd == to) {
+                    secondEnd = i;
+                } else {
+                    return Double.NaN;
+                }
+            }
+        }
+
+        double degrees;
+        double minutes = 0;
+        double seconds = 0;
+
+        if (separator == 0) {
+            degrees = parsePlainDecimal(text, from, to);
+        } else if (secondEnd == to) {
+            degrees = parseDigits(text, from, firstEnd, 3);
+            minutes = parsePlainDecimal(text, firstEnd + 1, to);
+        } else {
+            degrees = parseDigits(text, from, firstEnd, 3);
+            minutes = parseDigits(text, firstEnd + 1, secondEnd, 2);
+            seconds = parsePlainDecimal(text, secondEnd + 1, to);
+        }
+
+        // Parts that are not numbers or out of range are left to StringToVal.
+        if (!(degrees >= 0) || !(minutes >= 0 && minutes < 60) || !(seconds >= 0 && seconds < 60)) {
+            return Double.NaN;
+        }
+
+        double value = degrees + minutes / 60.0 + seconds / 3600.0;
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * @return The value of 1 to maxDigits digits, or NaN.
+     */
+    private static double parseDigits(CharSequence text, int from, int to, int maxDigits) {
+        if (from == to || to - from > maxDigits) {
+            return Double.NaN;
+        }
+
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Double.NaN;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Parses [-]digits[.digits] when the result is guaranteed to be the
+     * correctly rounded double, i.e. the same value Double.parseDouble()
+     * returns: at most 15 significant digits and at most 22 fractional digits,
+     * so that one exact division produces the result.
+     *
+     * @return The parsed value, or NaN if the text needs the slow path.
+     */
+    static double parsePlainDecimal(CharSequence text, int from, int to) {
+        boolean negative = from < to && text.charAt(from) == '-';
+        int i = negative ? from + 1 : from;
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int integerDigits = 0;
+        int fractionDigits = 0;
+        boolean inFraction = false;
+
+        for (; i < to; i++) {
+            char c = text.charAt(i);
+
+            if (c == '.' && !inFraction) {
+                inFraction = true;
+                continue;
+            }
+
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) {
+                return Double.NaN;
+            }
+
+            if (mantissa != 0 || digit != 0) {
+                significantDigits++;
+            }
+            if (significantDigits > MAX_EXACT_DIGITS) {
+                return Double.NaN;
+            }
+
+            mantissa = mantissa * 10 + digit;
+            if (inFraction) {
+                fractionDigits++;
+            } else {
+                integerDigits++;
+            }
+        }
+
+        // Require digits on both sides of a decimal point.
+        if (integerDigits == 0 || (inFraction && fractionDigits == 0) || fractionDigits > MAX_EXACT_POWER) {
+            return Double.NaN;
+        }
+
+        double value = (double) mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,540 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.BNGCoordinates;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.GARSCoordinates;
+import geotrans3.coordinates.GEOREFCoordinates;
+import geotrans3.coordinates.MGRSorUSNGCoordinates;
+import geotrans3.coordinates.StringCoordinates;
+import geotrans3.enumerations.CoordinateType;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.parameters.CoordinateSystemParameters;
+import mil.nga.ods.geotrans.coordinates.CartesianCoordinatesArray;
+import mil.nga.ods.geotrans.coordinates.CoordinatesArray;
+import mil.nga.ods.geotrans.coordinates.GeodeticCoordinatesArray;
+import mil.nga.ods.geotrans.coordinates.MapProjectionCoordinatesArray;
+import mil.nga.ods.geotrans.coordinates.StringCoordinatesArray;
+import mil.nga.ods.geotrans.coordinates.UPSCoordinatesArray;
+import mil.nga.ods.geotrans.coordinates.UTMCoordinatesArray;
+import mil.nga.ods.geotrans.parameters.EquidistantCylindricalParamWrapper;
+import mil.nga.ods.geotrans.parameters.GeodeticParamWrapper;
+import mil.nga.ods.geotrans.parameters.LocalCartesianParamWrapper;
+import mil.nga.ods.geotrans.parameters.MapProjection3ParamWrapper;
+import mil.nga.ods.geotrans.parameters.MapProjection4ParamWrapper;
+import mil.nga.ods.geotrans.parameters.MapProjection5ParamWrapper;
+import mil.nga.ods.geotrans.parameters.MapProjection6ParamWrapper;
+import mil.nga.ods.geotrans.parameters.MercatorScaleFactorParamWrapper;
+import mil.nga.ods.geotrans.parameters.MercatorStandardParallelParamWrapper;
+import mil.nga.ods.geotrans.parameters.NeysParamWrapper;
+import mil.nga.ods.geotrans.parameters.ObliqueMercatorParamWrapper;
+import mil.nga.ods.geotrans.parameters.PolarStereographicScaleFactorParamWrapper;
+import mil.nga.ods.geotrans.parameters.PolarStereographicStandardParallelParamWrapper;
+import mil.nga.ods.geotrans.parameters.UTMParamWrapper;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONException;
+
+/**
+ * Table of the supported coordinate types, indexed by CoordinateType value
+ * and built once when the class is loaded. Each type maps to its coordinate
+ * family, which parses and formats its coordinates, and to the factory of
+ * its coordinate system parameters. Looking a type up is an array access;
+ * supporting a new type means adding a row to the static initializer, and
+ * for a string type a family that builds its StringCoordinates.
+ * <p>
+ * Some types deliberately share the handling of another: USNG coordinates
+ * use the MGRS family, F16GRS coordinates are converted as MGRS, with MGRS
+ * parameters, and NZMG has map projection coordinates but no projection
+ * parameters.
+ */
+public final class CoordinateTypeRegistry {
+
+    /**
+     * Parses and formats the coordinates of one CoordinatesArray subclass.
+     */
+    public abstract static class Family {
+
+        private final String name;
+        private final int recordBytes;
+
+        Family(String name, int recordBytes) {
+            this.name = name;
+            this.recordBytes = recordBytes;
+        }
+
+        /**
+         * @return The coordinates of a JSON request.
+         */
+        public abstract CoordinatesArray fromFields(String prefix, Map<String, Object> fields, int coordinateType, int precision)
+                throws CoordinateConversionException, JSONException;
+
+        /**
+         * @return The coordinates of the records of a bulk file.
+         */
+        public abstract CoordinatesArray fromRecords(BulkRecordReader records, int coordinateType, int precision)
+                throws CoordinateConversionException;
+
+        /**
+         * @return The coordinates of count binary records.
+         */
+        public abstract CoordinatesArray fromBinary(ByteBuffer records, int count, int coordinateType, int precision)
+                throws CoordinateConversionException;
+
+        /**
+         * @return The converted coordinates, for formatting.
+         */
+        public abstract CoordinatesArray fromResults(ConvertResults[] results);
+
+        /**
+         * @return A parser of bulk records for the bulk worker pool.
+         */
+        public BulkRecordParser recordParser(final int coordinateType, final int precision) {
+            return new BulkRecordParser() {
+                @Override
+                public CoordinateTuple[] parse(BulkRecordReader records) throws CoordinateConversionException {
+                    return fromRecords(records, coordinateType, precision).getCoordinates();
+                }
+            };
+        }
+
+        /**
+         * @return The size of one binary record.
+         */
+        public int getRecordBytes() {
+            return recordBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The family of one string coordinate type, which builds its
+     * StringCoordinates.
+     */
+    abstract static class StringFamily extends Family implements StringCoordinatesArray.Factory {
+
+        StringFamily(String name) {
+            super(name, StringCoordinatesArray.RECORD_BYTES);
+        }
+
+        @Override
+        public CoordinatesArray fromFields(String prefix, Map<String, Object> fields, int coordinateType, int precision)
+                throws CoordinateConversionException, JSONException {
+            return new StringCoordinatesArray(prefix, fields, coordinateType, precision, this);
+        }
+
+        @Override
+        public CoordinatesArray fromRecords(BulkRecordReader records, int coordinateType, int precision) throws CoordinateConversionException {
+            return new StringCoordinatesArray(records, coordinateType, precision, this);
+        }
+
+        @Override
+        public CoordinatesArray fromBinary(ByteBuffer records, int count, int coordinateType, int precision)
+                throws CoordinateConversionException {
+            return new StringCoordinatesArray(records, count, coordinateType, precision, this);
+        }
+
+        @Override
+        public CoordinatesArray fromResults(ConvertResults[] results) {
+            return new StringCoordinatesArray(results);
+        }
+    }
+
+    /**
+     * Builds the coordinate system parameters of a request.
+     */
+    interface ParametersFactory {
+
+        CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException;
+    }
+
+    public static final Family MAP_PROJECTION = new Family("MapProjection", MapProjectionCoordinatesArray.RECORD_BYTES) {
+        @Override
+        public CoordinatesArray fromFields(String prefix, Map<String, Object> fields, int coordinateType, int precision)
+                throws CoordinateConversionException, JSONException {
+            return new MapProjectionCoordinatesArray(prefix, fields, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromRecords(BulkRecordReader records, int coordinateType, int precision) throws CoordinateConversionException {
+            return new MapProjectionCoordinatesArray(records, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromBinary(ByteBuffer records, int count, int coordinateType, int precision) {
+            return new MapProjectionCoordinatesArray(records, count, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromResults(ConvertResults[] results) {
+            return new MapProjectionCoordinatesArray(results);
+        }
+    };
+
+    public static final Family MGRS = new StringFamily("MGRS") {
+        @Override
+        public StringCoordinates source(int coordinateType, String coordinateString, int precision) {
+            return new MGRSorUSNGCoordinates(coordinateType, coordinateString, precision);
+        }
+
+        @Override
+        public StringCoordinates target(int coordinateType, int precision) {
+            return new MGRSorUSNGCoordinates(CoordinateType.MGRS, precision);
+        }
+    };
+
+    public static final Family F16GRS = new StringFamily("F16GRS") {
+        @Override
+        public StringCoordinates source(int coordinateType, String coordinateString, int precision) {
+            int length = coordinateString.length();
+
+            // Converted as MGRS, without the two trailing zeros of F16GRS.
+            if ((coordinateString.charAt(length - 1) == ('0')) && (coordinateString.charAt(length - 2) == ('0'))) {
+                coordinateString = coordinateString.substring(0, length - 2);
+            }
+
+            return new MGRSorUSNGCoordinates(CoordinateType.MGRS, coordinateString, precision);
+        }
+
+        @Override
+        public StringCoordinates target(int coordinateType, int precision) {
+            return new MGRSorUSNGCoordinates(CoordinateType.MGRS, precision);
+        }
+    };
+
+    public static final Family BNG = new StringFamily("BNG") {
+        @Override
+        public StringCoordinates source(int coordinateType, String coordinateString, int precision) {
+            return new BNGCoordinates(coordinateType, coordinateString, precision);
+        }
+
+        @Override
+        public StringCoordinates target(int coordinateType, int precision) {
+            return new BNGCoordinates(coordinateType, precision);
+        }
+    };
+
+    public static final Family GARS = new StringFamily("GARS") {
+        @Override
+        public StringCoordinates source(int coordinateType, String coordinateString, int precision) {
+            return new GARSCoordinates(coordinateType, coordinateString, precision);
+        }
+
+        @Override
+        public StringCoordinates target(int coordinateType, int precision) {
+            return new GARSCoordinates(coordinateType, precision);
+        }
+    };
+
+    public static final Family GEOREF = new StringFamily("GEOREF") {
+        @Override
+        public StringCoordinates source(int coordinateType, String coordinateString, int precision) {
+            return new GEOREFCoordinates(coordinateType, coordinateString, precision);
+        }
+
+        @Override
+        public StringCoordinates target(int coordinateType, int precision) {
+            return new GEOREFCoordinates(coordinateType, precision);
+        }
+    };
+
+    public static final Family CARTESIAN = new Family("Cartesian", CartesianCoordinatesArray.RECORD_BYTES) {
+        @Override
+        public CoordinatesArray fromFields(String prefix, Map<String, Object> fields, int coordinateType, int precision)
+                throws CoordinateConversionException, JSONException {
+            return new CartesianCoordinatesArray(prefix, fields, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromRecords(BulkRecordReader records, int coordinateType, int precision) throws CoordinateConversionException {
+            return new CartesianCoordinatesArray(records, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromBinary(ByteBuffer records, int count, int coordinateType, int precision) {
+            return new CartesianCoordinatesArray(records, count, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromResults(ConvertResults[] results) {
+            return new CartesianCoordinatesArray(results);
+        }
+    };
+
+    public static final Family GEODETIC = new Family("Geodetic", GeodeticCoordinatesArray.RECORD_BYTES) {
+        @Override
+        public CoordinatesArray fromFields(String prefix, Map<String, Object> fields, int coordinateType, int precision)
+                throws CoordinateConversionException, JSONException {
+            return new GeodeticCoordinatesArray(prefix, fields);
+        }
+
+        @Override
+        public CoordinatesArray fromRecords(BulkRecordReader records, int coordinateType, int precision) throws CoordinateConversionException {
+            return new GeodeticCoordinatesArray(records, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromBinary(ByteBuffer records, int count, int coordinateType, int precision) {
+            return new GeodeticCoordinatesArray(records, count, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromResults(ConvertResults[] results) {
+            return new GeodeticCoordinatesArray(results);
+        }
+    };
+
+    public static final Family UPS = new Family("UPS", UPSCoordinatesArray.RECORD_BYTES) {
+        @Override
+        public CoordinatesArray fromFields(String prefix, Map<String, Object> fields, int coordinateType, int precision)
+                throws CoordinateConversionException, JSONException {
+            return new UPSCoordinatesArray(prefix, fields);
+        }
+
+        @Override
+        public CoordinatesArray fromRecords(BulkRecordReader records, int coordinateType, int precision) throws CoordinateConversionException {
+            return new UPSCoordinatesArray(records, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromBinary(ByteBuffer records, int count, int coordinateType, int precision) {
+            return new UPSCoordinatesArray(records, count, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromResults(ConvertResults[] results) {
+            return new UPSCoordinatesArray(results);
+        }
+    };
+
+    public static final Family UTM = new Family("UTM", UTMCoordinatesArray.RECORD_BYTES) {
+        @Override
+        public CoordinatesArray fromFields(String prefix, Map<String, Object> fields, int coordinateType, int precision)
+                throws CoordinateConversionException, JSONException {
+            return new UTMCoordinatesArray(prefix, fields);
+        }
+
+        @Override
+        public CoordinatesArray fromRecords(BulkRecordReader records, int coordinateType, int precision) throws CoordinateConversionException {
+            return new UTMCoordinatesArray(records, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromBinary(ByteBuffer records, int count, int coordinateType, int precision) {
+            return new UTMCoordinatesArray(records, count, coordinateType);
+        }
+
+        @Override
+        public CoordinatesArray fromResults(ConvertResults[] results) {
+            return new UTMCoordinatesArray(results);
+        }
+    };
+
+    private static final ParametersFactory MAP_PROJECTION_3 = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new MapProjection3ParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory MAP_PROJECTION_4 = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new MapProjection4ParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory MAP_PROJECTION_5 = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new MapProjection5ParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory MAP_PROJECTION_6 = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new MapProjection6ParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory EQUIDISTANT_CYLINDRICAL = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new EquidistantCylindricalParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory GEODETIC_PARAMETERS = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new GeodeticParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory LOCAL_CARTESIAN = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new LocalCartesianParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory MERCATOR_STANDARD_PARALLEL = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new MercatorStandardParallelParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory MERCATOR_SCALE_FACTOR = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new MercatorScaleFactorParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory NEYS = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new NeysParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory OBLIQUE_MERCATOR = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new ObliqueMercatorParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory POLAR_STEREOGRAPHIC_STANDARD_PARALLEL = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new PolarStereographicStandardParallelParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory POLAR_STEREOGRAPHIC_SCALE_FACTOR = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new PolarStereographicScaleFactorParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    private static final ParametersFactory UTM_PARAMETERS = new ParametersFactory() {
+        @Override
+        public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) throws CoordinateConversionException {
+            return new UTMParamWrapper(prefix, fields).getParameters();
+        }
+    };
+
+    // Larger than any CoordinateType value; the arrays are only written while
+    // the class is initialized.
+    private static final int TABLE_SIZE = 64;
+
+    private static final Family[] FAMILIES = new Family[TABLE_SIZE];
+    private static final ParametersFactory[] PARAMETERS = new ParametersFactory[TABLE_SIZE];
+
+    static {
+        register(CoordinateType.ALBERS, MAP_PROJECTION, MAP_PROJECTION_6);
+        register(CoordinateType.AZIMUTHAL, MAP_PROJECTION, MAP_PROJECTION_4);
+        register(CoordinateType.BONNE, MAP_PROJECTION, MAP_PROJECTION_4);
+        register(CoordinateType.CASSINI, MAP_PROJECTION, MAP_PROJECTION_4);
+        register(CoordinateType.CYLEQA, MAP_PROJECTION, MAP_PROJECTION_4);
+        register(CoordinateType.ECKERT4, MAP_PROJECTION, MAP_PROJECTION_3);
+        register(CoordinateType.ECKERT6, MAP_PROJECTION, MAP_PROJECTION_3);
+        register(CoordinateType.EQDCYL, MAP_PROJECTION, EQUIDISTANT_CYLINDRICAL);
+        register(CoordinateType.GNOMONIC, MAP_PROJECTION, MAP_PROJECTION_4);
+        register(CoordinateType.LAMBERT_1, MAP_PROJECTION, MAP_PROJECTION_5);
+        register(CoordinateType.LAMBERT_2, MAP_PROJECTION, MAP_PROJECTION_6);
+        register(CoordinateType.MERCATOR_SP, MAP_PROJECTION, MERCATOR_STANDARD_PARALLEL);
+        register(CoordinateType.MERCATOR_SF, MAP_PROJECTION, MERCATOR_SCALE_FACTOR);
+        register(CoordinateType.MILLER, MAP_PROJECTION, MAP_PROJECTION_3);
+        register(CoordinateType.MOLLWEIDE, MAP_PROJECTION, MAP_PROJECTION_3);
+        register(CoordinateType.NEYS, MAP_PROJECTION, NEYS);
+        register(CoordinateType.NZMG, MAP_PROJECTION, plain(CoordinateType.NZMG));
+        register(CoordinateType.OMERC, MAP_PROJECTION, OBLIQUE_MERCATOR);
+        register(CoordinateType.ORTHOGRAPHIC, MAP_PROJECTION, MAP_PROJECTION_4);
+        register(CoordinateType.POLARSTEREO_SP, MAP_PROJECTION, POLAR_STEREOGRAPHIC_STANDARD_PARALLEL);
+        register(CoordinateType.POLARSTEREO_SF, MAP_PROJECTION, POLAR_STEREOGRAPHIC_SCALE_FACTOR);
+        register(CoordinateType.POLYCONIC, MAP_PROJECTION, MAP_PROJECTION_4);
+        register(CoordinateType.SINUSOIDAL, MAP_PROJECTION, MAP_PROJECTION_3);
+        register(CoordinateType.STEREOGRAPHIC, MAP_PROJECTION, MAP_PROJECTION_4);
+        register(CoordinateType.TRCYLEQA, MAP_PROJECTION, MAP_PROJECTION_5);
+        register(CoordinateType.TRANMERC, MAP_PROJECTION, MAP_PROJECTION_5);
+        register(CoordinateType.GRINTEN, MAP_PROJECTION, MAP_PROJECTION_3);
+
+        register(CoordinateType.BNG, BNG, plain(CoordinateType.BNG));
+        register(CoordinateType.GARS, GARS, plain(CoordinateType.GARS));
+        register(CoordinateType.GEOREF, GEOREF, plain(CoordinateType.GEOREF));
+        register(CoordinateType.MGRS, MGRS, plain(CoordinateType.MGRS));
+        register(CoordinateType.USNG, MGRS, plain(CoordinateType.USNG));
+        register(CoordinateType.F16GRS, F16GRS, plain(CoordinateType.MGRS));
+
+        register(CoordinateType.GEOCENTRIC, CARTESIAN, plain(CoordinateType.GEOCENTRIC));
+        register(CoordinateType.LOCCART, CARTESIAN, LOCAL_CARTESIAN);
+
+        register(CoordinateType.GEODETIC, GEODETIC, GEODETIC_PARAMETERS);
+        register(CoordinateType.UPS, UPS, plain(CoordinateType.UPS));
+        register(CoordinateType.UTM, UTM, UTM_PARAMETERS);
+    }
+
+    private CoordinateTypeRegistry() {
+    }
+
+    /**
+     * @return The coordinate family of the coordinate type.
+     * @throws CoordinateConversionException
+     *             If the coordinate type is not supported.
+     */
+    public static Family family(int coordinateType) throws CoordinateConversionException {
+        if (coordinateType < 0 || coordinateType >= TABLE_SIZE || FAMILIES[coordinateType] == null) {
+            throw new CoordinateConversionException("Invalid coordinate type");
+        }
+        return FAMILIES[coordinateType];
+    }
+
+    /**
+     * @return The coordinate system parameters of the coordinate type, built
+     *         from the prefixed fields of a request.
+     * @throws CoordinateConversionException
+     *             If the coordinate type is not supported or a parameter is
+     *             missing or invalid.
+     */
+    public static CoordinateSystemParameters parameters(int coordinateType, String prefix, Map<String, Object> fields)
+            throws CoordinateConversionException {
+        if (coordinateType < 0 || coordinateType >= TABLE_SIZE || PARAMETERS[coordinateType] == null) {
+            throw new CoordinateConversionException("Input contains invalid coordinate type");
+        }
+        return PARAMETERS[coordinateType].build(prefix, fields);
+    }
+
+    /**
+     * @return true if the coordinate type is supported.
+     */
+    public static boolean isSupported(int coordinateType) {
+        return coordinateType >= 0 && coordinateType < TABLE_SIZE && FAMILIES[coordinateType] != null;
+    }
+
+    private static void register(int coordinateType, Family family, ParametersFactory factory) {
+        FAMILIES[coordinateType] = family;
+        PARAMETERS[coordinateType] = factory;
+    }
+
+    /**
+     * @return A factory of parameters that are just the coordinate type.
+     */
+    private static ParametersFactory plain(final int coordinateType) {
+        return new ParametersFactory() {
+            @Override
+            public CoordinateSystemParameters build(String prefix, Map<String, Object> fields) {
+                return new CoordinateSystemParameters(coordinateType);
+            }
+        };
+    }
+}
@@ -5,13 +5,13 @@ import geotrans3.coordinates.ConvertResults;
 import geotrans3.coordinates.CoordinateTuple;
 import geotrans3.enumerations.DatumType;
 import geotrans3.exception.CoordinateConversionException;
-import geotrans3.jni.JNICoordinateConversionService;
 import geotrans3.jni.JNIDatumLibrary;
 import geotrans3.jni.JNIEllipsoidLibrary;
 import geotrans3.misc.StringToVal;
 import geotrans3.parameters.CoordinateSystemParameters;
 import geotrans3.utility.Constants;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -187,96 +187,117 @@ public class CustomConversion {
     public synchronized static ConvertResults[] performCustomConversion(CoordinateSystemParameters sourceParams,
             CoordinateSystemParameters targetParams, CoordinateTuple[] sourceCoords, CoordinateTuple targetCoords, Accuracy sourceAccuracy,
             Accuracy targetAccuracy, Map<String, Object> input) throws Exception {
+
+        Accuracy[] sourceAccuracies = new Accuracy[sourceCoords.length];
+        Arrays.fill(sourceAccuracies, sourceAccuracy);
+
+        return performCustomConversion(sourceParams, targetParams, sourceCoords, targetCoords, sourceAccuracies, targetAccuracy, input);
+    }
+
+    /**
+     * Same as
+     * {@link #performCustomConversion(CoordinateSystemParameters, CoordinateSystemParameters, CoordinateTuple[], CoordinateTuple, Accuracy, Accuracy, Map)}
+     * , but with a separate source accuracy for every source coordinate.
+     * 
+     * @param sourceAccuracies
+     *            The source accuracy fields, one per source coordinate.
+     * @return The results of the custom conversion, one per source coordinate.
+     * @throws Exception
+     */
+    public synchronized static ConvertResults[] performCustomConversion(CoordinateSystemParameters sourceParams,
+            CoordinateSystemParameters targetParams, CoordinateTuple[] sourceCoords, CoordinateTuple targetCoords, Accuracy[] sourceAccuracies,
+            Accuracy targetAccuracy, Map<String, Object> input) throws Exception {
         log.debug("Entering performCustomConversion()");
 
         ConvertResults[] results = new ConvertResults[sourceCoords.length];
         InputVerifier iv = new InputVerifier();
 
         // Initialize CCS with known datum to access the ellipsoid library,
-        // datum library JNI classes.
-        JNICoordinateConversionService jniCoordinateConversionService = new JNICoordinateConversionService(GeoTransConstants.WGS84_DATUM_CODE,
-                sourceParams, GeoTransConstants.WGS84_DATUM_CODE, targetParams);
-
-        JNIEllipsoidLibrary jniEllipsoidLibrary = new JNIEllipsoidLibrary(jniCoordinateConversionService.getEllipsoidLibrary());
-        JNIDatumLibrary jniDatumLibrary = new JNIDatumLibrary(jniCoordinateConversionService.getDatumLibrary());
-
-        String sourceDatum = iv.verifyInputStringIsValid(input, GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.DATUM);
-        String targetDatum = iv.verifyInputStringIsValid(input, GeoTransConstants.TARGET_PREFIX + GeoTransConstants.DATUM);
-        String sourceEllipsoidCode = new String();
-        String targetEllipsoidCode = new String();
-
-        boolean isSourceUsingCustomDatum = sourceDatum.equalsIgnoreCase(GeoTransConstants.USER_DEFINED_DATUM_CODE);
-        boolean isSourceUsingCustomEllipsoid = false;
-        boolean isSourceDatumCreated = false;
-        boolean isSourceEllipsoidCreated = false;
-
-        boolean isTargetUsingCustomDatum = targetDatum.equalsIgnoreCase(GeoTransConstants.USER_DEFINED_DATUM_CODE);
-        boolean isTargetUsingCustomEllipsoid = false;
-        boolean isTargetDatumCreated = false;
-        boolean isTargetEllipsoidCreated = false;
-
-        try {
-            if (isSourceUsingCustomDatum) {
-                log.debug("Using custom datum for source.");
-
-                sourceDatum = "SRC";
-                sourceEllipsoidCode = iv.verifyInputStringIsValid(input, GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.DATUM_ELLIPSOID_CODE);
-                isSourceUsingCustomEllipsoid = sourceEllipsoidCode.equalsIgnoreCase(GeoTransConstants.USER_DEFINED_ELLIPSOID_CODE);
-
-                if (isSourceUsingCustomEllipsoid) {
-                    log.debug("Using custom ellipsoid for source custom datum.");
-
-                    sourceEllipsoidCode = "SC";
-                    createEllipsoid(jniEllipsoidLibrary, sourceEllipsoidCode, GeoTransConstants.SOURCE_PREFIX, input);
-                    isSourceEllipsoidCreated = true;
+        // datum library JNI classes. It stays open until the custom datums
+        // and ellipsoids have been removed again.
+        try (NativeConversionService libraryService = new NativeConversionService(GeoTransConstants.WGS84_DATUM_CODE, sourceParams,
+                GeoTransConstants.WGS84_DATUM_CODE, targetParams)) {
+            JNIEllipsoidLibrary jniEllipsoidLibrary = new JNIEllipsoidLibrary(libraryService.getEllipsoidLibrary());
+            JNIDatumLibrary jniDatumLibrary = new JNIDatumLibrary(libraryService.getDatumLibrary());
+
+            String sourceDatum = iv.verifyInputStringIsValid(input, GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.DATUM);
+            String targetDatum = iv.verifyInputStringIsValid(input, GeoTransConstants.TARGET_PREFIX + GeoTransConstants.DATUM);
+            String sourceEllipsoidCode = new String();
+            String targetEllipsoidCode = new String();
+
+            boolean isSourceUsingCustomDatum = sourceDatum.equalsIgnoreCase(GeoTransConstants.USER_DEFINED_DATUM_CODE);
+            boolean isSourceUsingCustomEllipsoid = false;
+            boolean isSourceDatumCreated = false;
+            boolean isSourceEllipsoidCreated = false;
+
+            boolean isTargetUsingCustomDatum = targetDatum.equalsIgnoreCase(GeoTransConstants.USER_DEFINED_DATUM_CODE);
+            boolean isTargetUsingCustomEllipsoid = false;
+            boolean isTargetDatumCreated = false;
+            boolean isTargetEllipsoidCreated = false;
+
+            try {
+                if (isSourceUsingCustomDatum) {
+                    log.debug("Using custom datum for source.");
+
+                    sourceDatum = "SRC";
+                    sourceEllipsoidCode = iv.verifyInputStringIsValid(input, GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.DATUM_ELLIPSOID_CODE);
+                    isSourceUsingCustomEllipsoid = sourceEllipsoidCode.equalsIgnoreCase(GeoTransConstants.USER_DEFINED_ELLIPSOID_CODE);
+
+                    if (isSourceUsingCustomEllipsoid) {
+                        log.debug("Using custom ellipsoid for source custom datum.");
+
+                        sourceEllipsoidCode = "SC";
+                        createEllipsoid(jniEllipsoidLibrary, sourceEllipsoidCode, GeoTransConstants.SOURCE_PREFIX, input);
+                        isSourceEllipsoidCreated = true;
+                    }
+
+                    createDatum(jniDatumLibrary, sourceDatum, sourceEllipsoidCode, GeoTransConstants.SOURCE_PREFIX, input);
+                    isSourceDatumCreated = true;
                 }
 
-                createDatum(jniDatumLibrary, sourceDatum, sourceEllipsoidCode, GeoTransConstants.SOURCE_PREFIX, input);
-                isSourceDatumCreated = true;
-            }
+                if (isTargetUsingCustomDatum) {
+                    log.debug("Using custom datum for target.");
 
-            if (isTargetUsingCustomDatum) {
-                log.debug("Using custom datum for target.");
+                    targetDatum = "TGT";
+                    targetEllipsoidCode =  iv.verifyInputStringIsValid(input, GeoTransConstants.TARGET_PREFIX + GeoTransConstants.DATUM_ELLIPSOID_CODE);
+                    isTargetUsingCustomEllipsoid = targetEllipsoidCode.equalsIgnoreCase(GeoTransConstants.USER_DEFINED_ELLIPSOID_CODE);
 
-                targetDatum = "TGT";
-                targetEllipsoidCode =  iv.verifyInputStringIsValid(input, GeoTransConstants.TARGET_PREFIX + GeoTransConstants.DATUM_ELLIPSOID_CODE);
-                isTargetUsingCustomEllipsoid = targetEllipsoidCode.equalsIgnoreCase(GeoTransConstants.USER_DEFINED_ELLIPSOID_CODE);
+                    if (isTargetUsingCustomEllipsoid) {
+                        log.debug("Using custom ellipsoid for target custom datum.");
 
-                if (isTargetUsingCustomEllipsoid) {
-                    log.debug("Using custom ellipsoid for target custom datum.");
+                        targetEllipsoidCode = "TG";
+                        createEllipsoid(jniEllipsoidLibrary, targetEllipsoidCode, GeoTransConstants.TARGET_PREFIX, input);
+                        isTargetEllipsoidCreated = true;
+                    }
 
-                    targetEllipsoidCode = "TG";
-                    createEllipsoid(jniEllipsoidLibrary, targetEllipsoidCode, GeoTransConstants.TARGET_PREFIX, input);
-                    isTargetEllipsoidCreated = true;
+                    createDatum(jniDatumLibrary, targetDatum, targetEllipsoidCode, GeoTransConstants.TARGET_PREFIX, input);
+                    isTargetDatumCreated = true;
                 }
 
-                createDatum(jniDatumLibrary, targetDatum, targetEllipsoidCode, GeoTransConstants.TARGET_PREFIX, input);
-                isTargetDatumCreated = true;
-            }
-
-            // Redefine CCS with newly created datum(s)
-            jniCoordinateConversionService = new JNICoordinateConversionService(sourceDatum, sourceParams, targetDatum, targetParams);
-
-            for (int i = 0; i < sourceCoords.length; i++) {
-                results[i] = jniCoordinateConversionService.convertSourceToTarget(sourceCoords[i], sourceAccuracy, targetCoords, targetAccuracy);
-            }
-        } finally {
-            if (isSourceDatumCreated) {
-                log.debug("Deleting custom datum for source.");
-                jniDatumLibrary.removeDatum(sourceDatum);
-            }
-            if (isSourceEllipsoidCreated) {
-                log.debug("Deleting custom ellipsoid for source custom datum.");
-                jniEllipsoidLibrary.removeEllipsoid(sourceEllipsoidCode);
-            }
+                // Redefine CCS with newly created datum(s)
+                try (NativeConversionService conversionService = new NativeConversionService(sourceDatum, sourceParams, targetDatum, targetParams)) {
+                    for (int i = 0; i < sourceCoords.length; i++) {
+                        results[i] = conversionService.convertSourceToTarget(sourceCoords[i], sourceAccuracies[i], targetCoords, targetAccuracy);
+                    }
+                }
+            } finally {
+                if (isSourceDatumCreated) {
+                    log.debug("Deleting custom datum for source.");
+                    jniDatumLibrary.removeDatum(sourceDatum);
+                }
+                if (isSourceEllipsoidCreated) {
+                    log.debug("Deleting custom ellipsoid for source custom datum.");
+                    jniEllipsoidLibrary.removeEllipsoid(sourceEllipsoidCode);
+                }
 
-            if (isTargetDatumCreated) {
-                log.debug("Deleting custom datum for target.");
-                jniDatumLibrary.removeDatum(targetDatum);
-            }
-            if (isTargetEllipsoidCreated) {
-                log.debug("Deleting custom ellipsoid for target custom datum.");
-                jniEllipsoidLibrary.removeEllipsoid(targetEllipsoidCode);
+                if (isTargetDatumCreated) {
+                    log.debug("Deleting custom datum for target.");
+                    jniDatumLibrary.removeDatum(targetDatum);
+                }
+                if (isTargetEllipsoidCreated) {
+                    log.debug("Deleting custom ellipsoid for target custom datum.");
+                    jniEllipsoidLibrary.removeEllipsoid(targetEllipsoidCode);
+                }
             }
         }
 
@@ -0,0 +1,79 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The fields a point is read from, resolved to their full names once per
+ * request (see HeaderKeys). read() copies the fields of a point into a record,
+ * a String[] with one slot per field in schema order that is reused for every
+ * point, straight from the JSON object of the point, so no Map is built and
+ * no field name is concatenated per point.
+ * <p>
+ * Values are checked and trimmed exactly like
+ * InputVerifier.verifyInputStringIsValid() does, with the same message for a
+ * missing field.
+ */
+public final class FieldSchema {
+
+    private static final Logger log = LoggerFactory.getLogger(FieldSchema.class.getName());
+
+    private final String[] keys;
+
+    /**
+     * @param keys
+     *            Full names of the fields, in slot order.
+     */
+    public FieldSchema(String... keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * @return A record with one slot per field.
+     */
+    public String[] newRecord() {
+        return new String[keys.length];
+    }
+
+    /**
+     * @return The record, filled with the trimmed fields of the input.
+     * @throws CoordinateConversionException
+     *             If a field is missing.
+     */
+    public String[] read(Map<String, Object> input, String[] record) throws CoordinateConversionException {
+        for (int i = 0; i < keys.length; i++) {
+            record[i] = verify(keys[i], input.get(keys[i]));
+        }
+        return record;
+    }
+
+    /**
+     * @return The record, filled with the trimmed fields of the input.
+     * @throws CoordinateConversionException
+     *             If a field is missing.
+     */
+    public String[] read(JSONObject input, String[] record) throws CoordinateConversionException {
+        for (int i = 0; i < keys.length; i++) {
+            record[i] = verify(keys[i], input.opt(keys[i]));
+        }
+        return record;
+    }
+
+    private static String verify(String key, Object value) throws CoordinateConversionException {
+        if (value == null) {
+            throw new CoordinateConversionException(key + " is missing!");
+        }
+
+        String trimmed = value.toString().trim();
+
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Verified {} input exists with value {}", key, trimmed);
+        }
+        return trimmed;
+    }
+}
@@ -78,6 +78,57 @@ public class GeoTransConstants {
     public static final String ZONE_OVERRIDE = "Zone";
     public static final String ZONE_NUMBER = "ZoneData";
 
+    // Multi-target conversion; an array of target objects, each holding the
+    // target prefixed fields and format options for one target.
+    public static final String TARGETS = "targets";
+
+    // Approximate conversion; an object holding the bounding box of the
+    // transform grid in source coordinates (degrees for geodetic), the
+    // maximum error in meters and the interpolation.
+    public static final String APPROXIMATION = "approximation";
+    public static final String MIN_X = "minX";
+    public static final String MIN_Y = "minY";
+    public static final String MAX_X = "maxX";
+    public static final String MAX_Y = "maxY";
+    public static final String MAX_ERROR = "maxError";
+    public static final String INTERPOLATION = "interpolation";
+    public static final String BILINEAR = "bilinear";
+    public static final String BICUBIC = "bicubic";
+
+    // Geometry conversion; an array of geometry objects, each with its type
+    // and parts (flat x, y arrays in source coordinates, degrees for
+    // geodetic), and the tolerance of the densified edges in meters.
+    public static final String GEOMETRIES = "geometries";
+    public static final String GEOMETRY_TYPE = "type";
+    public static final String PARTS = "parts";
+    public static final String POLYGON = "polygon";
+    public static final String LINE_STRING = "line";
+    public static final String TOLERANCE = "tolerance";
+
+    // Grid conversion; an object holding the first node of the lattice, the
+    // spacing of its columns and rows in source coordinates (degrees for
+    // geodetic) and the number of columns and rows.
+    public static final String LATTICE = "lattice";
+    public static final String ORIGIN_X = "originX";
+    public static final String ORIGIN_Y = "originY";
+    public static final String STEP_X = "stepX";
+    public static final String STEP_Y = "stepY";
+    public static final String COLUMNS = "columns";
+    public static final String ROWS = "rows";
+
+    // Streaming conversion; written in place of the result of a line that
+    // could not be converted.
+    public static final String ERROR = "error";
+    public static final String LINE = "line";
+
+    // Batch coordinate translation; arrays in place of the single
+    // inputCoordinateString and inputCoordinateType, and the failed entries
+    // of the response.
+    public static final String COORDINATE_STRINGS = "CoordinateStrings";
+    public static final String COORDINATE_TYPES = "CoordinateTypes";
+    public static final String ERRORS = "errors";
+    public static final String INDEX = "index";
+
     public static final String END_OF_HEADER = "END OF HEADER";
     public static final String COMMA_SPACE = ", ";
 
@@ -13,35 +13,20 @@ import geotrans3.misc.FormatOptions;
 import geotrans3.misc.StringToVal;
 import geotrans3.parameters.CoordinateSystemParameters;
 import geotrans3.parameters.GeodeticParameters;
-import mil.nga.ods.geotrans.coordinates.CartesianCoordinatesArray;
 import mil.nga.ods.geotrans.coordinates.CoordinateAccuracy;
 import mil.nga.ods.geotrans.coordinates.CoordinatesArray;
 import mil.nga.ods.geotrans.coordinates.GeodeticCoordinatesArray;
-import mil.nga.ods.geotrans.coordinates.MapProjectionCoordinatesArray;
-import mil.nga.ods.geotrans.coordinates.StringCoordinatesArray;
-import mil.nga.ods.geotrans.coordinates.UPSCoordinatesArray;
-import mil.nga.ods.geotrans.coordinates.UTMCoordinatesArray;
-import mil.nga.ods.geotrans.parameters.EquidistantCylindricalParamWrapper;
-import mil.nga.ods.geotrans.parameters.GeodeticParamWrapper;
-import mil.nga.ods.geotrans.parameters.LocalCartesianParamWrapper;
-import mil.nga.ods.geotrans.parameters.MapProjection3ParamWrapper;
-import mil.nga.ods.geotrans.parameters.MapProjection4ParamWrapper;
-import mil.nga.ods.geotrans.parameters.MapProjection5ParamWrapper;
-import mil.nga.ods.geotrans.parameters.MapProjection6ParamWrapper;
-import mil.nga.ods.geotrans.parameters.MercatorScaleFactorParamWrapper;
-import mil.nga.ods.geotrans.parameters.MercatorStandardParallelParamWrapper;
-import mil.nga.ods.geotrans.parameters.NeysParamWrapper;
-import mil.nga.ods.geotrans.parameters.ObliqueMercatorParamWrapper;
-import mil.nga.ods.geotrans.parameters.PolarStereographicScaleFactorParamWrapper;
-import mil.nga.ods.geotrans.parameters.PolarStereographicStandardParallelParamWrapper;
-import mil.nga.ods.geotrans.parameters.UTMParamWrapper;
-
-import java.io.BufferedReader;
+
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -63,11 +48,14 @@ public class GeoTransUtility {
 
     private static final Logger log = LoggerFactory.getLogger(GeoTransUtility.class.getName());
 
+    // Size of the chunks a bulk stream is copied to its temporary file in.
+    private static final int SPOOL_CHUNK = 64 * 1024;
+
     private Map<String, Object> headerFields = new HashMap<String, Object>();
     private StringToVal stringToVal = new StringToVal();
     private InputVerifier iv = new InputVerifier();
 
-    private ArrayList<String> projectionFields;
+    private BulkRecordReader bulkRecords;
     private FormatOptions format;
 
     private boolean usingCustomDatum;
@@ -95,6 +83,10 @@ public class GeoTransUtility {
         return targetDatum;
     }
 
+    public FormatOptions getFormat() {
+        return format;
+    }
+
     public GeoTransUtility(JSONObject jObj) throws CoordinateConversionException, JSONException {
         log.debug("Entering GeoTransUtility(JSONObject) with: {}", jObj);
 
@@ -103,36 +95,153 @@ public class GeoTransUtility {
         log.debug("Leaving GeoTransUtility()");
     }
 
+    public GeoTransUtility(Map<String, Object> fields) {
+        log.debug("Entering GeoTransUtility(Map<String, Object>)");
+
+        headerFields.putAll(fields);
+
+        log.debug("Leaving GeoTransUtility()");
+    }
+
+    /**
+     * Constructor for bulk conversion of a stream. The stream is copied in
+     * chunks to a temporary file, which is memory mapped, and the coordinate
+     * records are later parsed in place by retrieveCoordinates(), like for
+     * the Path constructor. Gzip compressed data is recognized and
+     * decompressed while copying.
+     * 
+     * @param file
+     *            Bulk conversion data, at most 2GB once decompressed.
+     * @throws CoordinateConversionException
+     * @throws IOException
+     */
     public GeoTransUtility(InputStream file) throws CoordinateConversionException, IOException {
         log.debug("Entering GeoTransUtility(InputStream) with: {}", file);
 
-        projectionFields = new ArrayList<String>();
-        String[] headerValuePair = null;
-        String line = null;
-        boolean headerPassed = false;
+        readBulkHeader(spoolAndMap(BulkCompression.decompressIfGzipped(file)));
+
+        log.debug("Leaving GeoTransUtility()");
+    }
+
+    /**
+     * Constructor for bulk conversion of a file on disk. The file is memory
+     * mapped; the header is read like the InputStream constructor does, and
+     * the coordinate records are later parsed in place from the mapped buffer
+     * by retrieveCoordinates(). A gzip compressed file cannot be parsed in
+     * place; it is decompressed into a temporary file, which is mapped
+     * instead.
+     * 
+     * @param file
+     *            Bulk conversion file, at most 2GB once decompressed.
+     * @throws CoordinateConversionException
+     * @throws IOException
+     */
+    public GeoTransUtility(Path file) throws CoordinateConversionException, IOException {
+        log.debug("Entering GeoTransUtility(Path) with: {}", file);
+
+        if (BulkCompression.isGzipped(file)) {
+            try (InputStream in = BulkCompression.decompress(Files.newInputStream(file))) {
+                readBulkHeader(spoolAndMap(in));
+            }
+        } else {
+            readBulkHeader(map(file));
+        }
+
+        log.debug("Leaving GeoTransUtility()");
+    }
 
-        BufferedReader reader = new BufferedReader(new InputStreamReader(file));
+    /**
+     * Constructor for bulk conversion of data that is already in memory, in
+     * the same text format the InputStream constructor reads.
+     * 
+     * @param bulkData
+     *            Bulk conversion data, read from offset 0 to its limit.
+     */
+    public GeoTransUtility(ByteBuffer bulkData) {
+        log.debug("Entering GeoTransUtility(ByteBuffer)");
+
+        readBulkHeader(bulkData);
+
+        log.debug("Leaving GeoTransUtility()");
+    }
 
-        while ((line = reader.readLine()) != null) {
-            if (line.startsWith("#") || line.trim().length() == 0) {
-                continue;
+    /**
+     * Memory maps a whole file for reading.
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be memory mapped!");
             }
 
-            if (!headerPassed) {
-                if (!line.startsWith(GeoTransConstants.END_OF_HEADER)) {
-                    headerValuePair = line.split(":");
-                    if (headerValuePair.length == 2) {
-                        headerFields.put(headerValuePair[0].trim(), headerValuePair[1].trim());
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Copies a stream to a temporary file in chunks of SPOOL_CHUNK bytes and
+     * memory maps it. The file is deleted once mapped, or when the JVM exits
+     * where a mapped file cannot be deleted.
+     */
+    private static MappedByteBuffer spoolAndMap(InputStream in) throws IOException {
+        Path spool = Files.createTempFile("geotrans-bulk", ".tmp");
+
+        try {
+            try (OutputStream out = Files.newOutputStream(spool)) {
+                byte[] chunk = new byte[SPOOL_CHUNK];
+                long total = 0;
+                int read;
+
+                while ((read = in.read(chunk)) != -1) {
+                    total += read;
+                    if (total > Integer.MAX_VALUE) {
+                        throw new IOException("The bulk data is too large to be memory mapped!");
                     }
-                } else if (line.startsWith(GeoTransConstants.END_OF_HEADER)) {
-                    headerPassed = true;
+                    out.write(chunk, 0, read);
                 }
-            } else {
-                projectionFields.add(line);
+            }
+
+            return map(spool);
+        } finally {
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                spool.toFile().deleteOnExit();
             }
         }
+    }
 
-        log.debug("Leaving GeoTransUtility()");
+    /**
+     * Reads the header of a bulk file into the headerFields and keeps a reader
+     * over the coordinate records that follow it.
+     */
+    private void readBulkHeader(ByteBuffer bulkFile) {
+        BulkRecordReader reader = new BulkRecordReader(bulkFile, 0, bulkFile.limit());
+        boolean headerPassed = false;
+
+        while (!headerPassed && reader.nextRecord()) {
+            headerPassed = readHeaderLine(reader.getLine());
+        }
+
+        bulkRecords = new BulkRecordReader(bulkFile, reader.getPosition(), bulkFile.limit());
+    }
+
+    /**
+     * Reads one non-comment line of a bulk file header into the headerFields.
+     * 
+     * @return true if the line is the END OF HEADER marker.
+     */
+    private boolean readHeaderLine(String line) {
+        if (line.startsWith(GeoTransConstants.END_OF_HEADER)) {
+            return true;
+        }
+
+        String[] headerValuePair = line.split(":");
+        if (headerValuePair.length == 2) {
+            headerFields.put(headerValuePair[0].trim(), headerValuePair[1].trim());
+        }
+
+        return false;
     }
 
     /**
@@ -239,6 +348,52 @@ public class GeoTransUtility {
      * @since BAG SP6
      */
     public CoordinateTuple[] retrieveCoordinates(String prefix, boolean isBulk) throws CoordinateConversionException, JSONException {
+        return retrieveCoordinates(prefix, isBulk, headerFields, bulkRecords);
+    }
+
+    /**
+     * Builds the coordinates of one coordinate object of a streamed request,
+     * using the coordinate type of the request header.
+     * 
+     * @param prefix
+     *            The prefix of either 'source' or 'target'.
+     * @param coordinate
+     *            The prefixed coordinate fields, e.g. sourceLongitude.
+     * @return The coordinates of the object.
+     * @throws CoordinateConversionException
+     * @throws JSONException
+     */
+    public CoordinateTuple[] retrieveCoordinates(String prefix, JSONObject coordinate) throws CoordinateConversionException, JSONException {
+        return retrieveCoordinates(prefix, false, iv.convertJSONToMap(coordinate), null);
+    }
+
+    /**
+     * Builds the coordinates of a range of the bulk records, e.g. one of the
+     * ranges returned by getBulkRecords().split(), so that a large bulk file
+     * can be converted range by range.
+     * 
+     * @param prefix
+     *            The prefix of either 'source' or 'target'.
+     * @param records
+     *            The bulk records to parse, from the start of their range.
+     * @return The coordinates of the records, in file order.
+     * @throws CoordinateConversionException
+     * @throws JSONException
+     */
+    public CoordinateTuple[] retrieveCoordinates(String prefix, BulkRecordReader records) throws CoordinateConversionException, JSONException {
+        return retrieveCoordinates(prefix, true, headerFields, records);
+    }
+
+    /**
+     * @return A reader over the coordinate records of a bulk request, or null
+     *         for other requests.
+     */
+    public BulkRecordReader getBulkRecords() {
+        return bulkRecords == null ? null : bulkRecords.duplicate();
+    }
+
+    private CoordinateTuple[] retrieveCoordinates(String prefix, boolean isBulk, Map<String, Object> coordinateFields,
+            BulkRecordReader records) throws CoordinateConversionException, JSONException {
         log.debug("Entering retrieveCoordinates() with prefix: {}", prefix);
 
         if( prefix.equals(GeoTransConstants.TARGET_PREFIX) && isUsingDefaultTargetDatum() ) {
@@ -247,76 +402,28 @@ public class GeoTransUtility {
 
         int projectionType = stringToVal.stringToInt( iv.verifyInputStringIsValid(headerFields, prefix + GeoTransConstants.COORDINATE_TYPE) );
 
-        CoordinatesArray coordsArray;
-
-        log.debug("Switching on Coordinate Type {}", projectionType);
-        switch (projectionType) {
-        case CoordinateType.ALBERS:
-        case CoordinateType.AZIMUTHAL:
-        case CoordinateType.BONNE:
-        case CoordinateType.CASSINI:
-        case CoordinateType.CYLEQA:
-        case CoordinateType.ECKERT4:
-        case CoordinateType.ECKERT6:
-        case CoordinateType.EQDCYL:
-        case CoordinateType.GNOMONIC:
-        case CoordinateType.LAMBERT_1:
-        case CoordinateType.LAMBERT_2:
-        case CoordinateType.MERCATOR_SP:
-        case CoordinateType.MERCATOR_SF:
-        case CoordinateType.MILLER:
-        case CoordinateType.MOLLWEIDE:
-        case CoordinateType.NEYS:
-        case CoordinateType.NZMG:
-        case CoordinateType.OMERC:
-        case CoordinateType.ORTHOGRAPHIC:
-        case CoordinateType.POLARSTEREO_SP:
-        case CoordinateType.POLARSTEREO_SF:
-        case CoordinateType.POLYCONIC:
-        case CoordinateType.SINUSOIDAL:
-        case CoordinateType.STEREOGRAPHIC:
-        case CoordinateType.TRCYLEQA:
-        case CoordinateType.TRANMERC:
-        case CoordinateType.GRINTEN:
-            coordsArray = isBulk ? new MapProjectionCoordinatesArray(projectionFields, projectionType) : new MapProjectionCoordinatesArray(prefix,
-                    headerFields, projectionType);
-            break;
-
-        case CoordinateType.USNG:
-        case CoordinateType.MGRS:
-        case CoordinateType.BNG:
-        case CoordinateType.GARS:
-        case CoordinateType.GEOREF:
-        case CoordinateType.F16GRS:
-            coordsArray = isBulk ? new StringCoordinatesArray(projectionFields, projectionType, format.getPrecision()) : new StringCoordinatesArray(
-                    prefix, headerFields, projectionType, format.getPrecision());
-            break;
-
-        case CoordinateType.GEOCENTRIC:
-        case CoordinateType.LOCCART:
-            coordsArray = isBulk ? new CartesianCoordinatesArray(projectionFields, projectionType) : new CartesianCoordinatesArray(prefix, headerFields, projectionType);
-            break;
-
-        case CoordinateType.GEODETIC:
-            coordsArray = isBulk ? new GeodeticCoordinatesArray(projectionFields, projectionType) : new GeodeticCoordinatesArray(prefix, headerFields);
-            break;
-
-        case CoordinateType.UPS:
-            coordsArray = isBulk ? new UPSCoordinatesArray(projectionFields, projectionType) : new UPSCoordinatesArray(prefix, headerFields);
-            break;
-
-        case CoordinateType.UTM:
-            coordsArray = isBulk ? new UTMCoordinatesArray(projectionFields, projectionType) : new UTMCoordinatesArray(prefix, headerFields);
-            break;
-
-        default:
-            throw new CoordinateConversionException("Invalid coordinate type");
+        CoordinateTypeRegistry.Family family = CoordinateTypeRegistry.family(projectionType);
+
+        if (isBulk) {
+            return parseBulkRecords(records, family.recordParser(projectionType, format.getPrecision()));
         }
 
+        CoordinatesArray coordsArray = family.fromFields(prefix, coordinateFields, projectionType, format.getPrecision());
+
         log.debug("Leaving retrieveCoordinates()");
         return coordsArray.getCoordinates();
     }
 
+    /**
+     * Parses the coordinate records of a bulk file on the bulk worker pool.
+     */
+    private CoordinateTuple[] parseBulkRecords(BulkRecordReader records, BulkRecordParser parser) throws CoordinateConversionException {
+        CoordinateTuple[] coordinates = ParallelBulkParser.parse(records.duplicate(), parser);
+
+        log.debug("Leaving retrieveCoordinates() with {} bulk coordinate(s)", coordinates.length);
+        return coordinates;
+    }
+
     /**
      * Utility method for constructing the source and target coordinate system
      * parameters. These parameters will be input to the GeoTrans JNI conversion
@@ -340,161 +447,7 @@ public class GeoTransUtility {
 
         int projectionType = stringToVal.stringToInt(iv.verifyInputStringIsValid(headerFields, prefix + GeoTransConstants.COORDINATE_TYPE));
 
-        CoordinateSystemParameters paramsToReturn;
-
-        log.debug("Switching on Coordinate type{}", projectionType);
-        switch (projectionType) {
-        case CoordinateType.ECKERT4:
-        case CoordinateType.ECKERT6:
-        case CoordinateType.MILLER:
-        case CoordinateType.MOLLWEIDE:
-        case CoordinateType.SINUSOIDAL:
-        case CoordinateType.GRINTEN:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new MapProjection3ParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.AZIMUTHAL:
-        case CoordinateType.BONNE:
-        case CoordinateType.CASSINI:
-        case CoordinateType.CYLEQA:
-        case CoordinateType.GNOMONIC:
-        case CoordinateType.ORTHOGRAPHIC:
-        case CoordinateType.POLYCONIC:
-        case CoordinateType.STEREOGRAPHIC:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new MapProjection4ParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.LAMBERT_1:
-        case CoordinateType.TRCYLEQA:
-        case CoordinateType.TRANMERC:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new MapProjection5ParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.ALBERS:
-        case CoordinateType.LAMBERT_2:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new MapProjection6ParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.EQDCYL:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new EquidistantCylindricalParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.GEODETIC:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new GeodeticParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.LOCCART:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new LocalCartesianParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.MERCATOR_SP:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new MercatorStandardParallelParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.MERCATOR_SF:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new MercatorScaleFactorParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.NEYS:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new NeysParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.OMERC:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new ObliqueMercatorParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.POLARSTEREO_SP:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new PolarStereographicStandardParallelParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.POLARSTEREO_SF:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new PolarStereographicScaleFactorParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.UTM:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = (new UTMParamWrapper(prefix, headerFields)).getParameters();
-            break;
-
-        case CoordinateType.BNG:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = new CoordinateSystemParameters(CoordinateType.BNG);
-            break;
-
-        case CoordinateType.GARS:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = new CoordinateSystemParameters(CoordinateType.GARS);
-            break;
-
-        case CoordinateType.GEOCENTRIC:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = new CoordinateSystemParameters(CoordinateType.GEOCENTRIC);
-            break;
-
-        case CoordinateType.GEOREF:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = new CoordinateSystemParameters(CoordinateType.GEOREF);
-            break;
-
-        case CoordinateType.F16GRS:
-        case CoordinateType.MGRS:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = new CoordinateSystemParameters(CoordinateType.MGRS);
-            break;
-
-        case CoordinateType.NZMG:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = new CoordinateSystemParameters(CoordinateType.NZMG);
-            break;
-
-        case CoordinateType.UPS:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = new CoordinateSystemParameters(CoordinateType.UPS);
-            break;
-
-        case CoordinateType.USNG:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            paramsToReturn = new CoordinateSystemParameters(CoordinateType.USNG);
-            break;
-
-        default:
-            throw new CoordinateConversionException("Input contains invalid coordinate type");
-        }
+        CoordinateSystemParameters paramsToReturn = CoordinateTypeRegistry.parameters(projectionType, prefix, headerFields);
 
         log.debug("Leaving retrieveParameters()");
         return paramsToReturn;
@@ -546,83 +499,7 @@ public class GeoTransUtility {
     public Object buildResponse(ConvertResults[] results, boolean isBulk) throws CoordinateConversionException, JSONException, IOException {
         log.debug("Entering buildResponse()");
 
-        int projectionType = results[0].getCoordinateTuple().getCoordinateType();
-
-        CoordinatesArray coords;
-
-        switch (projectionType) {
-        case CoordinateType.ALBERS:
-        case CoordinateType.AZIMUTHAL:
-        case CoordinateType.BONNE:
-        case CoordinateType.CASSINI:
-        case CoordinateType.CYLEQA:
-        case CoordinateType.ECKERT4:
-        case CoordinateType.ECKERT6:
-        case CoordinateType.EQDCYL:
-        case CoordinateType.GNOMONIC:
-        case CoordinateType.LAMBERT_1:
-        case CoordinateType.LAMBERT_2:
-        case CoordinateType.MERCATOR_SP:
-        case CoordinateType.MERCATOR_SF:
-        case CoordinateType.MILLER:
-        case CoordinateType.MOLLWEIDE:
-        case CoordinateType.NEYS:
-        case CoordinateType.NZMG:
-        case CoordinateType.OMERC:
-        case CoordinateType.ORTHOGRAPHIC:
-        case CoordinateType.POLARSTEREO_SP:
-        case CoordinateType.POLARSTEREO_SF:
-        case CoordinateType.POLYCONIC:
-        case CoordinateType.SINUSOIDAL:
-        case CoordinateType.STEREOGRAPHIC:
-        case CoordinateType.TRCYLEQA:
-        case CoordinateType.TRANMERC:
-        case CoordinateType.GRINTEN:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            coords = new MapProjectionCoordinatesArray(results);
-            break;
-
-        case CoordinateType.BNG:
-        case CoordinateType.GARS:
-        case CoordinateType.GEOREF:
-        case CoordinateType.MGRS:
-        case CoordinateType.USNG:
-        case CoordinateType.F16GRS:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            coords = new StringCoordinatesArray(results);
-            break;
-
-        case CoordinateType.GEOCENTRIC:
-        case CoordinateType.LOCCART:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            coords = new CartesianCoordinatesArray(results);
-            break;
-
-        case CoordinateType.GEODETIC:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            coords = new GeodeticCoordinatesArray(results);
-            break;
-
-        case CoordinateType.UPS:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            coords = new UPSCoordinatesArray(results);
-            break;
-
-        case CoordinateType.UTM:
-            log.debug("Found type {}", CoordinateType.name(projectionType));
-
-            coords = new UTMCoordinatesArray(results);
-            break;
-
-        default:
-            throw new CoordinateConversionException("Invalid coordinate type");
-        }
-
+        CoordinatesArray coords = buildResultsArray(results);
         Object objectToReturn;
 
         if (!isBulk) {
@@ -641,6 +518,167 @@ public class GeoTransUtility {
         return objectToReturn;
     }
 
+    /**
+     * Writes the results of a bulk conversion to a stream, one UTF-8 encoded
+     * line per result, in the same format buildResponse() returns for bulk
+     * conversions. The stream is flushed but not closed.
+     * 
+     * @param results
+     *            The converted coordinates.
+     * @param out
+     *            Destination of the lines.
+     * @throws CoordinateConversionException
+     * @throws IOException
+     */
+    public void writeBulkResponse(ConvertResults[] results, OutputStream out) throws CoordinateConversionException, IOException {
+        log.debug("Entering writeBulkResponse()");
+
+        buildResultsArray(results).writeTo(out, format);
+
+        log.debug("Leaving writeBulkResponse()");
+    }
+
+    /**
+     * Wraps the results of a conversion in the CoordinatesArray of their
+     * coordinate type.
+     * 
+     * @param results
+     *            The converted coordinates, all of the same coordinate type.
+     * @return The coordinates array for formatting the results.
+     * @throws CoordinateConversionException
+     */
+    public CoordinatesArray buildResultsArray(ConvertResults[] results) throws CoordinateConversionException {
+        int projectionType = results[0].getCoordinateTuple().getCoordinateType();
+
+        return CoordinateTypeRegistry.family(projectionType).fromResults(results);
+    }
+
+    /**
+     * Method for retrieving the target objects of a multi-target conversion
+     * request.
+     * 
+     * @return The array of target objects, in request order.
+     * @throws CoordinateConversionException
+     * @throws JSONException
+     */
+    public JSONArray retrieveTargets() throws CoordinateConversionException, JSONException {
+        log.debug("Entering retrieveTargets()");
+
+        iv.verifyInputStringIsValid(headerFields, GeoTransConstants.TARGETS);
+        JSONArray targets = new JSONArray(headerFields.get(GeoTransConstants.TARGETS).toString());
+
+        if (targets.length() == 0) {
+            throw new CoordinateConversionException(GeoTransConstants.TARGETS + " is empty!");
+        }
+
+        log.debug("Leaving retrieveTargets() with {} target(s)", targets.length());
+        return targets;
+    }
+
+    /**
+     * Retrieves the approximation object of an approximate conversion request.
+     * 
+     * @return The fields of the approximation object.
+     * @throws CoordinateConversionException
+     * @throws JSONException
+     */
+    public Map<String, Object> retrieveApproximation() throws CoordinateConversionException, JSONException {
+        iv.verifyInputStringIsValid(headerFields, GeoTransConstants.APPROXIMATION);
+
+        return iv.convertJSONToMap(new JSONObject(headerFields.get(GeoTransConstants.APPROXIMATION).toString()));
+    }
+
+    /**
+     * Retrieves the lattice object of a grid conversion request.
+     * 
+     * @return The fields of the lattice object.
+     * @throws CoordinateConversionException
+     * @throws JSONException
+     */
+    public Map<String, Object> retrieveLattice() throws CoordinateConversionException, JSONException {
+        iv.verifyInputStringIsValid(headerFields, GeoTransConstants.LATTICE);
+
+        return iv.convertJSONToMap(new JSONObject(headerFields.get(GeoTransConstants.LATTICE).toString()));
+    }
+
+    /**
+     * Retrieves the geometries of a geometry conversion request.
+     * 
+     * @return The array of geometry objects, in request order.
+     * @throws CoordinateConversionException
+     * @throws JSONException
+     */
+    public JSONArray retrieveGeometries() throws CoordinateConversionException, JSONException {
+        iv.verifyInputStringIsValid(headerFields, GeoTransConstants.GEOMETRIES);
+
+        return new JSONArray(headerFields.get(GeoTransConstants.GEOMETRIES).toString());
+    }
+
+    /**
+     * Retrieves the tolerance of a geometry conversion request.
+     * 
+     * @return The tolerance in meters.
+     * @throws CoordinateConversionException
+     */
+    public double retrieveTolerance() throws CoordinateConversionException {
+        return new CoordinateParser().parseDouble(iv.verifyInputStringIsValid(headerFields, GeoTransConstants.TOLERANCE));
+    }
+
+    /**
+     * Builds the utility for the first leg of a multi-target conversion: the
+     * request source converted to WGS84 geodetic coordinates with ellipsoid
+     * heights. Every target of the request is then converted from the results
+     * of this leg.
+     * 
+     * @return A new, uninitialized utility for the source to WGS84 leg.
+     */
+    public GeoTransUtility buildIntermediateUtility() {
+        Map<String, Object> fields = withoutPrefix(headerFields, GeoTransConstants.TARGET_PREFIX);
+
+        putIntermediateSystem(fields, GeoTransConstants.TARGET_PREFIX);
+
+        return new GeoTransUtility(fields);
+    }
+
+    /**
+     * Builds the utility for converting the results of
+     * buildIntermediateUtility() to one target of a multi-target conversion.
+     * The fields of the target object override the top level fields of the
+     * request.
+     * 
+     * @param target
+     *            One element of the request's targets array.
+     * @return A new, uninitialized utility for the WGS84 to target leg.
+     * @throws JSONException
+     */
+    public GeoTransUtility buildTargetUtility(JSONObject target) throws JSONException {
+        Map<String, Object> fields = withoutPrefix(headerFields, GeoTransConstants.SOURCE_PREFIX);
+        fields.remove(GeoTransConstants.TARGETS);
+
+        putIntermediateSystem(fields, GeoTransConstants.SOURCE_PREFIX);
+        fields.putAll(iv.convertJSONToMap(target));
+
+        return new GeoTransUtility(fields);
+    }
+
+    private static Map<String, Object> withoutPrefix(Map<String, Object> fields, String prefix) {
+        Map<String, Object> mapToReturn = new HashMap<String, Object>();
+
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            if (!field.getKey().startsWith(prefix)) {
+                mapToReturn.put(field.getKey(), field.getValue());
+            }
+        }
+
+        return mapToReturn;
+    }
+
+    private static void putIntermediateSystem(Map<String, Object> fields, String prefix) {
+        fields.put(prefix + GeoTransConstants.DATUM, GeoTransConstants.WGS84_DATUM_CODE);
+        fields.put(prefix + GeoTransConstants.COORDINATE_TYPE, String.valueOf(CoordinateType.GEODETIC));
+        fields.put(prefix + GeoTransConstants.HEIGHT_TYPE, String.valueOf(HeightType.ELLIPSOID_HEIGHT));
+    }
+
     public Accuracy retrieveAccuracy(String prefix) throws CoordinateConversionException {
         log.debug("Entering retrieveAccuracy()");
 
@@ -0,0 +1,285 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A geoid separation grid in the GeoTrans .grd format, memory mapped and read
+ * in place: a header of six big-endian floats (south, north, west and east
+ * edges and the latitude and longitude spacing, in degrees), then the
+ * separations in meters as big-endian floats, one row per latitude from
+ * north to south, each from the west to the east edge.
+ * <p>
+ * Lookups interpolate bilinearly, like GeoTrans' EGM96 15 minute bilinear
+ * height type, or with natural cubic splines through the surrounding 4x4
+ * posts, like its EGM96 variable natural spline height type. They only read
+ * the mapped buffer, so a grid can be used by any number of threads.
+ */
+public final class GeoidGrid {
+
+    private static final Logger log = LoggerFactory.getLogger(GeoidGrid.class.getName());
+
+    public static final String FILE_PROPERTY = "geotrans.geoid.file";
+
+    private static final String DATA_ENVIRONMENT = "MSPCCS_DATA";
+    private static final String EGM96_FILE = "egm96.grd";
+
+    private static final int HEADER_FLOATS = 6;
+    private static final double EDGE_TOLERANCE = 1e-9;
+
+    private final FloatBuffer posts;
+    private final int rows;
+    private final int columns;
+    private final double north;
+    private final double west;
+    private final double postsPerRadianY;
+    private final double postsPerRadianX;
+    private final boolean global;
+
+    /**
+     * Maps a grid file.
+     *
+     * @param file
+     *            The .grd file.
+     * @throws IOException
+     *             If the file cannot be read or is not a valid grid.
+     */
+    public GeoidGrid(Path file) throws IOException {
+        ByteBuffer mapped;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        mapped.order(ByteOrder.BIG_ENDIAN);
+
+        if (mapped.capacity() < HEADER_FLOATS * 4) {
+            throw new IOException(file + " is too short for a geoid grid header!");
+        }
+
+        double south = mapped.getFloat(0);
+        north = mapped.getFloat(4);
+        west = mapped.getFloat(8);
+        double east = mapped.getFloat(12);
+        double latitudeSpacing = mapped.getFloat(16);
+        double longitudeSpacing = mapped.getFloat(20);
+
+        if (!(latitudeSpacing > 0 && longitudeSpacing > 0 && north > south && east > west)) {
+            throw new IOException(file + " has an invalid geoid grid header!");
+        }
+
+        rows = (int) Math.round((north - south) / latitudeSpacing) + 1;
+        columns = (int) Math.round((east - west) / longitudeSpacing) + 1;
+
+        if (mapped.capacity() != (HEADER_FLOATS + (long) rows * columns) * 4) {
+            throw new IOException(file + " does not hold the " + rows + " x " + columns + " posts of its header!");
+        }
+
+        mapped.position(HEADER_FLOATS * 4);
+        posts = mapped.slice().order(ByteOrder.BIG_ENDIAN).asFloatBuffer();
+
+        postsPerRadianY = 180 / (Math.PI * latitudeSpacing);
+        postsPerRadianX = 180 / (Math.PI * longitudeSpacing);
+        // A global grid repeats its west edge as its east edge.
+        global = Math.abs(east - west - 360) < longitudeSpacing / 2;
+
+        log.debug("Mapped geoid grid {} with {} x {} posts", file, rows, columns);
+    }
+
+    /**
+     * @return The EGM96 grid of the GeoTrans data directory (MSPCCS_DATA, or
+     *         the file of the geotrans.geoid.file system property), or null if
+     *         it cannot be mapped.
+     */
+    public static GeoidGrid egm96() {
+        return Egm96.GRID;
+    }
+
+    /**
+     * @param latitude
+     *            Latitude in radians.
+     * @param longitude
+     *            Longitude in radians.
+     * @param spline
+     *            true for natural cubic spline interpolation, false for
+     *            bilinear.
+     * @return The geoid separation in meters: the height of the geoid above
+     *         the WGS84 ellipsoid.
+     * @throws CoordinateConversionException
+     *             If the point is outside the grid.
+     */
+    public double separation(double latitude, double longitude, boolean spline) throws CoordinateConversionException {
+        double y = clamp((Math.toRadians(north) - latitude) * postsPerRadianY, rows - 1);
+        double x = clamp(longitudeOffset(longitude) * postsPerRadianX, columns - 1);
+
+        if (!(y >= 0 && y <= rows - 1 && x >= 0 && x <= columns - 1)) {
+            throw new CoordinateConversionException("Latitude or longitude out of range of the geoid grid!");
+        }
+
+        return spline ? spline(x, y) : bilinear(x, y);
+    }
+
+    /**
+     * Looks up the separations of consecutive points.
+     *
+     * @param latitudes
+     *            Latitudes in radians.
+     * @param longitudes
+     *            Longitudes in radians.
+     * @param separations
+     *            Receives the separations in meters.
+     * @param from
+     *            First point.
+     * @param to
+     *            End of the points, exclusive.
+     * @param spline
+     *            true for natural cubic spline interpolation, false for
+     *            bilinear.
+     * @throws CoordinateConversionException
+     *             If a point is outside the grid.
+     */
+    public void separations(double[] latitudes, double[] longitudes, double[] separations, int from, int to, boolean spline)
+            throws CoordinateConversionException {
+        for (int i = from; i < to; i++) {
+            separations[i] = separation(latitudes[i], longitudes[i], spline);
+        }
+    }
+
+    /**
+     * @return The offset, moved onto the edge of the grid if it is off by no
+     *         more than the rounding of the conversion from radians.
+     */
+    private static double clamp(double offset, int last) {
+        if (offset < 0 && offset > -EDGE_TOLERANCE) {
+            return 0;
+        }
+        if (offset > last && offset < last + EDGE_TOLERANCE) {
+            return last;
+        }
+        return offset;
+    }
+
+    private double longitudeOffset(double longitude) {
+        double offset = longitude - Math.toRadians(west);
+
+        if (global) {
+            offset %= 2 * Math.PI;
+            if (offset < 0) {
+                offset += 2 * Math.PI;
+            }
+        }
+        return offset;
+    }
+
+    private double bilinear(double x, double y) {
+        int column = Math.min((int) x, columns - 2);
+        int row = Math.min((int) y, rows - 2);
+        double dx = x - column;
+        double dy = y - row;
+
+        double upper = post(row, column) + dx * (post(row, column + 1) - post(row, column));
+        double lower = post(row + 1, column) + dx * (post(row + 1, column + 1) - post(row + 1, column));
+
+        return upper + dy * (lower - upper);
+    }
+
+    private double spline(double x, double y) {
+        int column = (int) x - 1;
+        int row = Math.max(0, Math.min((int) y - 1, rows - 4));
+
+        if (!global) {
+            column = Math.max(0, Math.min(column, columns - 4));
+        }
+
+        double[] window = new double[4];
+        double[] rowValues = new double[4];
+
+        for (int j = 0; j < 4; j++) {
+            for (int i = 0; i < 4; i++) {
+                rowValues[i] = post(row + j, column + i);
+            }
+            window[j] = naturalSpline(rowValues, x - column);
+        }
+        return naturalSpline(window, y - row);
+    }
+
+    /**
+     * @return The natural cubic spline through four posts at 0, 1, 2 and 3,
+     *         evaluated at t.
+     */
+    private static double naturalSpline(double[] values, double t) {
+        // Second derivatives at the inner posts; zero at the outer ones.
+        double a = 6 * (values[0] - 2 * values[1] + values[2]);
+        double b = 6 * (values[1] - 2 * values[2] + values[3]);
+        double[] m = { 0, (4 * a - b) / 15, (4 * b - a) / 15, 0 };
+
+        int i = Math.max(0, Math.min((int) t, 2));
+        double right = i + 1 - t;
+        double left = t - i;
+
+        return m[i] * right * right * right / 6 + m[i + 1] * left * left * left / 6 + (values[i] - m[i] / 6) * right
+                + (values[i + 1] - m[i + 1] / 6) * left;
+    }
+
+    private double post(int row, int column) {
+        if (global) {
+            // The last column repeats the first one.
+            column %= columns - 1;
+            if (column < 0) {
+                column += columns - 1;
+            }
+        }
+        return posts.get(row * columns + column);
+    }
+
+    private static final class Egm96 {
+
+        static final GeoidGrid GRID = load();
+
+        private static GeoidGrid load() {
+            Path file = locate();
+
+            if (file == null) {
+                log.warn("No {} found in ${} or -D{}, geoid heights stay with GeoTrans", EGM96_FILE, DATA_ENVIRONMENT, FILE_PROPERTY);
+                return null;
+            }
+
+            try {
+                return new GeoidGrid(file);
+            } catch (IOException e) {
+                log.warn("Cannot map the geoid grid, geoid heights stay with GeoTrans", e);
+                return null;
+            }
+        }
+
+        private static Path locate() {
+            String configured = System.getProperty(FILE_PROPERTY);
+            if (configured != null) {
+                return Paths.get(configured);
+            }
+
+            String data = System.getenv(DATA_ENVIRONMENT);
+            if (data == null) {
+                return null;
+            }
+
+            for (Path candidate : new Path[] { Paths.get(data, "geoid", EGM96_FILE), Paths.get(data, EGM96_FILE) }) {
+                if (Files.isRegularFile(candidate)) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.Accuracy;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.GeodeticCoordinates;
+import geotrans3.enumerations.CoordinateType;
+import geotrans3.enumerations.HeightType;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.parameters.CoordinateSystemParameters;
+import geotrans3.parameters.GeodeticParameters;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts WGS84 geodetic coordinates between ellipsoid and EGM96 mean sea
+ * level heights in Java, with the memory mapped GeoidGrid instead of a JNI
+ * call per point. Only the height changes; latitude and longitude are passed
+ * through, and so are the accuracies, as no datum is shifted.
+ * <p>
+ * It is off unless the JVM is started with -Dgeotrans.geoid.mapped=true, and
+ * only used for conversions it reproduces: WGS84 geodetic to WGS84 geodetic
+ * where each side has ellipsoid heights or one of the EGM96 height types and
+ * at least one side has EGM96 heights. All other conversions, EGM84 and
+ * EGM2008 heights included, stay with GeoTrans.
+ */
+final class GeoidHeightConversion {
+
+    private static final Logger log = LoggerFactory.getLogger(GeoidHeightConversion.class.getName());
+
+    static final boolean ENABLED = Boolean.getBoolean("geotrans.geoid.mapped");
+
+    // Points converted by one task.
+    private static final int CHUNK_POINTS = 4096;
+
+    private final GeoidGrid grid;
+    private final int sourceHeightType;
+    private final int targetHeightType;
+
+    private GeoidHeightConversion(GeoidGrid grid, int sourceHeightType, int targetHeightType) {
+        this.grid = grid;
+        this.sourceHeightType = sourceHeightType;
+        this.targetHeightType = targetHeightType;
+    }
+
+    /**
+     * @return The Java conversion for the source and target of the request,
+     *         or null if it is disabled or does not apply.
+     */
+    static GeoidHeightConversion forConversion(GeoTransUtility gtUtility, CoordinateSystemParameters sourceParameters,
+            CoordinateSystemParameters targetParameters) {
+        if (!ENABLED || gtUtility.isUsingCustomDatum() || !(sourceParameters instanceof GeodeticParameters)
+                || !(targetParameters instanceof GeodeticParameters)
+                || !GeoTransConstants.WGS84_DATUM_CODE.equalsIgnoreCase(gtUtility.getSourceDatum())
+                || !GeoTransConstants.WGS84_DATUM_CODE.equalsIgnoreCase(gtUtility.getTargetDatum())) {
+            return null;
+        }
+
+        int sourceHeightType = ((GeodeticParameters) sourceParameters).getHeightType();
+        int targetHeightType = ((GeodeticParameters) targetParameters).getHeightType();
+
+        if (!isSupported(sourceHeightType) || !isSupported(targetHeightType) || (!isEgm96(sourceHeightType) && !isEgm96(targetHeightType))) {
+            return null;
+        }
+
+        GeoidGrid grid = GeoidGrid.egm96();
+        if (grid == null) {
+            return null;
+        }
+
+        log.debug("Converting height type {} to {} with the mapped geoid grid", sourceHeightType, targetHeightType);
+        return new GeoidHeightConversion(grid, sourceHeightType, targetHeightType);
+    }
+
+    /**
+     * Converts the heights of the source coordinates, in parallel on the bulk
+     * fork-join pool for large arrays.
+     *
+     * @param sourceTuples
+     *            Geodetic source coordinates.
+     * @param sourceAccuracy
+     *            Accuracy of all source coordinates, used if sourceAccuracies
+     *            is null.
+     * @param sourceAccuracies
+     *            One accuracy per source coordinate, or null.
+     * @return One result per source coordinate, in the same order.
+     * @throws CoordinateConversionException
+     *             The first point, in coordinate order, that is out of range.
+     */
+    ConvertResults[] convert(CoordinateTuple[] sourceTuples, Accuracy sourceAccuracy, Accuracy[] sourceAccuracies)
+            throws CoordinateConversionException {
+        Points points = new Points(sourceTuples, sourceAccuracy, sourceAccuracies);
+
+        if (sourceTuples.length <= CHUNK_POINTS) {
+            points.convert(0, sourceTuples.length);
+            return points.results;
+        }
+
+        ForkJoinPool pool = BulkWorkers.getPool();
+        ChunkTask[] tasks = new ChunkTask[(sourceTuples.length + CHUNK_POINTS - 1) / CHUNK_POINTS];
+
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new ChunkTask(points, i * CHUNK_POINTS, Math.min(sourceTuples.length, (i + 1) * CHUNK_POINTS));
+            pool.execute(tasks[i]);
+        }
+
+        try {
+            for (ChunkTask task : tasks) {
+                task.join();
+            }
+        } catch (RuntimeException e) {
+            for (ChunkTask task : tasks) {
+                task.cancel(false);
+            }
+            throw BulkWorkers.unwrap(e);
+        }
+        return points.results;
+    }
+
+    private static boolean isSupported(int heightType) {
+        return heightType == HeightType.ELLIPSOID_HEIGHT || isEgm96(heightType);
+    }
+
+    private static boolean isEgm96(int heightType) {
+        return heightType == HeightType.EGM96_FIFTEEN_MIN_BILINEAR || heightType == HeightType.EGM96_VARIABLE_NATURAL_SPLINE;
+    }
+
+    /**
+     * The source coordinates, unpacked into primitive arrays for the geoid
+     * lookups, and their results.
+     */
+    private final class Points {
+
+        final CoordinateTuple[] sourceTuples;
+        final Accuracy sourceAccuracy;
+        final Accuracy[] sourceAccuracies;
+
+        final double[] latitudes;
+        final double[] longitudes;
+        final double[] heights;
+        final double[] sourceSeparations;
+        final double[] targetSeparations;
+        final ConvertResults[] results;
+
+        Points(CoordinateTuple[] sourceTuples, Accuracy sourceAccuracy, Accuracy[] sourceAccuracies) {
+            int count = sourceTuples.length;
+
+            this.sourceTuples = sourceTuples;
+            this.sourceAccuracy = sourceAccuracy;
+            this.sourceAccuracies = sourceAccuracies;
+
+            latitudes = new double[count];
+            longitudes = new double[count];
+            heights = new double[count];
+            // With the same height type on both sides the height is kept.
+            boolean sameHeightType = sourceHeightType == targetHeightType;
+            sourceSeparations = isEgm96(sourceHeightType) && !sameHeightType ? new double[count] : null;
+            targetSeparations = isEgm96(targetHeightType) && !sameHeightType ? new double[count] : null;
+            results = new ConvertResults[count];
+        }
+
+        void convert(int from, int to) throws CoordinateConversionException {
+            for (int i = from; i < to; i++) {
+                GeodeticCoordinates source = (GeodeticCoordinates) sourceTuples[i];
+
+                latitudes[i] = source.getLatitude();
+                longitudes[i] = normalizeLongitude(source.getLongitude());
+                heights[i] = source.getHeight();
+
+                if (Math.abs(latitudes[i]) > Math.PI / 2) {
+                    throw new CoordinateConversionException("Latitude out of range");
+                }
+            }
+
+            if (sourceSeparations != null) {
+                grid.separations(latitudes, longitudes, sourceSeparations, from, to,
+                        sourceHeightType == HeightType.EGM96_VARIABLE_NATURAL_SPLINE);
+            }
+            if (targetSeparations != null) {
+                grid.separations(latitudes, longitudes, targetSeparations, from, to,
+                        targetHeightType == HeightType.EGM96_VARIABLE_NATURAL_SPLINE);
+            }
+
+            for (int i = from; i < to; i++) {
+                double height = heights[i];
+
+                if (sourceSeparations != null) {
+                    height += sourceSeparations[i];
+                }
+                if (targetSeparations != null) {
+                    height -= targetSeparations[i];
+                }
+
+                results[i] = new ConvertResults(new GeodeticCoordinates(CoordinateType.GEODETIC, longitudes[i], latitudes[i], height),
+                        sourceAccuracies == null ? sourceAccuracy : sourceAccuracies[i]);
+            }
+        }
+    }
+
+    private static double normalizeLongitude(double longitude) throws CoordinateConversionException {
+        if (longitude < -Math.PI || longitude > 2 * Math.PI) {
+            throw new CoordinateConversionException("Longitude out of range");
+        }
+        return longitude > Math.PI ? longitude - 2 * Math.PI : longitude;
+    }
+
+    private static class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private Points points;
+        private int from;
+        private int to;
+
+        ChunkTask(Points points, int from, int to) {
+            this.points = points;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                points.convert(from, to);
+            } catch (CoordinateConversionException e) {
+                throw new BulkWorkers.TaskFailure(e);
+            }
+        }
+    }
+}
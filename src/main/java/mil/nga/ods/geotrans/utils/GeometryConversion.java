@@ -0,0 +1,394 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.GeodeticCoordinates;
+import geotrans3.coordinates.MapProjectionCoordinates;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.utility.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts polygons and lines, densifying their edges so that the converted
+ * edges stay within a tolerance of the exact conversion of the edge.
+ * <p>
+ * Each edge is bisected in the source coordinate system. The midpoint is
+ * converted exactly and compared with the midpoint of the converted edge; if
+ * they are further apart than the tolerance (in meters of the target), the
+ * midpoint is inserted and both halves are checked the same way, down to
+ * MAX_DEPTH levels. A midpoint that cannot be converted stops the
+ * densification of its edge. The midpoint estimates the deviation of an
+ * edge, it does not bound it.
+ * <p>
+ * Every vertex, given or inserted, is converted at most once per instance:
+ * rings and lines that share vertices, like the borders of neighbouring
+ * polygons, reuse the converted vertex. The given vertices of a geometry are
+ * converted in one batch.
+ * <p>
+ * Only geodetic and map projection sources and targets (two coordinates) are
+ * supported. Geodetic sources are converted at height zero and geodetic
+ * target heights are dropped. An instance is not thread safe.
+ */
+public final class GeometryConversion {
+
+    private static final Logger log = LoggerFactory.getLogger(GeometryConversion.class.getName());
+
+    // An edge is split into at most 2^MAX_DEPTH segments.
+    static final int MAX_DEPTH = 12;
+
+    private static final double EARTH_RADIUS = 6378137.0;
+    private static final double TWO_PI = 2 * Math.PI;
+
+    private final ConversionSession session;
+    private final double tolerance;
+    private final int sourceType;
+    private final int targetType;
+    private final boolean geodeticSource;
+    private final boolean geodeticTarget;
+
+    // Converted vertices by source coordinates, null if they cannot be
+    // converted.
+    private final Map<PointKey, double[]> vertices = new HashMap<PointKey, double[]>();
+
+    private int convertedVertices;
+    private int reusedVertices;
+    private int insertedVertices;
+
+    /**
+     * @param session
+     *            The conversion of the vertices.
+     * @param tolerance
+     *            Maximum deviation of a converted edge, in meters.
+     * @throws Exception
+     *             If the conversion is not supported or the tolerance is not
+     *             positive.
+     */
+    public GeometryConversion(ConversionSession session, double tolerance) throws Exception {
+        this.session = session;
+        this.tolerance = tolerance;
+        this.sourceType = new CoordinateParser().parseInt(new InputVerifier().verifyInputStringIsValid(session.getUtility().getHeaderFields(),
+                GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.COORDINATE_TYPE));
+        this.targetType = session.getTargetCoordinateType();
+
+        CoordinateTypeRegistry.Family sourceFamily = CoordinateTypeRegistry.family(sourceType);
+        CoordinateTypeRegistry.Family targetFamily = CoordinateTypeRegistry.family(targetType);
+
+        this.geodeticSource = sourceFamily == CoordinateTypeRegistry.GEODETIC;
+        this.geodeticTarget = targetFamily == CoordinateTypeRegistry.GEODETIC;
+
+        if (!geodeticSource && sourceFamily != CoordinateTypeRegistry.MAP_PROJECTION) {
+            throw new CoordinateConversionException(sourceFamily.getName() + " source coordinates cannot be densified!");
+        }
+        if (!geodeticTarget && targetFamily != CoordinateTypeRegistry.MAP_PROJECTION) {
+            throw new CoordinateConversionException(targetFamily.getName() + " target coordinates cannot be densified!");
+        }
+        if (!(tolerance > 0)) {
+            throw new CoordinateConversionException("The " + GeoTransConstants.TOLERANCE + " must be positive!");
+        }
+    }
+
+    /**
+     * Converts the geometries of a request, handing each one to the handler
+     * as soon as it is converted.
+     *
+     * @param geometries
+     *            The geometries array of the request.
+     * @param handler
+     *            Receiver of the converted geometries.
+     * @throws Exception
+     *             If a geometry is invalid or one of its vertices cannot be
+     *             converted; the geometries before it have been handled.
+     */
+    public void convert(JSONArray geometries, GeometryResultHandler handler) throws Exception {
+        log.debug("Entering convert() with {} geometries", geometries.length());
+
+        for (int i = 0; i < geometries.length(); i++) {
+            JSONObject geometry = geometries.getJSONObject(i);
+            String type = geometry.optString(GeoTransConstants.GEOMETRY_TYPE).trim().toLowerCase();
+            double[][] parts;
+
+            try {
+                if (!GeoTransConstants.POLYGON.equals(type) && !GeoTransConstants.LINE_STRING.equals(type)) {
+                    throw new CoordinateConversionException("Invalid " + GeoTransConstants.GEOMETRY_TYPE + ": "
+                            + geometry.opt(GeoTransConstants.GEOMETRY_TYPE));
+                }
+                parts = convert(parseParts(geometry), GeoTransConstants.POLYGON.equals(type));
+            } catch (CoordinateConversionException e) {
+                throw new CoordinateConversionException("Geometry " + i + ": " + e.getMessage());
+            }
+
+            handler.geometry(i, type, parts);
+        }
+
+        log.debug("Leaving convert() with {} vertices converted, {} reused and {} inserted", convertedVertices, reusedVertices,
+                insertedVertices);
+    }
+
+    /**
+     * Converts the parts of one geometry.
+     *
+     * @param parts
+     *            Flat x, y arrays in source coordinates, longitude and
+     *            latitude in degrees for a geodetic source.
+     * @param rings
+     *            true if the parts are rings of a polygon: the edge from the
+     *            last vertex back to the first one is densified too, and a
+     *            ring that repeats its first vertex at the end still does so
+     *            after the conversion.
+     * @return The densified parts in target coordinates, longitude and
+     *         latitude in degrees for a geodetic target.
+     * @throws Exception
+     *             If a part is invalid or a given vertex cannot be converted.
+     */
+    public double[][] convert(double[][] parts, boolean rings) throws Exception {
+        double scale = geodeticSource ? Constants.PI_OVER_180 : 1;
+
+        for (int p = 0; p < parts.length; p++) {
+            if (parts[p].length % 2 != 0 || parts[p].length / 2 < (rings ? 3 : 2)) {
+                throw new CoordinateConversionException("Part " + p + " needs " + (rings ? 3 : 2) + " or more x, y pairs!");
+            }
+        }
+
+        convertVertices(parts, scale);
+
+        double[][] results = new double[parts.length][];
+
+        for (int p = 0; p < parts.length; p++) {
+            double[] part = parts[p];
+            int count = part.length / 2;
+            boolean closed = rings && part[0] == part[part.length - 2] && part[1] == part[part.length - 1];
+            int edges = rings && !closed ? count : count - 1;
+            Vertices densified = new Vertices(count * 2);
+
+            for (int v = 0; v < edges; v++) {
+                int w = (v + 1) % count;
+                double ax = part[2 * v] * scale;
+                double ay = part[2 * v + 1] * scale;
+                double bx = part[2 * w] * scale;
+                double by = part[2 * w + 1] * scale;
+                double[] a = vertex(ax, ay);
+
+                densified.add(a);
+                densify(ax, ay, a, bx, by, vertex(bx, by), 0, densified);
+            }
+            if (!rings || closed) {
+                densified.add(vertex(part[part.length - 2] * scale, part[part.length - 1] * scale));
+            }
+
+            results[p] = densified.toArray(geodeticTarget ? 180 / Math.PI : 1);
+        }
+        return results;
+    }
+
+    public int getConvertedVertexCount() {
+        return convertedVertices;
+    }
+
+    public int getReusedVertexCount() {
+        return reusedVertices;
+    }
+
+    public int getInsertedVertexCount() {
+        return insertedVertices;
+    }
+
+    /**
+     * Converts the given vertices of a geometry that are not converted yet in
+     * one batch.
+     */
+    private void convertVertices(double[][] parts, double scale) throws Exception {
+        Map<PointKey, CoordinateTuple> pending = new LinkedHashMap<PointKey, CoordinateTuple>();
+
+        for (double[] part : parts) {
+            for (int k = 0; k + 1 < part.length; k += 2) {
+                double x = part[k] * scale;
+                double y = part[k + 1] * scale;
+                PointKey point = new PointKey(x, y);
+
+                // A midpoint that failed is converted again, to report why.
+                if (vertices.get(point) != null) {
+                    reusedVertices++;
+                } else if (!pending.containsKey(point)) {
+                    pending.put(point, toTuple(x, y));
+                }
+            }
+        }
+
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PointKey> points = new ArrayList<PointKey>(pending.keySet());
+        ConvertResults[] results = session.convert(pending.values().toArray(new CoordinateTuple[pending.size()]));
+
+        for (int i = 0; i < results.length; i++) {
+            vertices.put(points.get(i), fromTuple(results[i].getCoordinateTuple()));
+        }
+        convertedVertices += results.length;
+    }
+
+    /**
+     * Inserts the vertices between a and b, excluding both, that keep the
+     * edge within the tolerance.
+     */
+    private void densify(double ax, double ay, double[] a, double bx, double by, double[] b, int depth, Vertices densified) throws Exception {
+        if (depth == MAX_DEPTH) {
+            return;
+        }
+
+        // The same edge in either direction has the same midpoint, so it is
+        // converted once for the neighbouring polygons that share the edge.
+        double ux = geodeticSource ? unwrap(bx, ax) : bx;
+        double mx = ux == bx ? (ax + bx) / 2 : normalize((ax + ux) / 2);
+        double my = (ay + by) / 2;
+        double[] m = sample(mx, my);
+
+        if (m == null || deviation(a, b, m) <= tolerance) {
+            return;
+        }
+
+        densify(ax, ay, a, mx, my, m, depth + 1, densified);
+        densified.add(m);
+        insertedVertices++;
+        densify(mx, my, m, bx, by, b, depth + 1, densified);
+    }
+
+    /**
+     * @return The converted vertex, which was converted with its geometry.
+     */
+    private double[] vertex(double x, double y) {
+        return vertices.get(new PointKey(x, y));
+    }
+
+    /**
+     * @return The converted midpoint, or null if it cannot be converted.
+     */
+    private double[] sample(double x, double y) throws Exception {
+        PointKey point = new PointKey(x, y);
+
+        if (vertices.containsKey(point)) {
+            reusedVertices++;
+            return vertices.get(point);
+        }
+
+        double[] target = null;
+
+        try {
+            target = fromTuple(session.convert(new CoordinateTuple[] { toTuple(x, y) })[0].getCoordinateTuple());
+            convertedVertices++;
+        } catch (CoordinateConversionException e) {
+            if (ConversionLog.TRACE_POINTS) {
+                log.debug("Midpoint at {}, {} failed: {}", x, y, e.getMessage());
+            }
+        }
+
+        vertices.put(point, target);
+        return target;
+    }
+
+    /**
+     * @return The distance in meters between the converted midpoint and the
+     *         midpoint of the converted edge.
+     */
+    private double deviation(double[] a, double[] b, double[] m) {
+        if (geodeticTarget) {
+            double longitude = a[0] + (unwrap(b[0], a[0]) - a[0]) / 2;
+            double latitude = (a[1] + b[1]) / 2;
+            double dx = (unwrap(m[0], longitude) - longitude) * EARTH_RADIUS * Math.cos(m[1]);
+            double dy = (m[1] - latitude) * EARTH_RADIUS;
+
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        double dx = m[0] - (a[0] + b[0]) / 2;
+        double dy = m[1] - (a[1] + b[1]) / 2;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private CoordinateTuple toTuple(double x, double y) {
+        return geodeticSource ? new GeodeticCoordinates(sourceType, x, y, 0) : new MapProjectionCoordinates(sourceType, x, y);
+    }
+
+    private double[] fromTuple(CoordinateTuple tuple) {
+        if (geodeticTarget) {
+            GeodeticCoordinates geodetic = (GeodeticCoordinates) tuple;
+            return new double[] { geodetic.getLongitude(), geodetic.getLatitude() };
+        }
+        MapProjectionCoordinates projected = (MapProjectionCoordinates) tuple;
+        return new double[] { projected.getEasting(), projected.getNorthing() };
+    }
+
+    private static double[][] parseParts(JSONObject geometry) throws CoordinateConversionException, JSONException {
+        JSONArray parts = geometry.optJSONArray(GeoTransConstants.PARTS);
+
+        if (parts == null || parts.length() == 0) {
+            throw new CoordinateConversionException(GeoTransConstants.PARTS + " is missing or empty!");
+        }
+
+        double[][] values = new double[parts.length()][];
+
+        for (int p = 0; p < values.length; p++) {
+            JSONArray part = parts.getJSONArray(p);
+
+            values[p] = new double[part.length()];
+            for (int k = 0; k < values[p].length; k++) {
+                values[p][k] = part.getDouble(k);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return The longitude, shifted by whole turns to within half a turn of
+     *         the reference.
+     */
+    private static double unwrap(double longitude, double reference) {
+        return longitude - TWO_PI * Math.rint((longitude - reference) / TWO_PI);
+    }
+
+    private static double normalize(double longitude) {
+        return unwrap(longitude, 0);
+    }
+
+    /**
+     * The converted vertices of a part, in order.
+     */
+    private static final class Vertices {
+
+        private double[] values;
+        private int size;
+
+        Vertices(int capacity) {
+            values = new double[Math.max(capacity, 4)];
+        }
+
+        void add(double[] vertex) {
+            if (size + 2 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = vertex[0];
+            values[size++] = vertex[1];
+        }
+
+        double[] toArray(double scale) {
+            double[] array = new double[size];
+
+            for (int i = 0; i < size; i++) {
+                array[i] = values[i] * scale;
+            }
+            return array;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package mil.nga.ods.geotrans.utils;
+
+/**
+ * Receives the results of a geometry conversion, one geometry at a time, in
+ * request order.
+ */
+public interface GeometryResultHandler {
+
+    /**
+     * Called per converted geometry.
+     *
+     * @param index
+     *            The index of the geometry in the request.
+     * @param type
+     *            The type of the geometry, GeoTransConstants.POLYGON or
+     *            GeoTransConstants.LINE_STRING.
+     * @param parts
+     *            The densified parts: flat x, y arrays in target coordinates,
+     *            longitude and latitude in degrees for a geodetic target.
+     */
+    void geometry(int index, String type, double[][] parts) throws Exception;
+}
@@ -0,0 +1,336 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.GeodeticCoordinates;
+import geotrans3.coordinates.MapProjectionCoordinates;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.utility.Constants;
+import mil.nga.ods.geotrans.coordinates.CoordinatesArray;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts every node of a regular lattice of source coordinates (a
+ * graticule, or an easting/northing grid) without a coordinate payload: the
+ * lattice is given by its first node, the spacing of its columns and rows and
+ * their number.
+ * <p>
+ * The results are written into a caller supplied buffer as the fixed width
+ * binary records of BinaryBulkConversion for the target coordinate type, in
+ * the byte order of the buffer, row by row from the first row, each from the
+ * first column. Rows are converted in parallel on the bulk fork-join pool,
+ * each worker with its own conversion session, and every worker writes its
+ * rows straight to their place in the buffer. The column coordinates are
+ * computed once for all rows and the row coordinate once per row.
+ * <p>
+ * A node that cannot be converted is written as a record of zero bytes and
+ * reported by getFailedNodes(). Only geodetic and map projection sources
+ * (two coordinates) are supported; geodetic sources are converted at height
+ * zero.
+ */
+public final class GridConversion {
+
+    private static final Logger log = LoggerFactory.getLogger(GridConversion.class.getName());
+
+    private final GeoTransUtility gtUtility;
+    private final int sourceType;
+    private final boolean geodeticSource;
+    private final double originY;
+    private final double stepY;
+    private final int columns;
+    private final int rows;
+
+    // Column coordinates of the source, shared by all rows.
+    private final double[] columnValues;
+
+    private final BitSet failedNodes = new BitSet();
+    private final Sessions sessionFactory;
+
+    // Set by the first worker that fails, so the others stop early.
+    private volatile boolean failed;
+
+    private int targetType;
+    private int recordBytes;
+
+    /**
+     * @param gtUtility
+     *            Utility holding the request header, already initialized via
+     *            initializeForConversion().
+     * @param lattice
+     *            Fields of the lattice object: originX, originY (the first
+     *            node), stepX, stepY (the spacing of the columns and rows,
+     *            negative to go west or south) in source coordinates, degrees
+     *            for geodetic, and the number of columns and rows.
+     * @throws Exception
+     *             If a field is missing or invalid, or the source is not
+     *             supported.
+     */
+    public GridConversion(final GeoTransUtility gtUtility, Map<String, Object> lattice) throws Exception {
+        this(gtUtility, lattice, new Sessions() {
+            @Override
+            public ConversionSession open() throws Exception {
+                return new ConversionSession(gtUtility);
+            }
+        });
+    }
+
+    GridConversion(GeoTransUtility gtUtility, Map<String, Object> lattice, Sessions sessionFactory) throws Exception {
+        InputVerifier iv = new InputVerifier();
+        CoordinateParser parser = new CoordinateParser();
+
+        this.gtUtility = gtUtility;
+        this.sessionFactory = sessionFactory;
+        this.sourceType = parser.parseInt(iv.verifyInputStringIsValid(gtUtility.getHeaderFields(),
+                GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.COORDINATE_TYPE));
+
+        CoordinateTypeRegistry.Family sourceFamily = CoordinateTypeRegistry.family(sourceType);
+        this.geodeticSource = sourceFamily == CoordinateTypeRegistry.GEODETIC;
+
+        if (!geodeticSource && sourceFamily != CoordinateTypeRegistry.MAP_PROJECTION) {
+            throw new CoordinateConversionException(sourceFamily.getName() + " source coordinates cannot be generated on a lattice!");
+        }
+
+        // Geodetic coordinates are given in degrees but converted in radians.
+        double scale = geodeticSource ? Constants.PI_OVER_180 : 1;
+
+        double originX = parser.parseDouble(iv.verifyInputStringIsValid(lattice, GeoTransConstants.ORIGIN_X)) * scale;
+        double stepX = parser.parseDouble(iv.verifyInputStringIsValid(lattice, GeoTransConstants.STEP_X)) * scale;
+        this.originY = parser.parseDouble(iv.verifyInputStringIsValid(lattice, GeoTransConstants.ORIGIN_Y)) * scale;
+        this.stepY = parser.parseDouble(iv.verifyInputStringIsValid(lattice, GeoTransConstants.STEP_Y)) * scale;
+        this.columns = parser.parseInt(iv.verifyInputStringIsValid(lattice, GeoTransConstants.COLUMNS));
+        this.rows = parser.parseInt(iv.verifyInputStringIsValid(lattice, GeoTransConstants.ROWS));
+
+        if (columns <= 0 || rows <= 0) {
+            throw new CoordinateConversionException("The lattice needs at least one column and one row!");
+        }
+        if ((long) columns * rows > Integer.MAX_VALUE) {
+            throw new CoordinateConversionException("The lattice has more than " + Integer.MAX_VALUE + " nodes!");
+        }
+
+        columnValues = new double[columns];
+        for (int c = 0; c < columns; c++) {
+            columnValues[c] = originX + c * stepX;
+        }
+    }
+
+    /**
+     * @param coordinateType
+     *            The target coordinate type.
+     * @param columns
+     *            Columns of the lattice.
+     * @param rows
+     *            Rows of the lattice.
+     * @return The size in bytes of a result buffer for the lattice.
+     * @throws CoordinateConversionException
+     *             If the coordinate type is unknown.
+     */
+    public static long resultBytes(int coordinateType, int columns, int rows) throws CoordinateConversionException {
+        return (long) BinaryBulkConversion.recordBytes(coordinateType) * columns * rows;
+    }
+
+    /**
+     * Converts all nodes of the lattice.
+     *
+     * @param resultBuffer
+     *            Buffer the result records are written to from index zero,
+     *            typically from OffHeapBulkConversion.allocateResultBuffer().
+     *            On return it is positioned at zero and limited to the last
+     *            record.
+     * @throws Exception
+     *             If the buffer is too small, or the sessions cannot be
+     *             created.
+     */
+    public void run(ByteBuffer resultBuffer) throws Exception {
+        log.debug("Entering run() with {} x {} node(s)", columns, rows);
+
+        ForkJoinPool pool = BulkWorkers.getPool();
+        List<ConversionSession> sessions = new ArrayList<ConversionSession>();
+
+        try {
+            sessions.add(sessionFactory.open());
+
+            targetType = sessions.get(0).getTargetCoordinateType();
+            recordBytes = BinaryBulkConversion.recordBytes(targetType);
+
+            long bytes = resultBytes(targetType, columns, rows);
+            if (bytes > resultBuffer.capacity()) {
+                throw new CoordinateConversionException("The result buffer cannot hold the " + bytes + " bytes of the lattice!");
+            }
+
+            // GeoTrans sessions are not thread safe; one per worker.
+            int workers = Math.min(pool.getParallelism(), rows);
+            while (sessions.size() < workers) {
+                sessions.add(sessionFactory.open());
+            }
+
+            RowsTask[] tasks = new RowsTask[workers];
+
+            for (int i = 0; i < workers; i++) {
+                tasks[i] = new RowsTask(sessions.get(i), resultBuffer.duplicate().order(resultBuffer.order()), i, workers);
+                pool.execute(tasks[i]);
+            }
+
+            // Every task has to finish before the sessions are closed, even
+            // after one has failed; the others stop at their next row.
+            for (RowsTask task : tasks) {
+                task.quietlyJoin();
+            }
+            for (RowsTask task : tasks) {
+                if (task.isCompletedAbnormally()) {
+                    Throwable failure = task.getException();
+
+                    if (failure instanceof RuntimeException) {
+                        throw BulkWorkers.unwrap((RuntimeException) failure);
+                    }
+                    throw (Error) failure;
+                }
+            }
+
+            resultBuffer.limit((int) bytes).position(0);
+        } finally {
+            for (ConversionSession session : sessions) {
+                session.close();
+            }
+        }
+
+        log.debug("Leaving run() with {} failed node(s)", failedNodes.cardinality());
+    }
+
+    public int getTargetCoordinateType() {
+        return targetType;
+    }
+
+    public int getRecordBytes() {
+        return recordBytes;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return The nodes, by index row * columns + column, that could not be
+     *         converted and were written as zero bytes.
+     */
+    public BitSet getFailedNodes() {
+        synchronized (failedNodes) {
+            return (BitSet) failedNodes.clone();
+        }
+    }
+
+    private void convertRow(ConversionSession session, ByteBuffer records, int row) throws Exception {
+        double y = originY + row * stepY;
+        CoordinateTuple[] tuples = new CoordinateTuple[columns];
+
+        for (int c = 0; c < columns; c++) {
+            tuples[c] = toTuple(columnValues[c], y);
+        }
+
+        records.position(row * columns * recordBytes);
+
+        ConvertResults[] results;
+        try {
+            results = session.convert(tuples);
+        } catch (CoordinateConversionException e) {
+            convertNodes(session, records, row, tuples);
+            return;
+        }
+
+        CoordinatesArray coords = gtUtility.buildResultsArray(results);
+        for (int c = 0; c < columns; c++) {
+            coords.writeRecord(records, c);
+        }
+    }
+
+    /**
+     * Converts the nodes of a row that failed as a whole one by one, so only
+     * the nodes that fail themselves are left out.
+     */
+    private void convertNodes(ConversionSession session, ByteBuffer records, int row, CoordinateTuple[] tuples) throws Exception {
+        for (int c = 0; c < columns; c++) {
+            try {
+                ConvertResults[] result = session.convert(new CoordinateTuple[] { tuples[c] });
+
+                gtUtility.buildResultsArray(result).writeRecord(records, 0);
+            } catch (CoordinateConversionException e) {
+                if (ConversionLog.TRACE_POINTS) {
+                    log.debug("Node {} of row {} failed: {}", c, row, e.getMessage());
+                }
+
+                for (int b = 0; b < recordBytes; b++) {
+                    records.put((byte) 0);
+                }
+                synchronized (failedNodes) {
+                    failedNodes.set(row * columns + c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Opens the conversion session of a worker.
+     */
+    interface Sessions {
+
+        ConversionSession open() throws Exception;
+    }
+
+    private CoordinateTuple toTuple(double x, double y) {
+        return geodeticSource ? new GeodeticCoordinates(sourceType, x, y, 0) : new MapProjectionCoordinates(sourceType, x, y);
+    }
+
+    /**
+     * Converts every workers-th row, starting at first, with one session.
+     */
+    private class RowsTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ConversionSession session;
+        private final ByteBuffer records;
+        private final int first;
+        private final int workers;
+
+        RowsTask(ConversionSession session, ByteBuffer records, int first, int workers) {
+            this.session = session;
+            this.records = records;
+            this.first = first;
+            this.workers = workers;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                for (int row = first; row < rows && !failed; row += workers) {
+                    convertRow(session, records, row);
+                }
+            } catch (CoordinateConversionException e) {
+                failed = true;
+                throw new BulkWorkers.TaskFailure(e);
+            } catch (RuntimeException e) {
+                failed = true;
+                throw e;
+            } catch (Exception e) {
+                failed = true;
+
+                CoordinateConversionException failure = new CoordinateConversionException(e.getMessage());
+                failure.initCause(e);
+                throw new BulkWorkers.TaskFailure(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package mil.nga.ods.geotrans.utils;
+
+/**
+ * The request field names of one prefix ("source", "target" or "input"),
+ * concatenated once. The instances of the standard prefixes are built when
+ * the class is loaded, so looking up a field no longer builds its name and
+ * the names' hash codes are computed only once.
+ */
+public final class HeaderKeys {
+
+    private static final HeaderKeys SOURCE = new HeaderKeys(GeoTransConstants.SOURCE_PREFIX);
+    private static final HeaderKeys TARGET = new HeaderKeys(GeoTransConstants.TARGET_PREFIX);
+    private static final HeaderKeys INPUT = new HeaderKeys(GeoTransConstants.INPUT_PREFIX);
+
+    public final String prefix;
+
+    // Request fields.
+    public final String coordinateType;
+    public final String coordinates;
+    public final String heightType;
+    public final String datum;
+
+    // Accuracy fields.
+    public final String accuracyCe;
+    public final String accuracyLe;
+    public final String accuracySe;
+
+    // Coordinate fields.
+    public final String coordinateString;
+    public final String easting;
+    public final String northing;
+    public final String hemisphere;
+    public final String latitude;
+    public final String longitude;
+    public final String height;
+    public final String xValue;
+    public final String yValue;
+    public final String zValue;
+    public final String zoneNumber;
+    public final String zoneOverride;
+
+    // Coordinate system parameter fields.
+    public final String centralMeridian;
+    public final String falseEasting;
+    public final String falseNorthing;
+    public final String latitudeOne;
+    public final String latitudeTwo;
+    public final String longitudeOne;
+    public final String longitudeTwo;
+    public final String neysStandardParallel1;
+    public final String orientation;
+    public final String originHeight;
+    public final String originLatitude;
+    public final String originLongitude;
+    public final String scaleFactor;
+    public final String standardParallel;
+    public final String standardParallelOne;
+    public final String standardParallelTwo;
+
+    private HeaderKeys(String prefix) {
+        this.prefix = prefix;
+
+        coordinateType = prefix + GeoTransConstants.COORDINATE_TYPE;
+        coordinates = prefix + GeoTransConstants.COORDINATES;
+        heightType = prefix + GeoTransConstants.HEIGHT_TYPE;
+        datum = prefix + GeoTransConstants.DATUM;
+        accuracyCe = prefix + GeoTransConstants.ACCURACY_CE;
+        accuracyLe = prefix + GeoTransConstants.ACCURACY_LE;
+        accuracySe = prefix + GeoTransConstants.ACCURACY_SE;
+        coordinateString = prefix + GeoTransConstants.COORDINATE_STRING;
+        easting = prefix + GeoTransConstants.EASTING;
+        northing = prefix + GeoTransConstants.NORTHING;
+        hemisphere = prefix + GeoTransConstants.HEMISPHERE;
+        latitude = prefix + GeoTransConstants.LATITUDE;
+        longitude = prefix + GeoTransConstants.LONGITUDE;
+        height = prefix + GeoTransConstants.HEIGHT;
+        xValue = prefix + GeoTransConstants.X_VALUE;
+        yValue = prefix + GeoTransConstants.Y_VALUE;
+        zValue = prefix + GeoTransConstants.Z_VALUE;
+        zoneNumber = prefix + GeoTransConstants.ZONE_NUMBER;
+        zoneOverride = prefix + GeoTransConstants.ZONE_OVERRIDE;
+        centralMeridian = prefix + GeoTransConstants.CENTRAL_MERIDIAN;
+        falseEasting = prefix + GeoTransConstants.FALSE_EASTING;
+        falseNorthing = prefix + GeoTransConstants.FALSE_NORTHING;
+        latitudeOne = prefix + GeoTransConstants.LATITUDE_ONE;
+        latitudeTwo = prefix + GeoTransConstants.LATITUDE_TWO;
+        longitudeOne = prefix + GeoTransConstants.LONGITUDE_ONE;
+        longitudeTwo = prefix + GeoTransConstants.LONGITUDE_TWO;
+        neysStandardParallel1 = prefix + GeoTransConstants.NEYS_STANDARD_PARALLEL1;
+        orientation = prefix + GeoTransConstants.ORIENTATION;
+        originHeight = prefix + GeoTransConstants.ORIGIN_HEIGHT;
+        originLatitude = prefix + GeoTransConstants.ORIGIN_LATITUDE;
+        originLongitude = prefix + GeoTransConstants.ORIGIN_LONGITUDE;
+        scaleFactor = prefix + GeoTransConstants.SCALE_FACTOR;
+        standardParallel = prefix + GeoTransConstants.STANDARD_PARALLEL;
+        standardParallelOne = prefix + GeoTransConstants.STANDARD_PARALLEL_ONE;
+        standardParallelTwo = prefix + GeoTransConstants.STANDARD_PARALLEL_TWO;
+    }
+
+    /**
+     * @return The field names of the prefix; shared for the standard
+     *         prefixes, built for any other.
+     */
+    public static HeaderKeys forPrefix(String prefix) {
+        if (GeoTransConstants.SOURCE_PREFIX.equals(prefix)) {
+            return SOURCE;
+        } else if (GeoTransConstants.TARGET_PREFIX.equals(prefix)) {
+            return TARGET;
+        } else if (GeoTransConstants.INPUT_PREFIX.equals(prefix)) {
+            return INPUT;
+        }
+        return new HeaderKeys(prefix);
+    }
+}
@@ -0,0 +1,318 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk conversion of recurring files that reuses the output of earlier runs.
+ * The store directory holds one file per conversion key, the digest of all
+ * header fields, mapping the digest of every row to its formatted output
+ * line. Rows found in the store are copied from it; only new or changed rows
+ * are parsed, converted and formatted. The output is the same, line for line,
+ * as doBulkConversion() would write.
+ * <p>
+ * After a run the store of its conversion key holds exactly the rows of that
+ * run, so rows dropped from the file do not pile up. The store is replaced
+ * atomically; a missing or damaged store only means rows are converted again.
+ * <p>
+ * The store is read into the heap for a run, and the rows of the run are kept
+ * there until it is written again: about 100 bytes plus the output line per
+ * row for each. At most geotrans.bulk.incremental.maxRows rows (one million
+ * by default) are stored; the rows of a larger file beyond that are converted
+ * on every run.
+ */
+public class IncrementalBulkConversion {
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalBulkConversion.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int STORE_VERSION = 2;
+    private static final String STORE_SUFFIX = ".rows";
+
+    static final int MAX_STORE_ROWS = Integer.getInteger("geotrans.bulk.incremental.maxRows", 1000000);
+    // Longest output line that is stored; a char takes at most three bytes
+    // in UTF-8, so a longer row read back means the store is damaged.
+    private static final int MAX_LINE_CHARS = 4 * 1024 * 1024;
+
+    // Size of the bulk file ranges converted one at a time.
+    private static final int RANGE_BYTES = 1024 * 1024;
+
+    private GeoTransUtility gtUtility;
+    private Path storeDirectory;
+
+    private MessageDigest digest;
+
+    private long reusedRows;
+    private long convertedRows;
+    private boolean storeFull;
+
+    /**
+     * @param gtUtility
+     *            Utility built by one of the bulk constructors, not yet
+     *            initialized.
+     * @param storeDirectory
+     *            Directory holding the stores; created if missing.
+     */
+    public IncrementalBulkConversion(GeoTransUtility gtUtility, Path storeDirectory) {
+        this.gtUtility = gtUtility;
+        this.storeDirectory = storeDirectory;
+    }
+
+    public long getReusedRows() {
+        return reusedRows;
+    }
+
+    public long getConvertedRows() {
+        return convertedRows;
+    }
+
+    /**
+     * Writes the output of all rows to the stream as UTF-8 and replaces the
+     * store of the conversion key. The stream is flushed after every range
+     * but not closed.
+     *
+     * @param out
+     *            Destination of the converted rows.
+     * @throws Exception
+     */
+    public void run(OutputStream out) throws Exception {
+        log.debug("Entering run()");
+
+        gtUtility.initializeForConversion();
+        digest = newDigest();
+
+        try (ConversionSession session = new ConversionSession(gtUtility)) {
+            Path store = storeDirectory.resolve(conversionKey() + STORE_SUFFIX);
+
+            Map<RowKey, String> previous = readStore(store);
+            Map<RowKey, String> current = new HashMap<RowKey, String>();
+
+            for (BulkRecordReader range : gtUtility.getBulkRecords().split(RANGE_BYTES)) {
+                out.write(convertRange(range, session, previous, current).getBytes(UTF_8));
+                out.flush();
+            }
+
+            writeStore(store, current);
+
+            log.debug("Leaving run() with {} reused and {} converted row(s)", reusedRows, convertedRows);
+        }
+    }
+
+    private String convertRange(BulkRecordReader range, ConversionSession session, Map<RowKey, String> previous,
+            Map<RowKey, String> current) throws Exception {
+        List<RowKey> rows = new ArrayList<RowKey>();
+        Map<RowKey, String> lines = new HashMap<RowKey, String>();
+        Map<RowKey, CoordinateTuple> misses = new HashMap<RowKey, CoordinateTuple>();
+        List<RowKey> missOrder = new ArrayList<RowKey>();
+        BulkRecordReader reader = range.duplicate();
+
+        while (reader.nextRecord()) {
+            reader.digestRecord(digest);
+            RowKey row = new RowKey(digest.digest());
+            rows.add(row);
+
+            if (lines.containsKey(row) || misses.containsKey(row)) {
+                continue;
+            }
+
+            String line = current.get(row);
+            if (line == null) {
+                line = previous.remove(row);
+            }
+
+            if (line != null) {
+                lines.put(row, line);
+                store(current, row, line);
+            } else {
+                misses.put(row, gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, reader.currentRecord())[0]);
+                missOrder.add(row);
+            }
+        }
+
+        if (!missOrder.isEmpty()) {
+            CoordinateTuple[] sources = new CoordinateTuple[missOrder.size()];
+            for (int i = 0; i < sources.length; i++) {
+                sources[i] = misses.get(missOrder.get(i));
+            }
+
+            ConvertResults[] results = session.convert(sources);
+            String[] converted = gtUtility.buildResultsArray(results).toLines(gtUtility.getFormat());
+
+            for (int i = 0; i < converted.length; i++) {
+                lines.put(missOrder.get(i), converted[i]);
+                store(current, missOrder.get(i), converted[i]);
+            }
+        }
+
+        StringBuilder output = new StringBuilder();
+        for (RowKey row : rows) {
+            output.append(lines.get(row));
+        }
+
+        convertedRows += missOrder.size();
+        reusedRows += rows.size() - missOrder.size();
+        return output.toString();
+    }
+
+    /**
+     * Keeps a row for the next store unless it already holds MAX_STORE_ROWS
+     * or the line is longer than MAX_LINE_CHARS.
+     */
+    private void store(Map<RowKey, String> current, RowKey row, String line) {
+        if (line.length() > MAX_LINE_CHARS) {
+            return;
+        }
+        if (current.size() < MAX_STORE_ROWS) {
+            current.put(row, line);
+        } else if (!storeFull) {
+            log.debug("Store is full at {} row(s); further rows are not stored", MAX_STORE_ROWS);
+            storeFull = true;
+        }
+    }
+
+    /**
+     * @return Hex digest of the sorted header fields, which together decide
+     *         the output of a row.
+     */
+    private String conversionKey() {
+        Map<String, Object> fields = new TreeMap<String, Object>(gtUtility.getHeaderFields());
+
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            digest.update((field.getKey() + '=' + field.getValue() + '\n').getBytes(UTF_8));
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    private static Map<RowKey, String> readStore(Path store) {
+        Map<RowKey, String> rows = new HashMap<RowKey, String>();
+
+        if (!Files.exists(store)) {
+            return rows;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(store)))) {
+            if (in.readInt() != STORE_VERSION) {
+                log.debug("Ignoring store {} of another version", store);
+                return rows;
+            }
+
+            int count = Math.min(in.readInt(), MAX_STORE_ROWS);
+            for (int i = 0; i < count; i++) {
+                long high = in.readLong();
+                long low = in.readLong();
+                int length = in.readInt();
+
+                if (length < 0 || length > 3 * MAX_LINE_CHARS) {
+                    throw new IOException("Row of " + length + " bytes");
+                }
+
+                byte[] line = new byte[length];
+                in.readFully(line);
+                rows.put(new RowKey(high, low), new String(line, UTF_8));
+            }
+        } catch (EOFException e) {
+            log.debug("Ignoring truncated store {}", store);
+            rows.clear();
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable store {}: {}", store, e.getMessage());
+            rows.clear();
+        }
+
+        log.debug("Read {} row(s) from store {}", rows.size(), store);
+        return rows;
+    }
+
+    private void writeStore(Path store, Map<RowKey, String> rows) throws IOException {
+        Files.createDirectories(storeDirectory);
+
+        Path temporary = store.resolveSibling(store.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(STORE_VERSION);
+            out.writeInt(rows.size());
+
+            for (Map.Entry<RowKey, String> row : rows.entrySet()) {
+                out.writeLong(row.getKey().high);
+                out.writeLong(row.getKey().low);
+
+                byte[] line = row.getValue().getBytes(UTF_8);
+                out.writeInt(line.length);
+                out.write(line);
+            }
+        }
+
+        Files.move(temporary, store, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static MessageDigest newDigest() throws CoordinateConversionException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new CoordinateConversionException("No MD5 digest available: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The 128 bit digest of a row.
+     */
+    private static class RowKey {
+
+        private long high;
+        private long low;
+
+        RowKey(byte[] digest) {
+            for (int i = 0; i < 8; i++) {
+                high = (high << 8) | (digest[i] & 0xFF);
+                low = (low << 8) | (digest[i + 8] & 0xFF);
+            }
+        }
+
+        RowKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof RowKey)) {
+                return false;
+            }
+            RowKey row = (RowKey) other;
+            return high == row.high && low == row.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (low ^ (low >>> 32));
+        }
+    }
+}
@@ -23,13 +23,19 @@ public class InputVerifier {
     }
 
     public String verifyInputStringIsValid(Map<String, Object> input, String element) throws CoordinateConversionException {
-        if (input.get(element) == null) {
+        Object value = input.get(element);
+
+        if (value == null) {
             throw new CoordinateConversionException(element + " is missing!");
         }
 
-        log.debug("Verified {} input exists with value {}", element, input.get(element).toString().trim());
+        String trimmed = value.toString().trim();
+
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Verified {} input exists with value {}", element, trimmed);
+        }
 
-        return input.get(element).toString().trim();
+        return trimmed;
     }
 
     public Map<String,Object> convertJSONToMap(JSONObject jObj) throws JSONException {
@@ -0,0 +1,213 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.Accuracy;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.jni.JNICoordinateConversionService;
+import geotrans3.parameters.CoordinateSystemParameters;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A GeoTrans JNI conversion service whose native memory is released by
+ * close() instead of whenever the garbage collector gets to the Java object.
+ * Use it in a try-with-resources block.
+ * <p>
+ * A service that is never closed is detected once it becomes unreachable: its
+ * native memory is released by a daemon thread and a warning is logged with
+ * the stack trace of the code that created it (unless the JVM is started with
+ * -Dgeotrans.native.allocationSites=false). getLiveServices() is the number of
+ * services currently holding native memory.
+ */
+public final class NativeConversionService implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(NativeConversionService.class.getName());
+
+    private static final boolean ALLOCATION_SITES = Boolean.parseBoolean(System.getProperty("geotrans.native.allocationSites", "true"));
+
+    private static final AtomicInteger liveServices = new AtomicInteger();
+    private static final AtomicLong leakedServices = new AtomicLong();
+
+    private static final ReferenceQueue<NativeConversionService> unreachable = new ReferenceQueue<NativeConversionService>();
+    // Keeps the trackers themselves reachable until their service is released.
+    private static final Set<Tracker> trackers = Collections.newSetFromMap(new ConcurrentHashMap<Tracker, Boolean>());
+
+    static {
+        Thread reaper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                reapLeakedServices();
+            }
+        }, "geotrans-native-reaper");
+        reaper.setDaemon(true);
+        reaper.start();
+    }
+
+    private final JNICoordinateConversionService service;
+    private final Tracker tracker;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates the native conversion service.
+     *
+     * @param sourceDatum
+     *            Code of the source datum.
+     * @param sourceParameters
+     *            Parameters of the source coordinate system.
+     * @param targetDatum
+     *            Code of the target datum.
+     * @param targetParameters
+     *            Parameters of the target coordinate system.
+     * @throws CoordinateConversionException
+     *             If GeoTrans rejects the datums or parameters.
+     */
+    public NativeConversionService(String sourceDatum, CoordinateSystemParameters sourceParameters, String targetDatum,
+            CoordinateSystemParameters targetParameters) throws CoordinateConversionException {
+        service = new JNICoordinateConversionService(sourceDatum, sourceParameters, targetDatum, targetParameters);
+        tracker = new Tracker(this, service, ALLOCATION_SITES ? new Throwable("Allocation site") : null);
+
+        trackers.add(tracker);
+        liveServices.incrementAndGet();
+    }
+
+    public ConvertResults convertSourceToTarget(CoordinateTuple sourceCoordinates, Accuracy sourceAccuracy, CoordinateTuple targetCoordinates,
+            Accuracy targetAccuracy) throws CoordinateConversionException {
+        checkOpen();
+        try {
+            return service.convertSourceToTarget(sourceCoordinates, sourceAccuracy, targetCoordinates, targetAccuracy);
+        } finally {
+            keepReachable();
+        }
+    }
+
+    public long getDatumLibrary() throws CoordinateConversionException {
+        checkOpen();
+        try {
+            return service.getDatumLibrary();
+        } finally {
+            keepReachable();
+        }
+    }
+
+    public long getEllipsoidLibrary() throws CoordinateConversionException {
+        checkOpen();
+        try {
+            return service.getEllipsoidLibrary();
+        } finally {
+            keepReachable();
+        }
+    }
+
+    /**
+     * Releases the native memory of the service. Calling it again does
+     * nothing.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        tracker.clear();
+        tracker.release();
+    }
+
+    /**
+     * @return The number of services created and not yet released.
+     */
+    public static int getLiveServices() {
+        return liveServices.get();
+    }
+
+    /**
+     * @return The number of services that were released because they became
+     *         unreachable without being closed.
+     */
+    public static long getLeakedServices() {
+        return leakedServices.get();
+    }
+
+    private void checkOpen() throws CoordinateConversionException {
+        if (closed) {
+            throw new CoordinateConversionException("The native conversion service is closed!");
+        }
+    }
+
+    /**
+     * Reads a volatile field after a native call, so the service cannot
+     * become unreachable, and be released by the reaper, while the call is
+     * still running.
+     */
+    private boolean keepReachable() {
+        return closed;
+    }
+
+    private static void reapLeakedServices() {
+        while (true) {
+            Tracker leaked;
+
+            try {
+                leaked = (Tracker) unreachable.remove();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (leaked.release()) {
+                leakedServices.incrementAndGet();
+
+                if (leaked.allocationSite != null) {
+                    log.warn("A native conversion service was not closed, releasing it now. It was created at:", leaked.allocationSite);
+                } else {
+                    log.warn("A native conversion service was not closed, releasing it now. "
+                            + "Leave -Dgeotrans.native.allocationSites on to see where it was created.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Holds what is needed to release the native memory once the service is
+     * closed or unreachable, but not the NativeConversionService itself.
+     */
+    private static final class Tracker extends PhantomReference<NativeConversionService> {
+
+        private final JNICoordinateConversionService service;
+        private final Throwable allocationSite;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Tracker(NativeConversionService referent, JNICoordinateConversionService service, Throwable allocationSite) {
+            super(referent, unreachable);
+            this.service = service;
+            this.allocationSite = allocationSite;
+        }
+
+        /**
+         * @return true if this call released the service, false if it had
+         *         already been released.
+         */
+        boolean release() {
+            if (!released.compareAndSet(false, true)) {
+                return false;
+            }
+
+            trackers.remove(this);
+            liveServices.decrementAndGet();
+
+            try {
+                service.destroy();
+            } catch (Exception e) {
+                log.warn("Failed to release a native conversion service", e);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.Accuracy;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.exception.CoordinateConversionException;
+import mil.nga.ods.geotrans.coordinates.CoordinatesArray;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk conversion that hands its results to the caller as binary records in
+ * a caller supplied buffer, typically a direct ByteBuffer allocated once and
+ * reused for every conversion. The input is converted range by range, so
+ * only the coordinates of one range are ever held as Java objects.
+ * <p>
+ * Each result record is the record of the target coordinate family described
+ * in BinaryBulkConversion, optionally followed by three float64 values: the
+ * CE90, LE90 and SE90 accuracy of the result. Values are written in the byte
+ * order of the result buffer.
+ */
+public class OffHeapBulkConversion {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapBulkConversion.class.getName());
+
+    public static final int ACCURACY_BYTES = 24;
+
+    // Size of the bulk file ranges converted one at a time.
+    private static final int RANGE_BYTES = 1024 * 1024;
+
+    private GeoTransUtility gtUtility;
+    private ByteBuffer resultBuffer;
+    private boolean includeAccuracy;
+
+    /**
+     * @param gtUtility
+     *            Utility built by one of the bulk constructors, not yet
+     *            initialized.
+     * @param resultBuffer
+     *            Buffer the result records are written to; it must hold at
+     *            least one record.
+     * @param includeAccuracy
+     *            true to append the CE90, LE90 and SE90 accuracy to every
+     *            record.
+     */
+    public OffHeapBulkConversion(GeoTransUtility gtUtility, ByteBuffer resultBuffer, boolean includeAccuracy) {
+        this.gtUtility = gtUtility;
+        this.resultBuffer = resultBuffer;
+        this.includeAccuracy = includeAccuracy;
+    }
+
+    /**
+     * @param capacity
+     *            Size of the buffer in bytes.
+     * @return A direct, little-endian buffer for use as a reusable result
+     *         buffer.
+     */
+    public static ByteBuffer allocateResultBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Converts all bulk records, passing the results to the handler one
+     * buffer full at a time.
+     *
+     * @param handler
+     *            Receiver of the result records.
+     * @throws Exception
+     */
+    public void run(BulkResultHandler handler) throws Exception {
+        log.debug("Entering run()");
+
+        gtUtility.initializeForConversion();
+
+        try (ConversionSession session = new ConversionSession(gtUtility)) {
+            int targetType = session.getTargetCoordinateType();
+            int recordBytes = BinaryBulkConversion.recordBytes(targetType) + (includeAccuracy ? ACCURACY_BYTES : 0);
+            int bufferRecords = resultBuffer.capacity() / recordBytes;
+
+            if (bufferRecords == 0) {
+                throw new CoordinateConversionException("The result buffer cannot hold a record of " + recordBytes + " bytes!");
+            }
+
+            handler.begin(targetType, recordBytes);
+
+            long converted = 0;
+
+            for (BulkRecordReader range : gtUtility.getBulkRecords().split(RANGE_BYTES)) {
+                ConvertResults[] results = session.convert(gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, range));
+
+                if (results.length > 0) {
+                    writeResults(gtUtility.buildResultsArray(results), results, bufferRecords, handler);
+                    converted += results.length;
+                }
+            }
+
+            log.debug("Leaving run() with {} record(s)", converted);
+        }
+    }
+
+    private void writeResults(CoordinatesArray coords, ConvertResults[] results, int bufferRecords, BulkResultHandler handler)
+            throws Exception {
+        for (int from = 0; from < results.length; from += bufferRecords) {
+            int to = Math.min(results.length, from + bufferRecords);
+
+            resultBuffer.clear();
+
+            for (int i = from; i < to; i++) {
+                coords.writeRecord(resultBuffer, i);
+
+                if (includeAccuracy) {
+                    Accuracy accuracy = results[i].getAccuracy();
+
+                    resultBuffer.putDouble(accuracy.getCE90());
+                    resultBuffer.putDouble(accuracy.getLE90());
+                    resultBuffer.putDouble(accuracy.getSE90());
+                }
+            }
+
+            resultBuffer.flip();
+            handler.results(resultBuffer, to - from);
+        }
+    }
+}
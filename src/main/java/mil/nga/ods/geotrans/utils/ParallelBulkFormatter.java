@@ -0,0 +1,186 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Formats the results of a bulk conversion in parallel. The results are cut
+ * into chunks of consecutive coordinates, each chunk is formatted into its own
+ * buffer on the shared bulk fork-join pool, and the buffers are appended to
+ * the output in the original order.
+ */
+public class ParallelBulkFormatter {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelBulkFormatter.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Coordinates formatted by one task.
+    private static final int CHUNK_RECORDS = 4096;
+
+    private ParallelBulkFormatter() {
+    }
+
+    /**
+     * @param count
+     *            Number of coordinates to format.
+     * @param formatter
+     *            Formatter for the coordinate type of the results.
+     * @return All lines, in the order of the coordinates.
+     * @throws CoordinateConversionException
+     *             The first failure of any chunk, in coordinate order.
+     */
+    public static String format(int count, BulkRecordFormatter formatter) throws CoordinateConversionException {
+        log.debug("Entering format() with {} coordinate(s)", count);
+
+        if (count <= CHUNK_RECORDS) {
+            StringBuilder out = new StringBuilder();
+            formatter.format(out, 0, count);
+            return out.toString();
+        }
+
+        ForkJoinPool pool = BulkWorkers.getPool();
+        FormatTask[] tasks = new FormatTask[(count + CHUNK_RECORDS - 1) / CHUNK_RECORDS];
+
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new FormatTask(formatter, i * CHUNK_RECORDS, Math.min(count, (i + 1) * CHUNK_RECORDS));
+            pool.execute(tasks[i]);
+        }
+
+        StringBuilder[] chunks = new StringBuilder[tasks.length];
+        int length = 0;
+
+        try {
+            for (int i = 0; i < tasks.length; i++) {
+                chunks[i] = tasks[i].join();
+                length += chunks[i].length();
+            }
+        } catch (RuntimeException e) {
+            cancel(tasks);
+            throw BulkWorkers.unwrap(e);
+        }
+
+        StringBuilder out = new StringBuilder(length);
+        for (StringBuilder chunk : chunks) {
+            out.append(chunk);
+        }
+
+        log.debug("Leaving format() with {} chunk(s)", chunks.length);
+        return out.toString();
+    }
+
+    /**
+     * Writes all lines to the stream as UTF-8. Chunks are encoded in parallel
+     * and written as soon as all chunks before them are written; only a few
+     * chunks per worker are formatted ahead of the stream. The stream is
+     * flushed but not closed.
+     *
+     * @param out
+     *            Destination of the lines.
+     * @param count
+     *            Number of coordinates to format.
+     * @param formatter
+     *            Formatter for the coordinate type of the results.
+     * @throws IOException
+     * @throws CoordinateConversionException
+     *             The first failure of any chunk, in coordinate order.
+     */
+    public static void write(OutputStream out, int count, BulkRecordFormatter formatter) throws IOException,
+            CoordinateConversionException {
+        log.debug("Entering write() with {} coordinate(s)", count);
+
+        ForkJoinPool pool = BulkWorkers.getPool();
+        int window = pool.getParallelism() * 2;
+        Deque<EncodeTask> pending = new ArrayDeque<EncodeTask>(window);
+        int next = 0;
+
+        try {
+            while (next < count || !pending.isEmpty()) {
+                while (next < count && pending.size() < window) {
+                    EncodeTask task = new EncodeTask(formatter, next, Math.min(count, next + CHUNK_RECORDS));
+                    pool.execute(task);
+                    pending.addLast(task);
+                    next += CHUNK_RECORDS;
+                }
+
+                out.write(pending.removeFirst().join());
+            }
+        } catch (RuntimeException e) {
+            throw BulkWorkers.unwrap(e);
+        } finally {
+            // Only left after a failure, of a chunk or of the output stream.
+            cancel(pending.toArray(new EncodeTask[pending.size()]));
+        }
+
+        out.flush();
+
+        log.debug("Leaving write()");
+    }
+
+    private static void cancel(RecursiveTask<?>[] tasks) {
+        for (RecursiveTask<?> task : tasks) {
+            task.cancel(false);
+        }
+    }
+
+    private static StringBuilder formatChunk(BulkRecordFormatter formatter, int from, int to) {
+        StringBuilder out = new StringBuilder((to - from) * 48);
+
+        try {
+            formatter.format(out, from, to);
+        } catch (CoordinateConversionException e) {
+            throw new BulkWorkers.TaskFailure(e);
+        }
+        return out;
+    }
+
+    private static class FormatTask extends RecursiveTask<StringBuilder> {
+
+        private static final long serialVersionUID = 1L;
+
+        private BulkRecordFormatter formatter;
+        private int from;
+        private int to;
+
+        FormatTask(BulkRecordFormatter formatter, int from, int to) {
+            this.formatter = formatter;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected StringBuilder compute() {
+            return formatChunk(formatter, from, to);
+        }
+    }
+
+    private static class EncodeTask extends RecursiveTask<byte[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private BulkRecordFormatter formatter;
+        private int from;
+        private int to;
+
+        EncodeTask(BulkRecordFormatter formatter, int from, int to) {
+            this.formatter = formatter;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected byte[] compute() {
+            return formatChunk(formatter, from, to).toString().getBytes(UTF_8);
+        }
+    }
+}
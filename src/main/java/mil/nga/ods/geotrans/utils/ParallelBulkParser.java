@@ -0,0 +1,129 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.exception.CoordinateConversionException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses the data section of a bulk file in parallel. The section is cut into
+ * line aligned byte ranges, each range is parsed into coordinates on the
+ * shared bulk fork-join pool, and the parsed chunks are joined back together
+ * in file order.
+ */
+public class ParallelBulkParser {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelBulkParser.class.getName());
+
+    // Ranges smaller than this are not worth a separate task.
+    private static final int CHUNK_BYTES = 256 * 1024;
+
+    private ParallelBulkParser() {
+    }
+
+    /**
+     * @param records
+     *            Reader over the whole data section.
+     * @param parser
+     *            Parser for the coordinate type of the records.
+     * @return The coordinates of all records, in file order.
+     * @throws CoordinateConversionException
+     *             The first failure of any range, in file order.
+     */
+    public static CoordinateTuple[] parse(BulkRecordReader records, BulkRecordParser parser) throws CoordinateConversionException {
+        log.debug("Entering parse() with {} bytes", records.getEnd() - records.getStart());
+
+        BulkRecordReader[] ranges = records.split(CHUNK_BYTES);
+
+        if (ranges.length == 1) {
+            return parser.parse(ranges[0]);
+        }
+
+        List<ParseTask> tasks = new ArrayList<ParseTask>(ranges.length);
+        for (BulkRecordReader range : ranges) {
+            tasks.add(new ParseTask(range, parser));
+        }
+
+        CoordinateTuple[][] chunks;
+
+        try {
+            chunks = BulkWorkers.getPool().invoke(new ParseAllTask(tasks));
+        } catch (RuntimeException e) {
+            throw BulkWorkers.unwrap(e);
+        }
+
+        log.debug("Leaving parse() with {} range(s)", ranges.length);
+        return concatenate(chunks);
+    }
+
+    private static CoordinateTuple[] concatenate(CoordinateTuple[][] chunks) {
+        int total = 0;
+        for (CoordinateTuple[] chunk : chunks) {
+            total += chunk.length;
+        }
+
+        // Copying the first chunk keeps the array type of the coordinate family.
+        CoordinateTuple[] coordinates = Arrays.copyOf(chunks[0], total);
+        int offset = chunks[0].length;
+
+        for (int i = 1; i < chunks.length; i++) {
+            System.arraycopy(chunks[i], 0, coordinates, offset, chunks[i].length);
+            offset += chunks[i].length;
+        }
+
+        return coordinates;
+    }
+
+    private static class ParseAllTask extends RecursiveTask<CoordinateTuple[][]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<ParseTask> tasks;
+
+        ParseAllTask(List<ParseTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected CoordinateTuple[][] compute() {
+            for (ParseTask task : tasks) {
+                task.fork();
+            }
+
+            // Joining in file order reports the first failing range.
+            CoordinateTuple[][] chunks = new CoordinateTuple[tasks.size()][];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = tasks.get(i).join();
+            }
+            return chunks;
+        }
+    }
+
+    private static class ParseTask extends RecursiveTask<CoordinateTuple[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private BulkRecordReader range;
+        private BulkRecordParser parser;
+
+        ParseTask(BulkRecordReader range, BulkRecordParser parser) {
+            this.range = range;
+            this.parser = parser;
+        }
+
+        @Override
+        protected CoordinateTuple[] compute() {
+            try {
+                return parser.parse(range);
+            } catch (CoordinateConversionException e) {
+                throw new BulkWorkers.TaskFailure(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package mil.nga.ods.geotrans.utils;
+
+/**
+ * Key of a point in a map of points already converted, equal only for
+ * exactly the same coordinates.
+ */
+final class PointKey {
+
+    private final double x;
+    private final double y;
+
+    PointKey(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof PointKey)) {
+            return false;
+        }
+
+        // Bits, like hashCode(), so 0.0 and -0.0 differ and NaN matches.
+        PointKey point = (PointKey) other;
+        return Double.doubleToLongBits(point.x) == Double.doubleToLongBits(x) && Double.doubleToLongBits(point.y) == Double.doubleToLongBits(y);
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(x) * 31 + Double.doubleToLongBits(y);
+        return (int) (bits ^ (bits >>> 32));
+    }
+}
@@ -0,0 +1,194 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk conversion of a file into a file that survives process restarts. The
+ * input is converted in numbered chunks of whole lines. After each chunk the
+ * output is forced to disk and a small checkpoint file records the number of
+ * completed chunks, the input and output offsets after the last chunk and a
+ * CRC32 of that chunk's input.
+ * <p>
+ * Running a job whose checkpoint file exists resumes after the last completed
+ * chunk: the checkpoint is checked against the input, the output is truncated
+ * to the recorded offset, dropping any partly written chunk, and conversion
+ * continues. The checkpoint is replaced atomically and only after the chunk's
+ * output is on disk, so no chunk is lost or written twice. The checkpoint file
+ * is deleted once the job completes.
+ */
+public class ResumableBulkJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ResumableBulkJob.class.getName());
+
+    public static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String CHECKPOINT_VERSION = "1";
+
+    // Checkpoint file keys.
+    private static final String VERSION = "version";
+    private static final String CHUNK_BYTES = "chunkBytes";
+    private static final String CHUNK = "chunk";
+    private static final String CHUNK_START = "chunkStart";
+    private static final String INPUT_OFFSET = "inputOffset";
+    private static final String OUTPUT_OFFSET = "outputOffset";
+    private static final String CHUNK_HASH = "chunkHash";
+
+    private Path input;
+    private Path output;
+    private Path checkpoint;
+    private int chunkBytes;
+
+    /**
+     * @param input
+     *            Bulk conversion file, plain or gzip compressed.
+     * @param output
+     *            File the converted coordinates are written to.
+     * @param checkpoint
+     *            File holding the progress of the job.
+     */
+    public ResumableBulkJob(Path input, Path output, Path checkpoint) {
+        this(input, output, checkpoint, DEFAULT_CHUNK_BYTES);
+    }
+
+    /**
+     * @param chunkBytes
+     *            Approximate input size of a chunk; must be the same when a
+     *            job is resumed.
+     */
+    public ResumableBulkJob(Path input, Path output, Path checkpoint, int chunkBytes) {
+        this.input = input;
+        this.output = output;
+        this.checkpoint = checkpoint;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Runs the job from its last checkpoint, or from the start if there is
+     * none, until all chunks are converted.
+     *
+     * @return The number of chunks converted by this run.
+     * @throws Exception
+     */
+    public int run() throws Exception {
+        log.debug("Entering run() for {}", input);
+
+        GeoTransUtility gtUtility = new GeoTransUtility(input);
+        gtUtility.initializeForConversion();
+
+        try (ConversionSession session = new ConversionSession(gtUtility)) {
+            BulkRecordReader[] chunks = gtUtility.getBulkRecords().split(chunkBytes);
+
+            int completed = 0;
+            long outputOffset = 0;
+
+            if (Files.exists(checkpoint)) {
+                Properties state = readCheckpoint();
+
+                completed = Integer.parseInt(state.getProperty(CHUNK));
+                outputOffset = Long.parseLong(state.getProperty(OUTPUT_OFFSET));
+                verifyCheckpoint(state, chunks, completed);
+
+                log.debug("Resuming after chunk {} of {}", completed, chunks.length);
+            }
+
+            try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (out.size() < outputOffset) {
+                    throw new CoordinateConversionException(output + " is shorter than its checkpoint!");
+                }
+                out.truncate(outputOffset);
+                out.position(outputOffset);
+
+                for (int chunk = completed; chunk < chunks.length; chunk++) {
+                    ConvertResults[] results = session.convert(gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, chunks[chunk]));
+
+                    if (results.length > 0) {
+                        ByteBuffer lines = ByteBuffer.wrap(gtUtility.buildResultsArray(results).toString(gtUtility.getFormat()).getBytes(UTF_8));
+                        while (lines.hasRemaining()) {
+                            out.write(lines);
+                        }
+                    }
+
+                    out.force(false);
+                    writeCheckpoint(chunk + 1, chunks[chunk], out.position());
+                }
+            }
+
+            Files.deleteIfExists(checkpoint);
+
+            log.debug("Leaving run() with {} chunk(s) converted", chunks.length - completed);
+            return chunks.length - completed;
+        }
+    }
+
+    private void verifyCheckpoint(Properties state, BulkRecordReader[] chunks, int completed) throws CoordinateConversionException {
+        if (!CHECKPOINT_VERSION.equals(state.getProperty(VERSION)) || Integer.parseInt(state.getProperty(CHUNK_BYTES)) != chunkBytes) {
+            throw new CoordinateConversionException(checkpoint + " was written with different job settings!");
+        }
+        if (completed == 0) {
+            return;
+        }
+
+        BulkRecordReader last = completed <= chunks.length ? chunks[completed - 1] : null;
+
+        if (last == null || last.getStart() != Integer.parseInt(state.getProperty(CHUNK_START))
+                || last.getEnd() != Integer.parseInt(state.getProperty(INPUT_OFFSET))
+                || last.checksum() != Long.parseLong(state.getProperty(CHUNK_HASH))) {
+            throw new CoordinateConversionException(checkpoint + " does not match " + input + "!");
+        }
+    }
+
+    private Properties readCheckpoint() throws IOException {
+        Properties state = new Properties();
+
+        try (InputStream in = Files.newInputStream(checkpoint)) {
+            state.load(in);
+        }
+        return state;
+    }
+
+    /**
+     * Writes the checkpoint next to its final name and renames it, so a crash
+     * leaves either the old or the new checkpoint.
+     */
+    private void writeCheckpoint(int completed, BulkRecordReader chunk, long outputOffset) throws IOException {
+        Properties state = new Properties();
+
+        state.setProperty(VERSION, CHECKPOINT_VERSION);
+        state.setProperty(CHUNK_BYTES, String.valueOf(chunkBytes));
+        state.setProperty(CHUNK, String.valueOf(completed));
+        state.setProperty(CHUNK_START, String.valueOf(chunk.getStart()));
+        state.setProperty(INPUT_OFFSET, String.valueOf(chunk.getEnd()));
+        state.setProperty(OUTPUT_OFFSET, String.valueOf(outputOffset));
+        state.setProperty(CHUNK_HASH, String.valueOf(chunk.checksum()));
+
+        Path temporary = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING); OutputStream out = Channels.newOutputStream(channel)) {
+            state.store(out, "Bulk conversion checkpoint of " + input);
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(temporary, checkpoint, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -0,0 +1,387 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts bulk files dropped into a spool directory shared by any number of
+ * workers, in any number of processes or hosts. There is no coordinator:
+ * workers only cooperate through atomic renames and exclusive file creation
+ * in these subdirectories of the spool directory:
+ *
+ * <pre>
+ * incoming/   bulk files waiting for a worker; callers must create them
+ *             elsewhere on the same filesystem and rename them in
+ * work/       files claimed by a worker, named &lt;file&gt;@&lt;worker id&gt;
+ * shards/     converted shards of large jobs waiting to be joined
+ * done/       &lt;job&gt;.out with the converted rows and the &lt;job&gt;.done marker
+ * failed/     &lt;job&gt;.failed marker holding the reason
+ * tmp/        files being written, renamed into place when complete
+ * </pre>
+ *
+ * A worker claims a file by renaming it from incoming/ into work/; only one
+ * rename of a file can succeed. A job larger than the shard size is not
+ * converted by the worker that claims it but split into shards named
+ * &lt;job&gt;.part-NNNNN-of-MMMMM, each a complete bulk file with the job's
+ * header, which go back into incoming/ for any worker to claim. The worker
+ * that converts the last shard of a job joins the shard outputs into
+ * done/&lt;job&gt;.out; an exclusively created join marker ensures only one
+ * worker does, and a worker that finds the job already done does not join it
+ * again. Output and markers are only renamed into done/ once complete. When
+ * a shard fails, the outputs of the other shards of the job are discarded.
+ * <p>
+ * A job may be submitted again under the same name once its earlier run has
+ * finished: the worker that claims it first deletes the output and markers
+ * the earlier run left in done/, failed/ and shards/.
+ * <p>
+ * Files left in work/ by a worker that died are not reclaimed automatically;
+ * moving them back into incoming/ without the @ suffix retries them.
+ */
+public class SpoolWorker implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(SpoolWorker.class.getName());
+
+    public static final int DEFAULT_SHARD_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_POLL_MILLIS = 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String INCOMING = "incoming";
+    private static final String WORK = "work";
+    private static final String SHARDS = "shards";
+    private static final String DONE = "done";
+    private static final String FAILED = "failed";
+    private static final String TMP = "tmp";
+
+    private static final String OUTPUT_SUFFIX = ".out";
+    private static final String DONE_SUFFIX = ".done";
+    private static final String FAILED_SUFFIX = ".failed";
+    private static final String JOIN_SUFFIX = ".join";
+
+    private static final Pattern SHARD_NAME = Pattern.compile("(.+)\\.part-(\\d{5})-of-(\\d{5})");
+
+    // Distinguishes the workers of one process.
+    private static final AtomicInteger WORKER_COUNT = new AtomicInteger();
+
+    private Path spoolDirectory;
+    private int shardBytes;
+    private long pollMillis;
+    private String workerId;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param spoolDirectory
+     *            The shared spool directory; its subdirectories are created
+     *            if missing.
+     */
+    public SpoolWorker(Path spoolDirectory) {
+        this(spoolDirectory, DEFAULT_SHARD_BYTES, DEFAULT_POLL_MILLIS);
+    }
+
+    /**
+     * @param shardBytes
+     *            Jobs larger than this are split into shards of about this
+     *            size.
+     * @param pollMillis
+     *            Time to wait before looking again when incoming/ is empty.
+     */
+    public SpoolWorker(Path spoolDirectory, int shardBytes, long pollMillis) {
+        this.spoolDirectory = spoolDirectory;
+        this.shardBytes = shardBytes;
+        this.pollMillis = pollMillis;
+
+        workerId = ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9.-]", "_") + "-"
+                + WORKER_COUNT.incrementAndGet();
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * Makes run() return after the file it is working on.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Processes files until stop() is called or the thread is interrupted,
+     * polling incoming/ when it is empty.
+     */
+    @Override
+    public void run() {
+        log.debug("Entering run() of worker {}", workerId);
+
+        try {
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+                if (processAvailable() == 0) {
+                    Thread.sleep(pollMillis);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Spool worker {} stopped: {}", workerId, e.getMessage());
+        }
+
+        log.debug("Leaving run() of worker {}", workerId);
+    }
+
+    /**
+     * Claims and processes files from incoming/ until none are left.
+     *
+     * @return The number of files this worker processed.
+     * @throws IOException
+     *             If the spool directory cannot be used. Failures of single
+     *             jobs are recorded in failed/ instead.
+     */
+    public int processAvailable() throws IOException {
+        createDirectories();
+
+        int processed = 0;
+        Path claimed;
+
+        while (!stopped && (claimed = claimNext()) != null) {
+            process(claimed);
+            processed++;
+        }
+        return processed;
+    }
+
+    private void createDirectories() throws IOException {
+        for (String directory : new String[] { INCOMING, WORK, SHARDS, DONE, FAILED, TMP }) {
+            Files.createDirectories(spoolDirectory.resolve(directory));
+        }
+    }
+
+    /**
+     * @return The claimed file in work/, or null if incoming/ is empty.
+     */
+    private Path claimNext() throws IOException {
+        List<Path> candidates = new ArrayList<Path>();
+
+        try (DirectoryStream<Path> incoming = Files.newDirectoryStream(spoolDirectory.resolve(INCOMING))) {
+            for (Path file : incoming) {
+                candidates.add(file);
+            }
+        }
+
+        // Sorted names keep the shards of a job together.
+        Collections.sort(candidates);
+
+        for (Path file : candidates) {
+            Path claimed = spoolDirectory.resolve(WORK).resolve(file.getFileName() + "@" + workerId);
+
+            try {
+                Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+                log.debug("Worker {} claimed {}", workerId, file.getFileName());
+                return claimed;
+            } catch (NoSuchFileException e) {
+                // Claimed by another worker first.
+            }
+        }
+        return null;
+    }
+
+    private void process(Path claimed) throws IOException {
+        String fileName = claimed.getFileName().toString();
+        String name = fileName.substring(0, fileName.lastIndexOf('@'));
+        Matcher shard = SHARD_NAME.matcher(name);
+        boolean isShard = shard.matches();
+        String job = isShard ? shard.group(1) : name;
+
+        try {
+            if (!isShard) {
+                clearEarlierRun(job);
+            }
+
+            if (isShard) {
+                convert(claimed, spoolDirectory.resolve(SHARDS).resolve(name + OUTPUT_SUFFIX));
+                joinIfComplete(job, Integer.parseInt(shard.group(3)));
+            } else if (Files.size(claimed) > shardBytes && split(claimed, job)) {
+                log.debug("Worker {} split {} into shards", workerId, job);
+            } else {
+                convert(claimed, spoolDirectory.resolve(DONE).resolve(job + OUTPUT_SUFFIX));
+                writeMarker(spoolDirectory.resolve(DONE).resolve(job + DONE_SUFFIX), "Converted by " + workerId);
+            }
+        } catch (Exception e) {
+            log.debug("Worker {} failed {}: {}", workerId, name, e.getMessage());
+            writeMarker(spoolDirectory.resolve(FAILED).resolve(job + FAILED_SUFFIX), name + ": " + e.getMessage());
+
+            if (isShard) {
+                discardShardOutputs(job, Integer.parseInt(shard.group(3)));
+            }
+        }
+
+        Files.deleteIfExists(claimed);
+    }
+
+    private void convert(Path input, Path output) throws Exception {
+        GeoTransUtility gtUtility = new GeoTransUtility(input);
+        gtUtility.initializeForConversion();
+
+        ConvertResults[] results;
+
+        try (ConversionSession session = new ConversionSession(gtUtility)) {
+            results = session.convert(gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, gtUtility.getBulkRecords()));
+        }
+        Path temporary = temporaryFile(output);
+
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            if (results.length > 0) {
+                gtUtility.writeBulkResponse(results, out);
+            }
+        }
+        Files.move(temporary, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the shards of a job into incoming/, each with the header of the
+     * job.
+     *
+     * @return false if the records fit into a single shard after all.
+     */
+    private boolean split(Path claimed, String job) throws IOException, CoordinateConversionException {
+        BulkRecordReader records = new GeoTransUtility(claimed).getBulkRecords();
+        BulkRecordReader[] shards = records.split(shardBytes);
+
+        if (shards.length < 2) {
+            return false;
+        }
+
+        for (int i = 0; i < shards.length; i++) {
+            Path shard = spoolDirectory.resolve(INCOMING).resolve(String.format("%s.part-%05d-of-%05d", job, i + 1, shards.length));
+            Path temporary = temporaryFile(shard);
+
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                records.transferTo(0, records.getStart(), out);
+                records.transferTo(shards[i].getStart(), shards[i].getEnd(), out);
+            }
+            Files.move(temporary, shard, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return true;
+    }
+
+    /**
+     * Joins the shard outputs of the job once all of them exist. Of several
+     * workers finding the job complete, only the one creating the join
+     * marker does the join.
+     */
+    private void joinIfComplete(String job, int shardCount) throws IOException {
+        Path shards = spoolDirectory.resolve(SHARDS);
+        List<Path> outputs = new ArrayList<Path>(shardCount);
+
+        // Another shard failed after this one started; its worker may have
+        // discarded the outputs before this one was written.
+        if (Files.exists(spoolDirectory.resolve(FAILED).resolve(job + FAILED_SUFFIX))) {
+            discardShardOutputs(job, shardCount);
+            return;
+        }
+
+        for (int i = 1; i <= shardCount; i++) {
+            Path output = shards.resolve(String.format("%s.part-%05d-of-%05d%s", job, i, shardCount, OUTPUT_SUFFIX));
+
+            if (!Files.exists(output)) {
+                return;
+            }
+            outputs.add(output);
+        }
+
+        Path joinMarker = shards.resolve(job + JOIN_SUFFIX);
+        try {
+            Files.createFile(joinMarker);
+        } catch (FileAlreadyExistsException e) {
+            return;
+        }
+
+        // A worker that found all outputs just before the joining worker
+        // deleted them and its join marker must not join again.
+        Path doneMarker = spoolDirectory.resolve(DONE).resolve(job + DONE_SUFFIX);
+        if (Files.exists(doneMarker)) {
+            Files.deleteIfExists(joinMarker);
+            return;
+        }
+
+        Path output = spoolDirectory.resolve(DONE).resolve(job + OUTPUT_SUFFIX);
+        Path temporary = temporaryFile(output);
+
+        try (OutputStream out = Files.newOutputStream(temporary)) {
+            for (Path shardOutput : outputs) {
+                Files.copy(shardOutput, out);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        writeMarker(doneMarker, "Joined " + shardCount + " shard(s) by " + workerId);
+
+        for (Path shardOutput : outputs) {
+            Files.deleteIfExists(shardOutput);
+        }
+        Files.deleteIfExists(joinMarker);
+
+        log.debug("Worker {} joined {} shard(s) of {}", workerId, shardCount, job);
+    }
+
+    /**
+     * Deletes what an earlier run of a job with the same name left behind, so
+     * that its markers do not stop the join of this run.
+     */
+    private void clearEarlierRun(String job) throws IOException {
+        Path done = spoolDirectory.resolve(DONE);
+
+        Files.deleteIfExists(done.resolve(job + DONE_SUFFIX));
+        Files.deleteIfExists(done.resolve(job + OUTPUT_SUFFIX));
+        Files.deleteIfExists(spoolDirectory.resolve(FAILED).resolve(job + FAILED_SUFFIX));
+        Files.deleteIfExists(spoolDirectory.resolve(SHARDS).resolve(job + JOIN_SUFFIX));
+    }
+
+    /**
+     * Deletes the shard outputs and the join marker of a failed job.
+     */
+    private void discardShardOutputs(String job, int shardCount) throws IOException {
+        Path shards = spoolDirectory.resolve(SHARDS);
+
+        for (int i = 1; i <= shardCount; i++) {
+            Files.deleteIfExists(shards.resolve(String.format("%s.part-%05d-of-%05d%s", job, i, shardCount, OUTPUT_SUFFIX)));
+        }
+        Files.deleteIfExists(shards.resolve(job + JOIN_SUFFIX));
+    }
+
+    private void writeMarker(Path marker, String text) throws IOException {
+        Path temporary = temporaryFile(marker);
+
+        Files.write(temporary, (text + "\n").getBytes(UTF_8));
+        Files.move(temporary, marker, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path temporaryFile(Path target) {
+        return spoolDirectory.resolve(TMP).resolve(target.getFileName() + "@" + workerId);
+    }
+}
@@ -0,0 +1,272 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Converts a line delimited JSON (NDJSON) stream. The first line is a request
+ * header object holding the same fields as a doConversion() request, without
+ * the sourceCoordinates array. Every following line is one source coordinate
+ * object, e.g. {"sourceLongitude": "-98.4", "sourceLatitude": "30.2"}.
+ * <p>
+ * One result line is written per coordinate line, in input order, holding the
+ * object doConversion() returns for a single coordinate. A line that cannot be
+ * parsed or converted produces {"error": reason, "line": number} instead, and
+ * the stream goes on. Blank lines are skipped.
+ * <p>
+ * The calling thread reads and parses lines while a second thread converts
+ * and writes them. Lines are handed over in small batches through a bounded
+ * queue, and a batch is handed over early whenever the input has no more
+ * data ready, so memory stays constant and slow feeds still get prompt
+ * results.
+ */
+public class StreamingConversion {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingConversion.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BATCH_LINES = 256;
+    private static final int QUEUED_BATCHES = 4;
+    private static final long HANDOFF_WAIT_MILLIS = 100;
+
+    // Marks the end of the input on the queue.
+    private static final List<StreamedLine> END_OF_INPUT = new ArrayList<StreamedLine>(0);
+
+    private BufferedReader reader;
+    private Writer writer;
+    private int lineNumber;
+
+    private GeoTransUtility gtUtility;
+    private ConversionSession session;
+
+    private BlockingQueue<List<StreamedLine>> batches = new ArrayBlockingQueue<List<StreamedLine>>(QUEUED_BATCHES);
+
+    /**
+     * @param input
+     *            NDJSON request, UTF-8 encoded.
+     * @param output
+     *            Destination of the NDJSON results, UTF-8 encoded. It is
+     *            flushed after every batch but not closed.
+     */
+    public StreamingConversion(InputStream input, OutputStream output) {
+        reader = new BufferedReader(new InputStreamReader(input, UTF_8));
+        writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+    }
+
+    /**
+     * Reads the header, then converts coordinate lines until the end of the
+     * input.
+     *
+     * @throws Exception
+     *             If the header is missing or invalid, or reading or writing
+     *             fails. Errors of single coordinate lines are written to the
+     *             output instead.
+     */
+    public void run() throws Exception {
+        log.debug("Entering run()");
+
+        String header = nextLine();
+        if (header == null) {
+            throw new CoordinateConversionException("Missing request header line!");
+        }
+
+        gtUtility = new GeoTransUtility(new JSONObject(header));
+        gtUtility.initializeForConversion();
+        session = new ConversionSession(gtUtility);
+
+        FutureTask<Void> converter = new FutureTask<Void>(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                // Only this thread uses the session, so it also releases it.
+                try {
+                    convertBatches();
+                } finally {
+                    session.close();
+                }
+                return null;
+            }
+        });
+
+        Thread converterThread = new Thread(converter, "geotrans-stream-converter");
+        converterThread.setDaemon(true);
+        converterThread.start();
+
+        try {
+            readBatches(converter);
+        } catch (Exception e) {
+            converter.cancel(true);
+            throw e;
+        }
+
+        try {
+            converter.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+
+        log.debug("Leaving run()");
+    }
+
+    private void readBatches(FutureTask<Void> converter) throws IOException, InterruptedException {
+        List<StreamedLine> batch = new ArrayList<StreamedLine>(BATCH_LINES);
+        String line;
+
+        while ((line = nextLine()) != null) {
+            batch.add(new StreamedLine(lineNumber, line));
+
+            if (batch.size() == BATCH_LINES || !reader.ready()) {
+                if (!handOff(batch, converter)) {
+                    return;
+                }
+                batch = new ArrayList<StreamedLine>(BATCH_LINES);
+            }
+        }
+
+        if (!batch.isEmpty() && !handOff(batch, converter)) {
+            return;
+        }
+        handOff(END_OF_INPUT, converter);
+    }
+
+    /**
+     * @return false if the converter has stopped, in which case its failure
+     *         is reported by run().
+     */
+    private boolean handOff(List<StreamedLine> batch, FutureTask<Void> converter) throws InterruptedException {
+        while (!batches.offer(batch, HANDOFF_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (converter.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void convertBatches() throws Exception {
+        List<StreamedLine> batch;
+
+        while ((batch = batches.take()) != END_OF_INPUT) {
+            convertBatch(batch);
+            writer.flush();
+        }
+    }
+
+    private void convertBatch(List<StreamedLine> batch) throws Exception {
+        List<StreamedLine> valid = new ArrayList<StreamedLine>(batch.size());
+
+        for (StreamedLine line : batch) {
+            try {
+                if (line.error == null) {
+                    line.source = gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, line.coordinate)[0];
+                    valid.add(line);
+                }
+            } catch (CoordinateConversionException | JSONException e) {
+                line.error = e.getMessage();
+            }
+        }
+
+        convertValidLines(valid);
+
+        for (StreamedLine line : batch) {
+            if (line.error == null) {
+                try {
+                    writer.write(gtUtility.buildResponse(new ConvertResults[] { line.result }, false).toString());
+                } catch (CoordinateConversionException | JSONException e) {
+                    line.error = e.getMessage();
+                }
+            }
+            if (line.error != null) {
+                writer.write(new JSONObject().put(GeoTransConstants.ERROR, String.valueOf(line.error))
+                        .put(GeoTransConstants.LINE, line.number).toString());
+            }
+            writer.write('\n');
+        }
+    }
+
+    private void convertValidLines(List<StreamedLine> valid) throws Exception {
+        if (valid.isEmpty()) {
+            return;
+        }
+
+        CoordinateTuple[] sources = new CoordinateTuple[valid.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = valid.get(i).source;
+        }
+
+        try {
+            ConvertResults[] results = session.convert(sources);
+
+            for (int i = 0; i < results.length; i++) {
+                valid.get(i).result = results[i];
+            }
+        } catch (CoordinateConversionException e) {
+            // Convert one by one to find the coordinate(s) that failed.
+            for (StreamedLine line : valid) {
+                try {
+                    line.result = session.convert(new CoordinateTuple[] { line.source })[0];
+                } catch (CoordinateConversionException lineFailure) {
+                    line.error = lineFailure.getMessage();
+                }
+            }
+        }
+    }
+
+    private String nextLine() throws IOException {
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (line.trim().length() > 0) {
+                return line;
+            }
+        }
+        return null;
+    }
+
+    private static class StreamedLine {
+
+        private int number;
+        private JSONObject coordinate;
+
+        private CoordinateTuple source;
+        private ConvertResults result;
+        private String error;
+
+        // JSON is parsed by the reading thread.
+        StreamedLine(int number, String text) {
+            this.number = number;
+
+            try {
+                coordinate = new JSONObject(text);
+            } catch (JSONException e) {
+                error = e.getMessage();
+            }
+        }
+    }
+}
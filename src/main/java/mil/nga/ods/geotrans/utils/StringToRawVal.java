@@ -53,14 +53,19 @@ public class StringToRawVal {
      * @since BAG SP6
      */
     public StringToRawVal(int longitudeRange, boolean leadingZ, char separator) {
-        log.debug("Entering StringToRawVal() with longitude range: {}, leading zeros: {}, and geodetic separator: '{}'", longitudeRange, leadingZ,
-                separator);
+        // Built for every formatted point, so traced with the points.
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Entering StringToRawVal() with longitude range: {}, leading zeros: {}, and geodetic separator: '{}'", longitudeRange,
+                    leadingZ, separator);
+        }
 
         lonRange = longitudeRange;
         leadingZeros = leadingZ;
         latLonSeparator = separator;
 
-        log.debug("Leaving StringToRawVal()");
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Leaving StringToRawVal()");
+        }
     }
 
     /**
@@ -82,8 +87,10 @@ public class StringToRawVal {
      * @since BAG SP6
      */
     private String degreesToString(BigDecimal degreesBD, boolean useMinutes, boolean useSeconds, int type) {
-        Object[] toLog = { degreesBD, useMinutes, useSeconds, type };
-        log.debug("Entering degreesToString() with {} degrees, useMinutes: {}, useSeconds: {}, lat(1) or long(2): {}", toLog);
+        if (ConversionLog.TRACE_POINTS) {
+            Object[] toLog = { degreesBD, useMinutes, useSeconds, type };
+            log.debug("Entering degreesToString() with {} degrees, useMinutes: {}, useSeconds: {}, lat(1) or long(2): {}", toLog);
+        }
 
         BigDecimal minutesBD = BigDecimal.ZERO;
         BigDecimal secondsBD = BigDecimal.ZERO;
@@ -229,7 +236,9 @@ public class StringToRawVal {
             valueToReturn = degreesString + minutesString + secondsString;
         }
 
-        log.debug("Leaving degreesToString() with {}", valueToReturn);
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Leaving degreesToString() with {}", valueToReturn);
+        }
         return valueToReturn;
     }
 
@@ -243,12 +252,16 @@ public class StringToRawVal {
      * @since BAG SP6
      */
     public String doubleToString(final double value) {
-        log.debug("Entering doubleToString() with {}", value);
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Entering doubleToString() with {}", value);
+        }
 
         BigDecimal exact = new BigDecimal(String.valueOf(value));
         String exactToReturn = exact.toPlainString();
 
-        log.debug("Leaving doubleToString() with {}", exactToReturn);
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Leaving doubleToString() with {}", exactToReturn);
+        }
         return exactToReturn;
     }
 
@@ -269,8 +282,10 @@ public class StringToRawVal {
      * @since BAG SP6
      */
     public String latitudeToString(BigDecimal latitude, boolean useNSEW, boolean useMinutes, boolean useSeconds) {
-        Object[] toLog = { latitude, useNSEW, useMinutes, useSeconds };
-        log.debug("Entering latitudeToString() with {} latitude, useNSEW: {}, useMinutes: {}, useSeconds: {}", toLog);
+        if (ConversionLog.TRACE_POINTS) {
+            Object[] toLog = { latitude, useNSEW, useMinutes, useSeconds };
+            log.debug("Entering latitudeToString() with {} latitude, useNSEW: {}, useMinutes: {}, useSeconds: {}", toLog);
+        }
 
         BigDecimal degrees = latitude.abs(MC_EXACT);
         String degreesAsString = degreesToString(degrees, useMinutes, useSeconds, LATITUDE_STRING);
@@ -288,7 +303,9 @@ public class StringToRawVal {
             }
         }
 
-        log.debug("Leaving latitudeToString() with {}", degreesAsString);
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Leaving latitudeToString() with {}", degreesAsString);
+        }
         return degreesAsString;
     }
 
@@ -309,12 +326,16 @@ public class StringToRawVal {
      * @since BAG SP6
      */
     public String longitudeToString(BigDecimal longitude, boolean useNSEW, boolean useMinutes, boolean useSeconds) {
-        Object[] toLog = { longitude, useNSEW, useMinutes, useSeconds };
-        log.debug("Entering longitudeToString() with {} longitude, useNSEW: {}, useMinutes: {}, useSeconds: {}", toLog);
+        if (ConversionLog.TRACE_POINTS) {
+            Object[] toLog = { longitude, useNSEW, useMinutes, useSeconds };
+            log.debug("Entering longitudeToString() with {} longitude, useNSEW: {}, useMinutes: {}, useSeconds: {}", toLog);
+        }
 
         BigDecimal degrees = BigDecimal.ZERO;
 
-        log.debug("Switching on {}", lonRange);
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Switching on {}", lonRange);
+        }
         switch (lonRange) {
         case Range._180_180:
             if (longitude.compareTo(NUM_180) == 1) {
@@ -358,7 +379,9 @@ public class StringToRawVal {
             break;
         }
 
-        log.debug("Leaving longitudeToString() with {}", degreesAsString);
+        if (ConversionLog.TRACE_POINTS) {
+            log.debug("Leaving longitudeToString() with {}", degreesAsString);
+        }
         return degreesAsString;
     }
 }
\ No newline at end of file
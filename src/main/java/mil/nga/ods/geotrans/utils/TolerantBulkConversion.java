@@ -0,0 +1,240 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.codehaus.jettison.json.JSONException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bulk conversion that keeps going when single rows fail. Rows that cannot be
+ * parsed, converted or formatted are reported to a BulkRowErrorListener with
+ * their line number and are left out of the output; all other rows are
+ * written in file order, in the same text format as doBulkConversion().
+ * <p>
+ * The file is converted in ranges of about 1MB. A range is parsed, converted
+ * and formatted as a whole first; only a range that fails is redone row by
+ * row to find the failing rows, so files without errors convert at the speed
+ * of the regular bulk conversion.
+ */
+public class TolerantBulkConversion {
+
+    private static final Logger log = LoggerFactory.getLogger(TolerantBulkConversion.class.getName());
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Size of the bulk file ranges converted one at a time.
+    private static final int RANGE_BYTES = 1024 * 1024;
+
+    private GeoTransUtility gtUtility;
+    private BulkRowErrorListener listener;
+
+    private ConversionSession session;
+    private BulkRecordReader records;
+
+    // Last record offset a line number was computed for, and its line number.
+    private int lineOffset;
+    private long lineNumber = 1;
+
+    private long convertedRows;
+    private long failedRows;
+
+    /**
+     * @param gtUtility
+     *            Utility built by one of the bulk constructors, not yet
+     *            initialized.
+     * @param listener
+     *            Receiver of the failed rows.
+     */
+    public TolerantBulkConversion(GeoTransUtility gtUtility, BulkRowErrorListener listener) {
+        this.gtUtility = gtUtility;
+        this.listener = listener;
+    }
+
+    public long getConvertedRows() {
+        return convertedRows;
+    }
+
+    public long getFailedRows() {
+        return failedRows;
+    }
+
+    /**
+     * Converts all rows, writing the converted ones to the stream as UTF-8.
+     * The stream is flushed after every range but not closed.
+     *
+     * @param out
+     *            Destination of the converted rows.
+     * @throws Exception
+     *             If the header is invalid or the output cannot be written.
+     */
+    public void run(OutputStream out) throws Exception {
+        log.debug("Entering run()");
+
+        gtUtility.initializeForConversion();
+        session = new ConversionSession(gtUtility);
+        records = gtUtility.getBulkRecords();
+
+        try {
+            for (BulkRecordReader range : records.split(RANGE_BYTES)) {
+                List<RowFailure> failures = new ArrayList<RowFailure>();
+
+                out.write(convertRange(range, failures).getBytes(UTF_8));
+                out.flush();
+
+                report(failures);
+            }
+        } finally {
+            session.close();
+        }
+
+        log.debug("Leaving run() with {} converted and {} failed row(s)", convertedRows, failedRows);
+    }
+
+    private String convertRange(BulkRecordReader range, List<RowFailure> failures) throws Exception {
+        CoordinateTuple[] sources;
+        int[] sourceOffsets = null;
+
+        try {
+            sources = gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, range);
+        } catch (CoordinateConversionException | JSONException | RuntimeException e) {
+            List<CoordinateTuple> parsed = new ArrayList<CoordinateTuple>();
+            List<Integer> offsets = new ArrayList<Integer>();
+            BulkRecordReader reader = range.duplicate();
+
+            while (reader.nextRecord()) {
+                try {
+                    parsed.add(gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, reader.currentRecord())[0]);
+                    offsets.add(reader.getRecordOffset());
+                } catch (CoordinateConversionException | JSONException | RuntimeException rowFailure) {
+                    failures.add(new RowFailure(reader.getRecordOffset(), reason(rowFailure)));
+                }
+            }
+
+            sources = parsed.toArray(new CoordinateTuple[parsed.size()]);
+            sourceOffsets = new int[offsets.size()];
+            for (int i = 0; i < sourceOffsets.length; i++) {
+                sourceOffsets[i] = offsets.get(i);
+            }
+        }
+
+        if (sources.length == 0) {
+            return "";
+        }
+
+        ConvertResults[] results;
+
+        try {
+            results = session.convert(sources);
+        } catch (CoordinateConversionException | RuntimeException e) {
+            if (sourceOffsets == null) {
+                sourceOffsets = recordOffsets(range, sources.length);
+            }
+
+            List<ConvertResults> converted = new ArrayList<ConvertResults>(sources.length);
+            List<Integer> offsets = new ArrayList<Integer>(sources.length);
+
+            for (int i = 0; i < sources.length; i++) {
+                int offset = sourceOffsets[i];
+
+                try {
+                    converted.add(session.convert(new CoordinateTuple[] { sources[i] })[0]);
+                    offsets.add(offset);
+                } catch (CoordinateConversionException | RuntimeException rowFailure) {
+                    failures.add(new RowFailure(offset, reason(rowFailure)));
+                }
+            }
+
+            results = converted.toArray(new ConvertResults[converted.size()]);
+            sourceOffsets = new int[offsets.size()];
+            for (int i = 0; i < sourceOffsets.length; i++) {
+                sourceOffsets[i] = offsets.get(i);
+            }
+        }
+
+        if (results.length == 0) {
+            return "";
+        }
+
+        try {
+            String lines = gtUtility.buildResultsArray(results).toString(gtUtility.getFormat());
+            convertedRows += results.length;
+            return lines;
+        } catch (CoordinateConversionException | RuntimeException e) {
+            if (sourceOffsets == null) {
+                sourceOffsets = recordOffsets(range, results.length);
+            }
+
+            StringBuilder lines = new StringBuilder();
+
+            for (int i = 0; i < results.length; i++) {
+                try {
+                    lines.append(gtUtility.buildResultsArray(new ConvertResults[] { results[i] }).toString(gtUtility.getFormat()));
+                    convertedRows++;
+                } catch (CoordinateConversionException | RuntimeException rowFailure) {
+                    failures.add(new RowFailure(sourceOffsets[i], reason(rowFailure)));
+                }
+            }
+            return lines.toString();
+        }
+    }
+
+    /**
+     * @return The message of a row failure, or the exception itself for a
+     *         runtime exception without a message.
+     */
+    private static String reason(Exception rowFailure) {
+        return rowFailure.getMessage() != null ? rowFailure.getMessage() : rowFailure.toString();
+    }
+
+    /**
+     * @return The offsets of the first count records of the range.
+     */
+    private static int[] recordOffsets(BulkRecordReader range, int count) {
+        BulkRecordReader reader = range.duplicate();
+        int[] offsets = new int[count];
+
+        for (int i = 0; i < count && reader.nextRecord(); i++) {
+            offsets[i] = reader.getRecordOffset();
+        }
+        return offsets;
+    }
+
+    private void report(List<RowFailure> failures) {
+        Collections.sort(failures, new Comparator<RowFailure>() {
+            @Override
+            public int compare(RowFailure a, RowFailure b) {
+                return a.offset < b.offset ? -1 : (a.offset == b.offset ? 0 : 1);
+            }
+        });
+
+        for (RowFailure failure : failures) {
+            // Failures are reported in file order, so lines are only counted once.
+            lineNumber += records.countLines(lineOffset, failure.offset);
+            lineOffset = failure.offset;
+            failedRows++;
+
+            listener.rowFailed(lineNumber, failure.reason);
+        }
+    }
+
+    private static class RowFailure {
+
+        private int offset;
+        private String reason;
+
+        RowFailure(int offset, String reason) {
+            this.offset = offset;
+            this.reason = reason;
+        }
+    }
+}
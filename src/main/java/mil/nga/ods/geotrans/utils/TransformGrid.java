@@ -0,0 +1,611 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.Accuracy;
+import geotrans3.coordinates.CartesianCoordinates;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.GeodeticCoordinates;
+import geotrans3.coordinates.MapProjectionCoordinates;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.utility.Constants;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An approximation of one conversion (source and target coordinate systems)
+ * over a bounding box of the source coordinate system, for display and tiling
+ * workloads that convert many points of a small area and do not need the full
+ * accuracy of GeoTrans.
+ * <p>
+ * The box is split into a coarse lattice of cells. The exact conversion is
+ * sampled on the nodes of each cell, 2x2 for bilinear and 4x4 for bicubic
+ * interpolation, and compared with the interpolated value at probe points
+ * between the nodes. A cell whose probes are off by more than the maximum
+ * error (in meters of the target) is split into four, down to MAX_DEPTH
+ * levels or until MAX_SAMPLES points have been sampled; a cell still too far
+ * off then, or where the exact conversion fails at a node or probe, is left
+ * to the exact conversion without being split. The probes estimate the
+ * error, they do not bound it between the probes.
+ * <p>
+ * Only geodetic and map projection sources (two coordinates) and geodetic,
+ * map projection and cartesian targets are supported. Geodetic sources are
+ * sampled at height zero, so points with a source height are left to the
+ * exact conversion. The accuracy of an interpolated result is interpolated
+ * bilinearly from the accuracies sampled at the corners of its cell, with the
+ * accuracies of the request the grid was built from; a component unknown at
+ * any corner is unknown.
+ * <p>
+ * A grid is immutable once built and can be shared between threads and
+ * reused by any request with the same coordinate systems, datums, height
+ * types and accuracies, whatever its coordinates.
+ */
+public final class TransformGrid {
+
+    private static final Logger log = LoggerFactory.getLogger(TransformGrid.class.getName());
+
+    // Nodes per side of a cell.
+    public static final int BILINEAR = 2;
+    public static final int BICUBIC = 4;
+
+    private static final int INITIAL_CELLS = 8;
+    private static final int MAX_DEPTH = 8;
+
+    // No cell is split any more once this many points have been sampled, so
+    // a small maximum error cannot sample the full depth over the whole box.
+    private static final int MAX_SAMPLES = 100000;
+
+    private static final double EARTH_RADIUS = 6378137.0;
+    private static final double TWO_PI = 2 * Math.PI;
+
+    // Probe points (u, v) within a cell, between the nodes of both
+    // interpolations: the center, the centers of the corner node spans and
+    // the midpoints of the edges.
+    private static final double[] PROBES = {
+            0.5, 0.5,
+            1 / 6.0, 1 / 6.0, 5 / 6.0, 1 / 6.0, 1 / 6.0, 5 / 6.0, 5 / 6.0, 5 / 6.0,
+            0.5, 0, 0.5, 1, 0, 0.5, 1, 0.5 };
+
+    private final String conversionKey;
+    private final int sourceType;
+    private final int targetType;
+    private final boolean geodeticSource;
+    private final CoordinateTypeRegistry.Family targetFamily;
+    private final int nodes;
+    private final double maxError;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double cellWidth;
+    private final double cellHeight;
+
+    private final Cell[] cells = new Cell[INITIAL_CELLS * INITIAL_CELLS];
+
+    private int leafCells;
+    private int exactCells;
+    private int samples;
+
+    private TransformGrid(ConversionSession session, double minX, double minY, double maxX, double maxY, double maxError, int nodes)
+            throws CoordinateConversionException {
+        Map<String, Object> headerFields = session.getUtility().getHeaderFields();
+
+        this.conversionKey = conversionKey(headerFields);
+        this.sourceType = new CoordinateParser().parseInt(new InputVerifier().verifyInputStringIsValid(headerFields,
+                GeoTransConstants.SOURCE_PREFIX + GeoTransConstants.COORDINATE_TYPE));
+        this.targetType = session.getTargetCoordinateType();
+        this.nodes = nodes;
+        this.maxError = maxError;
+
+        CoordinateTypeRegistry.Family sourceFamily = CoordinateTypeRegistry.family(sourceType);
+        this.geodeticSource = sourceFamily == CoordinateTypeRegistry.GEODETIC;
+        this.targetFamily = CoordinateTypeRegistry.family(targetType);
+
+        if (!geodeticSource && sourceFamily != CoordinateTypeRegistry.MAP_PROJECTION) {
+            throw new CoordinateConversionException(sourceFamily.getName() + " source coordinates cannot be approximated!");
+        }
+        if (targetFamily != CoordinateTypeRegistry.GEODETIC && targetFamily != CoordinateTypeRegistry.MAP_PROJECTION
+                && targetFamily != CoordinateTypeRegistry.CARTESIAN) {
+            throw new CoordinateConversionException(targetFamily.getName() + " target coordinates cannot be approximated!");
+        }
+        if (!(minX < maxX && minY < maxY)) {
+            throw new CoordinateConversionException("The bounding box of the transform grid is empty!");
+        }
+        if (!(maxError > 0)) {
+            throw new CoordinateConversionException("The maximum error of the transform grid must be positive!");
+        }
+
+        // Geodetic coordinates are given in degrees but converted in radians.
+        double scale = geodeticSource ? Constants.PI_OVER_180 : 1;
+
+        this.minX = minX * scale;
+        this.minY = minY * scale;
+        this.maxX = maxX * scale;
+        this.maxY = maxY * scale;
+        this.cellWidth = (this.maxX - this.minX) / INITIAL_CELLS;
+        this.cellHeight = (this.maxY - this.minY) / INITIAL_CELLS;
+    }
+
+    /**
+     * Builds the grid by sampling the exact conversion of the session.
+     *
+     * @param session
+     *            The exact conversion to approximate.
+     * @param minX
+     *            Western edge of the bounding box: longitude in degrees for a
+     *            geodetic source, otherwise easting.
+     * @param minY
+     *            Southern edge: latitude in degrees or northing.
+     * @param maxX
+     *            Eastern edge.
+     * @param maxY
+     *            Northern edge.
+     * @param maxError
+     *            Maximum error of an interpolated point, in meters.
+     * @param interpolation
+     *            BILINEAR or BICUBIC.
+     * @return The grid.
+     * @throws Exception
+     *             If the conversion cannot be approximated.
+     */
+    public static TransformGrid build(ConversionSession session, double minX, double minY, double maxX, double maxY, double maxError,
+            int interpolation) throws Exception {
+        log.debug("Entering build()");
+
+        if (interpolation != BILINEAR && interpolation != BICUBIC) {
+            throw new CoordinateConversionException("Invalid interpolation: " + interpolation);
+        }
+
+        TransformGrid grid = new TransformGrid(session, minX, minY, maxX, maxY, maxError, interpolation);
+        Sampler sampler = grid.new Sampler(session);
+
+        for (int row = 0; row < INITIAL_CELLS; row++) {
+            for (int column = 0; column < INITIAL_CELLS; column++) {
+                double x0 = grid.minX + column * grid.cellWidth;
+                double y0 = grid.minY + row * grid.cellHeight;
+                double x1 = column == INITIAL_CELLS - 1 ? grid.maxX : grid.minX + (column + 1) * grid.cellWidth;
+                double y1 = row == INITIAL_CELLS - 1 ? grid.maxY : grid.minY + (row + 1) * grid.cellHeight;
+
+                grid.cells[row * INITIAL_CELLS + column] = grid.buildCell(sampler, x0, y0, x1, y1, 0);
+            }
+        }
+        grid.samples = sampler.cache.size();
+
+        if (grid.samples >= MAX_SAMPLES) {
+            log.debug("Stopped splitting cells at {} samples; the remaining cells are converted exactly", MAX_SAMPLES);
+        }
+
+        log.debug("Leaving build() with {} cell(s), {} left exact, from {} sample(s)", grid.leafCells, grid.exactCells, grid.samples);
+        return grid;
+    }
+
+    /**
+     * Builds the grid from the approximation object of a request.
+     *
+     * @param session
+     *            The exact conversion to approximate.
+     * @param approximation
+     *            Fields of the approximation object: minX, minY, maxX, maxY,
+     *            maxError and interpolation ("bilinear", the default, or
+     *            "bicubic").
+     * @return The grid.
+     * @throws Exception
+     *             If a field is missing or invalid, or the conversion cannot
+     *             be approximated.
+     */
+    public static TransformGrid build(ConversionSession session, Map<String, Object> approximation) throws Exception {
+        InputVerifier iv = new InputVerifier();
+        CoordinateParser parser = new CoordinateParser();
+
+        Object interpolation = approximation.get(GeoTransConstants.INTERPOLATION);
+        int nodes;
+
+        if (interpolation == null || GeoTransConstants.BILINEAR.equalsIgnoreCase(interpolation.toString().trim())) {
+            nodes = BILINEAR;
+        } else if (GeoTransConstants.BICUBIC.equalsIgnoreCase(interpolation.toString().trim())) {
+            nodes = BICUBIC;
+        } else {
+            throw new CoordinateConversionException("Invalid " + GeoTransConstants.INTERPOLATION + ": " + interpolation);
+        }
+
+        return build(session,
+                parser.parseDouble(iv.verifyInputStringIsValid(approximation, GeoTransConstants.MIN_X)),
+                parser.parseDouble(iv.verifyInputStringIsValid(approximation, GeoTransConstants.MIN_Y)),
+                parser.parseDouble(iv.verifyInputStringIsValid(approximation, GeoTransConstants.MAX_X)),
+                parser.parseDouble(iv.verifyInputStringIsValid(approximation, GeoTransConstants.MAX_Y)),
+                parser.parseDouble(iv.verifyInputStringIsValid(approximation, GeoTransConstants.MAX_ERROR)),
+                nodes);
+    }
+
+    /**
+     * @param headerFields
+     *            Fields of a conversion request.
+     * @return true if the grid approximates the conversion of the request.
+     */
+    public boolean matches(Map<String, Object> headerFields) {
+        return conversionKey.equals(conversionKey(headerFields));
+    }
+
+    /**
+     * Interpolates the conversion of one source coordinate.
+     *
+     * @param source
+     *            Source coordinate of the type the grid was built for.
+     * @return The approximate result, or null if the point has to be
+     *         converted exactly: outside the bounding box, in a cell left
+     *         exact or with a source height.
+     */
+    public ConvertResults interpolate(CoordinateTuple source) {
+        double x;
+        double y;
+
+        if (geodeticSource) {
+            GeodeticCoordinates geodetic = (GeodeticCoordinates) source;
+            if (geodetic.getHeight() != 0) {
+                return null;
+            }
+            x = geodetic.getLongitude();
+            y = geodetic.getLatitude();
+        } else {
+            MapProjectionCoordinates projected = (MapProjectionCoordinates) source;
+            x = projected.getEasting();
+            y = projected.getNorthing();
+        }
+
+        if (!(x >= minX && x <= maxX && y >= minY && y <= maxY)) {
+            return null;
+        }
+
+        int column = Math.min((int) ((x - minX) / cellWidth), INITIAL_CELLS - 1);
+        int row = Math.min((int) ((y - minY) / cellHeight), INITIAL_CELLS - 1);
+        Cell cell = cells[row * INITIAL_CELLS + column];
+
+        while (cell.children != null) {
+            cell = cell.children[(y < cell.midY() ? 0 : 2) + (x < cell.midX() ? 0 : 1)];
+        }
+        if (cell.values == null) {
+            return null;
+        }
+
+        double u = (x - cell.x0) / (cell.x1 - cell.x0);
+        double v = (y - cell.y0) / (cell.y1 - cell.y0);
+
+        return new ConvertResults(toTuple(interpolate(cell.values, u, v)), interpolateAccuracy(cell.accuracies, u, v));
+    }
+
+    public int getSourceCoordinateType() {
+        return sourceType;
+    }
+
+    public int getTargetCoordinateType() {
+        return targetType;
+    }
+
+    public double getMaxError() {
+        return maxError;
+    }
+
+    /**
+     * @return The number of cells points are interpolated or converted in.
+     */
+    public int getCellCount() {
+        return leafCells;
+    }
+
+    /**
+     * @return The number of cells whose points are converted exactly.
+     */
+    public int getExactCellCount() {
+        return exactCells;
+    }
+
+    /**
+     * @return The number of exact conversions the grid was built from.
+     */
+    public int getSampleCount() {
+        return samples;
+    }
+
+    private Cell buildCell(Sampler sampler, double x0, double y0, double x1, double y1, int depth) throws Exception {
+        Cell cell = new Cell(x0, y0, x1, y1);
+        double[][] nodeValues = new double[nodes * nodes][];
+        boolean converted = true;
+
+        for (int j = 0; j < nodes && converted; j++) {
+            for (int i = 0; i < nodes && converted; i++) {
+                nodeValues[j * nodes + i] = sampler.sample(cell.x(i / (nodes - 1.0)), cell.y(j / (nodes - 1.0)));
+                converted = nodeValues[j * nodes + i] != null;
+            }
+        }
+
+        double[][] values = converted ? toComponents(nodeValues) : null;
+        boolean accurate = converted;
+
+        for (int p = 0; p < PROBES.length && converted && accurate; p += 2) {
+            double u = PROBES[p];
+            double v = PROBES[p + 1];
+            double[] exact = sampler.sample(cell.x(u), cell.y(v));
+
+            converted = exact != null;
+            accurate = converted && error(exact, interpolate(values, u, v)) <= maxError;
+        }
+
+        // Only a cell that misses the maximum error is split; where the
+        // exact conversion fails, smaller cells would fail as well.
+        if (accurate) {
+            cell.values = values;
+            // At the points the corner nodes were sampled at.
+            cell.accuracies = new Accuracy[] { sampler.accuracy(cell.x(0), cell.y(0)), sampler.accuracy(cell.x(1), cell.y(0)),
+                    sampler.accuracy(cell.x(0), cell.y(1)), sampler.accuracy(cell.x(1), cell.y(1)) };
+        } else if (converted && depth < MAX_DEPTH && sampler.cache.size() < MAX_SAMPLES) {
+            double midX = cell.midX();
+            double midY = cell.midY();
+
+            cell.children = new Cell[] { buildCell(sampler, x0, y0, midX, midY, depth + 1), buildCell(sampler, midX, y0, x1, midY, depth + 1),
+                    buildCell(sampler, x0, midY, midX, y1, depth + 1), buildCell(sampler, midX, midY, x1, y1, depth + 1) };
+            return cell;
+        } else {
+            exactCells++;
+        }
+
+        leafCells++;
+        return cell;
+    }
+
+    /**
+     * @return The node values per target component, longitudes unwrapped so
+     *         a cell across the antimeridian interpolates continuously.
+     */
+    private double[][] toComponents(double[][] nodeValues) {
+        double[][] values = new double[nodeValues[0].length][nodeValues.length];
+
+        for (int n = 0; n < nodeValues.length; n++) {
+            for (int c = 0; c < values.length; c++) {
+                values[c][n] = nodeValues[n][c];
+            }
+            if (targetFamily == CoordinateTypeRegistry.GEODETIC) {
+                values[0][n] = unwrap(values[0][n], values[0][0]);
+            }
+        }
+        return values;
+    }
+
+    private double[] interpolate(double[][] values, double u, double v) {
+        double[] target = new double[values.length];
+
+        if (nodes == BILINEAR) {
+            for (int c = 0; c < values.length; c++) {
+                double[] node = values[c];
+                target[c] = (1 - v) * ((1 - u) * node[0] + u * node[1]) + v * ((1 - u) * node[2] + u * node[3]);
+            }
+        } else {
+            double[] lu = lagrange(u);
+            double[] lv = lagrange(v);
+
+            for (int c = 0; c < values.length; c++) {
+                double[] node = values[c];
+                double sum = 0;
+
+                for (int j = 0; j < BICUBIC; j++) {
+                    double row = 0;
+                    for (int i = 0; i < BICUBIC; i++) {
+                        row += lu[i] * node[j * BICUBIC + i];
+                    }
+                    sum += lv[j] * row;
+                }
+                target[c] = sum;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * @return The accuracy at (u, v) of a cell, interpolated bilinearly from
+     *         the accuracies of its south-west, south-east, north-west and
+     *         north-east corners; bilinear weights never overshoot the
+     *         corners.
+     */
+    private static Accuracy interpolateAccuracy(Accuracy[] corners, double u, double v) {
+        double[] weights = { (1 - u) * (1 - v), u * (1 - v), (1 - u) * v, u * v };
+        double ce90 = 0;
+        double le90 = 0;
+        double se90 = 0;
+
+        for (int n = 0; n < corners.length; n++) {
+            ce90 = ce90 < 0 || corners[n].getCE90() < 0 ? -1 : ce90 + weights[n] * corners[n].getCE90();
+            le90 = le90 < 0 || corners[n].getLE90() < 0 ? -1 : le90 + weights[n] * corners[n].getLE90();
+            se90 = se90 < 0 || corners[n].getSE90() < 0 ? -1 : se90 + weights[n] * corners[n].getSE90();
+        }
+        return new Accuracy(ce90, le90, se90);
+    }
+
+    /**
+     * @return The cubic Lagrange weights of the nodes at 0, 1/3, 2/3 and 1.
+     */
+    private static double[] lagrange(double t) {
+        double a = t;
+        double b = t - 1 / 3.0;
+        double c = t - 2 / 3.0;
+        double d = t - 1;
+
+        return new double[] { -4.5 * b * c * d, 13.5 * a * c * d, -13.5 * a * b * d, 4.5 * a * b * c };
+    }
+
+    /**
+     * @return The distance in meters between two target coordinates.
+     */
+    private double error(double[] exact, double[] approximate) {
+        if (targetFamily == CoordinateTypeRegistry.GEODETIC) {
+            double east = unwrap(approximate[0], exact[0]) - exact[0];
+            double dx = east * EARTH_RADIUS * Math.cos(exact[1]);
+            double dy = (approximate[1] - exact[1]) * EARTH_RADIUS;
+            double dz = approximate[2] - exact[2];
+
+            return Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+
+        double sum = 0;
+        for (int c = 0; c < exact.length; c++) {
+            double d = approximate[c] - exact[c];
+            sum += d * d;
+        }
+        return Math.sqrt(sum);
+    }
+
+    private CoordinateTuple toTuple(double[] target) {
+        if (targetFamily == CoordinateTypeRegistry.GEODETIC) {
+            return new GeodeticCoordinates(targetType, unwrap(target[0], 0), target[1], target[2]);
+        } else if (targetFamily == CoordinateTypeRegistry.CARTESIAN) {
+            return new CartesianCoordinates(targetType, target[0], target[1], target[2]);
+        }
+        return new MapProjectionCoordinates(targetType, target[0], target[1]);
+    }
+
+    private double[] fromTuple(CoordinateTuple tuple) {
+        if (targetFamily == CoordinateTypeRegistry.GEODETIC) {
+            GeodeticCoordinates geodetic = (GeodeticCoordinates) tuple;
+            return new double[] { geodetic.getLongitude(), geodetic.getLatitude(), geodetic.getHeight() };
+        } else if (targetFamily == CoordinateTypeRegistry.CARTESIAN) {
+            CartesianCoordinates cartesian = (CartesianCoordinates) tuple;
+            return new double[] { cartesian.getX(), cartesian.getY(), cartesian.getZ() };
+        }
+        MapProjectionCoordinates projected = (MapProjectionCoordinates) tuple;
+        return new double[] { projected.getEasting(), projected.getNorthing() };
+    }
+
+    /**
+     * @return The longitude, shifted by whole turns to within half a turn of
+     *         the reference.
+     */
+    private static double unwrap(double longitude, double reference) {
+        return longitude - TWO_PI * Math.rint((longitude - reference) / TWO_PI);
+    }
+
+    /**
+     * @return The fields of the request that select the conversion: the
+     *         coordinate system, datum, height type, accuracy and parameter
+     *         fields of the source and target, but none of the coordinates of
+     *         a point. The hemisphere and zone fields are parameters of the
+     *         polar stereographic and UTM systems; the coordinates of the
+     *         systems that take them per point (UTM, UPS, the grid reference
+     *         strings) are never approximated.
+     */
+    private static String conversionKey(Map<String, Object> headerFields) {
+        Map<String, Object> fields = new TreeMap<String, Object>();
+
+        for (String prefix : new String[] { GeoTransConstants.SOURCE_PREFIX, GeoTransConstants.TARGET_PREFIX }) {
+            HeaderKeys keys = HeaderKeys.forPrefix(prefix);
+
+            for (String key : new String[] { keys.coordinateType, keys.heightType, keys.datum, keys.accuracyCe, keys.accuracyLe,
+                    keys.accuracySe, keys.hemisphere, keys.zoneNumber, keys.zoneOverride, keys.centralMeridian, keys.falseEasting,
+                    keys.falseNorthing, keys.latitudeOne, keys.latitudeTwo, keys.longitudeOne, keys.longitudeTwo, keys.neysStandardParallel1,
+                    keys.orientation, keys.originHeight, keys.originLatitude, keys.originLongitude, keys.scaleFactor, keys.standardParallel,
+                    keys.standardParallelOne, keys.standardParallelTwo }) {
+                if (headerFields.containsKey(key)) {
+                    fields.put(key, String.valueOf(headerFields.get(key)).trim());
+                }
+            }
+        }
+        return fields.toString();
+    }
+
+    /**
+     * Converts sample points exactly, each at most once: neighbouring cells,
+     * and the children of a split cell, share most of their nodes.
+     */
+    private final class Sampler {
+
+        private final ConversionSession session;
+        private final Map<PointKey, double[]> cache = new HashMap<PointKey, double[]>();
+        private final Map<PointKey, Accuracy> accuracies = new HashMap<PointKey, Accuracy>();
+
+        Sampler(ConversionSession session) {
+            this.session = session;
+        }
+
+        /**
+         * @return The exact target coordinates, or null if the point cannot
+         *         be converted.
+         */
+        double[] sample(double x, double y) throws Exception {
+            PointKey point = new PointKey(x, y);
+
+            if (cache.containsKey(point)) {
+                return cache.get(point);
+            }
+
+            CoordinateTuple source = geodeticSource ? new GeodeticCoordinates(sourceType, x, y, 0) : new MapProjectionCoordinates(sourceType, x, y);
+            double[] target = null;
+
+            try {
+                ConvertResults result = session.convert(new CoordinateTuple[] { source })[0];
+                String error = result.getCoordinateTuple().getErrorMessage();
+
+                if (error == null || error.trim().isEmpty()) {
+                    target = fromTuple(result.getCoordinateTuple());
+                    accuracies.put(point, result.getAccuracy());
+                }
+            } catch (CoordinateConversionException e) {
+                if (ConversionLog.TRACE_POINTS) {
+                    log.debug("Sample at {}, {} failed: {}", x, y, e.getMessage());
+                }
+            }
+
+            cache.put(point, target);
+            return target;
+        }
+
+        /**
+         * @return The accuracy of a point sampled without failing.
+         */
+        Accuracy accuracy(double x, double y) {
+            return accuracies.get(new PointKey(x, y));
+        }
+    }
+
+    /**
+     * A cell of the grid: either split into four children (south-west,
+     * south-east, north-west, north-east), or a leaf with the node values of
+     * each target component and the accuracies of its corners, or null values
+     * if its points are converted exactly.
+     */
+    private static final class Cell {
+
+        final double x0;
+        final double y0;
+        final double x1;
+        final double y1;
+
+        Cell[] children;
+        double[][] values;
+        Accuracy[] accuracies;
+
+        Cell(double x0, double y0, double x1, double y1) {
+            this.x0 = x0;
+            this.y0 = y0;
+            this.x1 = x1;
+            this.y1 = y1;
+        }
+
+        double x(double u) {
+            return x0 + u * (x1 - x0);
+        }
+
+        double y(double v) {
+            return y0 + v * (y1 - y0);
+        }
+
+        double midX() {
+            return x(0.5);
+        }
+
+        double midY() {
+            return y(0.5);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.MGRSorUSNGCoordinates;
+import geotrans3.coordinates.UPSCoordinates;
+import geotrans3.coordinates.UTMCoordinates;
+
+/**
+ * Orders zoned source coordinates so that all coordinates of a zone are
+ * converted one after the other: UTM by zone and hemisphere, UPS by
+ * hemisphere and MGRS/USNG by grid zone designator. GeoTrans derives the
+ * constants of a zone from the previous coordinate, so bulk input that
+ * interleaves zones makes it re-derive them for almost every coordinate.
+ * <p>
+ * The order is a stable counting sort of the zone keys; the results are
+ * stored at the index of their source coordinate, so the output keeps the
+ * input order, and a failure is reported for the first failing coordinate in
+ * input order, as without the grouping. It is off unless the JVM is started with
+ * -Dgeotrans.bulk.groupByZone=true.
+ */
+final class ZoneGrouping {
+
+    static final String PROPERTY = "geotrans.bulk.groupByZone";
+
+    // Fewer coordinates are converted in input order.
+    static final int MIN_COORDINATES = 64;
+
+    // Zones 0 (polar MGRS) to 60, times 26 band letters, plus one key for
+    // coordinates without a recognizable zone.
+    private static final int LETTERS = 26;
+    private static final int OTHER = 61 * LETTERS;
+    private static final int KEYS = OTHER + 1;
+
+    private ZoneGrouping() {
+    }
+
+    static boolean isEnabled() {
+        return Boolean.getBoolean(PROPERTY);
+    }
+
+    /**
+     * @param tuples
+     *            Source coordinates, all of one coordinate type.
+     * @return The indexes of the coordinates in the order to convert them, or
+     *         null if they are not zoned, too few, or already grouped.
+     */
+    static int[] order(CoordinateTuple[] tuples) {
+        if (tuples.length < MIN_COORDINATES || !isZoned(tuples[0])) {
+            return null;
+        }
+
+        int[] keys = new int[tuples.length];
+        int[] counts = new int[KEYS + 1];
+        int runs = 0;
+        int groups = 0;
+
+        for (int i = 0; i < tuples.length; i++) {
+            keys[i] = key(tuples[i]);
+
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                runs++;
+            }
+            if (counts[keys[i] + 1]++ == 0) {
+                groups++;
+            }
+        }
+
+        if (runs == groups) {
+            return null;
+        }
+
+        for (int k = 1; k <= KEYS; k++) {
+            counts[k] += counts[k - 1];
+        }
+
+        int[] order = new int[tuples.length];
+        for (int i = 0; i < tuples.length; i++) {
+            order[counts[keys[i]]++] = i;
+        }
+        return order;
+    }
+
+    private static boolean isZoned(CoordinateTuple tuple) {
+        return tuple instanceof UTMCoordinates || tuple instanceof UPSCoordinates || tuple instanceof MGRSorUSNGCoordinates;
+    }
+
+    private static int key(CoordinateTuple tuple) {
+        if (tuple instanceof UTMCoordinates) {
+            UTMCoordinates utm = (UTMCoordinates) tuple;
+            long zone = utm.getZone();
+
+            return zone >= 1 && zone <= 60 ? (int) zone * LETTERS + (Character.toUpperCase(utm.getHemisphere()) == 'S' ? 1 : 0) : OTHER;
+        } else if (tuple instanceof UPSCoordinates) {
+            return Character.toUpperCase(((UPSCoordinates) tuple).getHemisphere()) == 'S' ? 1 : 0;
+        } else if (tuple instanceof MGRSorUSNGCoordinates) {
+            return gridZoneKey(((MGRSorUSNGCoordinates) tuple).getCoordinateString());
+        }
+        return OTHER;
+    }
+
+    /**
+     * @return The key of the grid zone designator an MGRS or USNG string
+     *         starts with: a zone of one or two digits, or none for the polar
+     *         zones, then the band letter.
+     */
+    private static int gridZoneKey(String coordinateString) {
+        if (coordinateString == null) {
+            return OTHER;
+        }
+
+        int length = coordinateString.length();
+        int i = 0;
+        int zone = 0;
+
+        while (i < length && coordinateString.charAt(i) == ' ') {
+            i++;
+        }
+        for (int digits = 0; digits < 2 && i < length && Character.isDigit(coordinateString.charAt(i)); digits++, i++) {
+            zone = zone * 10 + (coordinateString.charAt(i) - '0');
+        }
+        while (i < length && coordinateString.charAt(i) == ' ') {
+            i++;
+        }
+
+        if (i == length || zone > 60) {
+            return OTHER;
+        }
+
+        char band = Character.toUpperCase(coordinateString.charAt(i));
+        return band >= 'A' && band <= 'Z' ? zone * LETTERS + (band - 'A') : OTHER;
+    }
+}
@@ -0,0 +1,74 @@
+package mil.nga.ods.geotrans;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks that one doBatchCoordinateTranslation() request gives the same
+ * decimal degrees as translating each DMS string on its own with
+ * doCoordinateTranslation().
+ */
+public class BatchCoordinateTranslationTest {
+
+    private static final int COORDINATES = 400;
+
+    private GeoTransMaster geoTransMaster;
+
+    private String[] coordinateStrings = new String[COORDINATES];
+    private int[] coordinateTypes = new int[COORDINATES];
+
+    @Before
+    public void setUp() {
+        geoTransMaster = new GeoTransMaster();
+
+        for (int i = 0; i < COORDINATES; i++) {
+            // Alternate latitudes and longitudes in DMS and DM notation.
+            int degrees = i % 89;
+            int minutes = (i * 7) % 60;
+            int seconds = (i * 13) % 60;
+
+            if (i % 2 == 0) {
+                coordinateStrings[i] = degrees + " " + minutes + " " + seconds + (i % 4 == 0 ? "N" : "S");
+                coordinateTypes[i] = 0;
+            } else {
+                coordinateStrings[i] = (degrees * 2) + " " + minutes + "." + seconds + (i % 4 == 1 ? "E" : "W");
+                coordinateTypes[i] = 1;
+            }
+        }
+    }
+
+    @Test
+    public void doBatchCoordinateTranslation_ShouldMatchSingleTranslations() throws Exception {
+        JSONObject batchResult = geoTransMaster.doBatchCoordinateTranslation(buildBatchRequest());
+        assertNotNull(batchResult);
+
+        JSONArray batchResults = batchResult.getJSONArray("CoordinateStrings");
+        for (int i = 0; i < COORDINATES; i++) {
+            String singleResult = geoTransMaster.doCoordinateTranslation(buildSingleRequest(i)).getString("CoordinateString");
+
+            assertEquals(coordinateStrings[i], singleResult, batchResults.getString(i));
+        }
+    }
+
+    private String buildSingleRequest(int i) throws Exception {
+        return new JSONObject().put("inputCoordinateString", coordinateStrings[i]).put("inputCoordinateType", String.valueOf(coordinateTypes[i]))
+                .toString();
+    }
+
+    private String buildBatchRequest() throws Exception {
+        JSONArray strings = new JSONArray();
+        JSONArray types = new JSONArray();
+
+        for (int i = 0; i < COORDINATES; i++) {
+            strings.put(coordinateStrings[i]);
+            types.put(String.valueOf(coordinateTypes[i]));
+        }
+        return new JSONObject().put("inputCoordinateStrings", strings).put("inputCoordinateTypes", types).toString();
+    }
+}
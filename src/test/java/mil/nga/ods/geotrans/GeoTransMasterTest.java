@@ -132,6 +132,28 @@ public class GeoTransMasterTest {
         }
     }
 
+    @Test
+    public void getMultiTargetJsonOutput_ShouldReturnJSON() throws Exception {
+        String jsonStr = "";
+        try {
+            jsonStr = FileUtils.readFileToString(new File("test\\inputs\\Test_multi_target.json"));
+            System.out.println("\nJSON input from file:");
+            System.out.println(jsonStr);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        JSONObject jsonResult;
+
+        jsonResult = geoTransMaster.doMultiTargetConversion(jsonStr);
+        assertNotNull(jsonResult);
+
+        if (jsonResult != null) {
+            System.out.println("\ndoMultiTargetConversion output:");
+            System.out.println(jsonResult.toString());
+        }
+    }
+
     /*
      * Commented out, doBulkConversion not working correctly yet.
      * 
@@ -0,0 +1,67 @@
+package mil.nga.ods.geotrans;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that converting UTM coordinates that interleave zones and
+ * hemispheres grouped by zone (-Dgeotrans.bulk.groupByZone) gives the same
+ * results in the same order as converting them in input order.
+ */
+public class ZoneGroupingTest {
+
+    private static final String GROUP_BY_ZONE = "geotrans.bulk.groupByZone";
+
+    private static final int COORDINATES = 256;
+
+    private GeoTransMaster geoTransMaster;
+    private String request;
+
+    @Before
+    public void setUp() throws Exception {
+        geoTransMaster = new GeoTransMaster();
+
+        JSONArray coordinates = new JSONArray();
+
+        for (int i = 0; i < COORDINATES; i++) {
+            // Consecutive coordinates are never in the same zone.
+            coordinates.put(new JSONObject()
+                    .put("sourceZoneData", String.valueOf(1 + (i * 37) % 60))
+                    .put("sourceHemisphere", i % 2 == 0 ? "N" : "S")
+                    .put("sourceEasting", String.valueOf(300000 + i * 1000))
+                    .put("sourceNorthing", String.valueOf(1000000 + i * 20000)));
+        }
+
+        request = new JSONObject()
+                .put("sourceDatum", "WGE")
+                .put("sourceCoordinateType", "34")
+                .put("sourceZone", "false")
+                .put("targetDatum", "WGE")
+                .put("targetCoordinateType", "10")
+                .put("targetHeightType", "0")
+                .put("sourceCoordinates", coordinates)
+                .toString();
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(GROUP_BY_ZONE);
+    }
+
+    @Test
+    public void groupedConversion_ShouldMatchInputOrderConversion() throws Exception {
+        System.setProperty(GROUP_BY_ZONE, "false");
+        String inputOrderResult = geoTransMaster.doConversion(request).toString();
+
+        System.setProperty(GROUP_BY_ZONE, "true");
+        String groupedResult = geoTransMaster.doConversion(request).toString();
+
+        assertEquals(inputOrderResult, groupedResult);
+    }
+}
@@ -0,0 +1,209 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.misc.StringToVal;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Differential fuzz test of CoordinateParser against StringToVal: for random
+ * numbers, degrees, minutes and seconds and garbage, both must either fail or
+ * return exactly the same value.
+ */
+public class CoordinateParserTest {
+
+    private static final int SAMPLES = 200000;
+    private static final long SEED = 20261019L;
+
+    private static final String SEPARATORS = " :/";
+    private static final String NOISE = "0123456789 .-+:/eENSWx\t,";
+
+    private Random random = new Random(SEED);
+
+    private CoordinateParser parser = new CoordinateParser();
+    private StringToVal stringToVal = new StringToVal();
+
+    @Test
+    public void parseDouble_ShouldMatchStringToVal() {
+        for (int i = 0; i < SAMPLES; i++) {
+            String text = randomText();
+            Double expected;
+            Double actual;
+
+            try {
+                expected = stringToVal.stringToDouble(text);
+            } catch (CoordinateConversionException | RuntimeException e) {
+                expected = null;
+            }
+            try {
+                actual = parser.parseDouble(text);
+            } catch (CoordinateConversionException | RuntimeException e) {
+                actual = null;
+            }
+            assertSame("parseDouble(\"" + text + "\")", expected, actual);
+        }
+    }
+
+    @Test
+    public void parseInt_ShouldMatchStringToVal() {
+        for (int i = 0; i < SAMPLES; i++) {
+            String text = random.nextBoolean() ? Integer.toString(random.nextInt() >> random.nextInt(32)) : randomText();
+            Integer expected;
+            Integer actual;
+
+            try {
+                expected = stringToVal.stringToInt(text);
+            } catch (CoordinateConversionException | RuntimeException e) {
+                expected = null;
+            }
+            try {
+                actual = parser.parseInt(text);
+            } catch (CoordinateConversionException | RuntimeException e) {
+                actual = null;
+            }
+            assertEquals("parseInt(\"" + text + "\")", expected, actual);
+        }
+    }
+
+    @Test
+    public void parseLatitude_ShouldMatchStringToVal() {
+        for (int i = 0; i < SAMPLES; i++) {
+            String text = randomDegrees(100, "NS");
+            Double expected;
+            Double actual;
+
+            try {
+                expected = stringToVal.stringToLatitude(text);
+            } catch (CoordinateConversionException | RuntimeException e) {
+                expected = null;
+            }
+            try {
+                actual = parser.parseLatitude(text);
+            } catch (CoordinateConversionException | RuntimeException e) {
+                actual = null;
+            }
+            assertSame("parseLatitude(\"" + text + "\")", expected, actual);
+        }
+    }
+
+    @Test
+    public void parseLongitude_ShouldMatchStringToVal() {
+        for (int i = 0; i < SAMPLES; i++) {
+            String text = randomDegrees(200, "EW");
+            Double expected;
+            Double actual;
+
+            try {
+                expected = stringToVal.stringToLongitude(text);
+            } catch (CoordinateConversionException | RuntimeException e) {
+                expected = null;
+            }
+            try {
+                actual = parser.parseLongitude(text);
+            } catch (CoordinateConversionException | RuntimeException e) {
+                actual = null;
+            }
+            assertSame("parseLongitude(\"" + text + "\")", expected, actual);
+        }
+    }
+
+    /**
+     * Fails unless both are null or both are the same double, bit for bit
+     * apart from NaN payloads.
+     */
+    private static void assertSame(String message, Double expected, Double actual) {
+        if (expected == null || actual == null) {
+            if (expected != actual) {
+                fail(message + ": expected " + expected + " but was " + actual);
+            }
+        } else if (Double.compare(expected, actual) != 0) {
+            fail(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+    private String randomText() {
+        switch (random.nextInt(4)) {
+        case 0:
+            return Double.toString((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 8));
+        case 1:
+            return randomDecimal(random.nextInt(19) + 1, random.nextInt(25));
+        case 2:
+            return randomDegrees(400, "NSEW");
+        default:
+            return randomNoise();
+        }
+    }
+
+    /**
+     * @return Degrees, minutes and seconds, a plain decimal or noise, mostly
+     *         valid but also with out of range parts and mixed separators.
+     */
+    private String randomDegrees(int maxDegrees, String hemispheres) {
+        if (random.nextInt(10) == 0) {
+            return randomNoise();
+        }
+
+        StringBuilder text = new StringBuilder();
+        boolean negative = random.nextInt(4) == 0;
+        char separator = SEPARATORS.charAt(random.nextInt(SEPARATORS.length()));
+        int parts = random.nextInt(3) + 1;
+
+        if (negative) {
+            text.append('-');
+        }
+
+        if (parts == 1) {
+            text.append(randomDecimal(random.nextInt(3) + 1, random.nextInt(12)));
+        } else {
+            text.append(random.nextInt(maxDegrees));
+            text.append(randomSeparator(separator));
+
+            if (parts == 2) {
+                text.append(randomDecimal(random.nextInt(2) + 1, random.nextInt(10)));
+            } else {
+                text.append(random.nextInt(65));
+                text.append(randomSeparator(separator));
+                text.append(randomDecimal(random.nextInt(2) + 1, random.nextInt(10)));
+            }
+        }
+
+        if (random.nextInt(3) == 0) {
+            text.append(hemispheres.charAt(random.nextInt(hemispheres.length())));
+        }
+        return text.toString();
+    }
+
+    private char randomSeparator(char separator) {
+        return random.nextInt(20) == 0 ? SEPARATORS.charAt(random.nextInt(SEPARATORS.length())) : separator;
+    }
+
+    private String randomDecimal(int integerDigits, int fractionDigits) {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < integerDigits; i++) {
+            text.append((char) ('0' + random.nextInt(10)));
+        }
+        if (fractionDigits > 0 || random.nextInt(20) == 0) {
+            text.append('.');
+        }
+        for (int i = 0; i < fractionDigits; i++) {
+            text.append((char) ('0' + random.nextInt(10)));
+        }
+        return text.toString();
+    }
+
+    private String randomNoise() {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(12);
+
+        for (int i = 0; i < length; i++) {
+            text.append(NOISE.charAt(random.nextInt(NOISE.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.exception.CoordinateConversionException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the lookups of GeoidGrid against a small global grid with 30 degree
+ * spacing whose posts follow a plane, so both interpolations must reproduce
+ * the plane exactly, except across the antimeridian.
+ */
+public class GeoidGridTest {
+
+    private static final double SPACING = 30;
+    private static final double TOLERANCE = 1e-4;
+
+    private static Path file;
+    private static GeoidGrid grid;
+
+    @BeforeClass
+    public static void writeGrid() throws IOException {
+        int rows = (int) (180 / SPACING) + 1;
+        int columns = (int) (360 / SPACING) + 1;
+        ByteBuffer data = ByteBuffer.allocate((6 + rows * columns) * 4).order(ByteOrder.BIG_ENDIAN);
+
+        data.putFloat(-90).putFloat(90).putFloat(0).putFloat(360).putFloat((float) SPACING).putFloat((float) SPACING);
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                data.putFloat((float) plane(90 - row * SPACING, column * SPACING));
+            }
+        }
+
+        file = Files.createTempFile("geoid", ".grd");
+        Files.write(file, data.array());
+        grid = new GeoidGrid(file);
+    }
+
+    @AfterClass
+    public static void deleteGrid() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void bilinear_ShouldReproducePlane() throws Exception {
+        for (double latitude = -90; latitude <= 90; latitude += 7.5) {
+            for (double longitude = 0; longitude <= 330; longitude += 11) {
+                assertEquals(plane(latitude, longitude), separation(latitude, longitude, false), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void spline_ShouldReproducePlane() throws Exception {
+        for (double latitude = -90; latitude <= 90; latitude += 7.5) {
+            // The spline window wraps around the antimeridian, where the
+            // plane does not, so stay clear of it.
+            for (double longitude = 60; longitude <= 270; longitude += 11) {
+                assertEquals(plane(latitude, longitude), separation(latitude, longitude, true), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void negativeLongitude_ShouldWrap() throws Exception {
+        assertEquals(separation(10, 300, false), separation(10, -60, false), TOLERANCE);
+        assertEquals(separation(10, 300, true), separation(10, -60, true), TOLERANCE);
+    }
+
+    @Test(expected = CoordinateConversionException.class)
+    public void latitudeOutsideGrid_ShouldFail() throws Exception {
+        separation(91, 0, false);
+    }
+
+    private static double separation(double latitude, double longitude, boolean spline) throws CoordinateConversionException {
+        return grid.separation(Math.toRadians(latitude), Math.toRadians(longitude), spline);
+    }
+
+    private static double plane(double latitude, double longitude) {
+        return 0.25 * latitude - 0.1 * longitude + 5;
+    }
+}
@@ -0,0 +1,148 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.Accuracy;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.GeodeticCoordinates;
+import geotrans3.enumerations.CoordinateType;
+import geotrans3.exception.CoordinateConversionException;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the densification and vertex reuse of GeometryConversion with
+ * sessions that convert geodetic coordinates in Java: a pass-through, whose
+ * edges never need densifying, and a bend that moves every point north with
+ * the square of its longitude, so no edge is ever straight enough.
+ */
+public class GeometryConversionTest {
+
+    private static final double TOLERANCE = 0.001;
+    private static final double BEND = 1000;
+
+    private GeoTransUtility gtUtility;
+
+    @Before
+    public void setUp() throws Exception {
+        gtUtility = new GeoTransUtility(new JSONObject()
+                .put("sourceDatum", "WGE")
+                .put("sourceCoordinateType", "10")
+                .put("sourceHeightType", "0")
+                .put("targetDatum", "WGE")
+                .put("targetCoordinateType", "10")
+                .put("targetHeightType", "0"));
+        gtUtility.initializeForConversion();
+    }
+
+    @Test
+    public void closedRing_ShouldStayClosed() throws Exception {
+        GeometryConversion conversion = new GeometryConversion(new JavaSession(gtUtility, 0), TOLERANCE);
+
+        double[] ring = { 0, 0, 1, 0, 1, 1, 0, 0 };
+        double[][] converted = conversion.convert(new double[][] { ring }, true);
+
+        assertArrayEquals(ring, converted[0], 1e-9);
+        // Three vertices and the midpoints of three edges.
+        assertEquals(6, conversion.getConvertedVertexCount());
+    }
+
+    @Test
+    public void openRing_ShouldDensifyClosingEdge() throws Exception {
+        GeometryConversion conversion = new GeometryConversion(new JavaSession(gtUtility, 0), TOLERANCE);
+
+        double[] ring = { 0, 0, 1, 0, 1, 1 };
+        double[][] converted = conversion.convert(new double[][] { ring }, true);
+
+        assertArrayEquals(ring, converted[0], 1e-9);
+        assertEquals(6, conversion.getConvertedVertexCount());
+    }
+
+    @Test
+    public void line_ShouldNotBeClosed() throws Exception {
+        GeometryConversion conversion = new GeometryConversion(new JavaSession(gtUtility, 0), TOLERANCE);
+
+        double[] line = { 0, 0, 1, 0, 1, 1 };
+        double[][] converted = conversion.convert(new double[][] { line }, false);
+
+        assertArrayEquals(line, converted[0], 1e-9);
+        // Three vertices and the midpoints of two edges.
+        assertEquals(5, conversion.getConvertedVertexCount());
+    }
+
+    @Test
+    public void bentEdge_ShouldStopAtMaxDepth() throws Exception {
+        GeometryConversion conversion = new GeometryConversion(new JavaSession(gtUtility, BEND), TOLERANCE);
+
+        double[][] converted = conversion.convert(new double[][] { { 0, 0, 1, 0 } }, false);
+
+        int inserted = (1 << GeometryConversion.MAX_DEPTH) - 1;
+        assertEquals(inserted, conversion.getInsertedVertexCount());
+        assertEquals(2 * (inserted + 2), converted[0].length);
+    }
+
+    @Test
+    public void sharedVertices_ShouldBeConvertedOnce() throws Exception {
+        GeometryConversion conversion = new GeometryConversion(new JavaSession(gtUtility, 0), TOLERANCE);
+
+        conversion.convert(new double[][] { { 0, 0, 1, 0, 1, 1, 0, 1 } }, true);
+        assertEquals(8, conversion.getConvertedVertexCount());
+        assertEquals(0, conversion.getReusedVertexCount());
+
+        // Shares the vertices 1, 0 and 1, 1 and, in the other direction, the
+        // edge between them.
+        conversion.convert(new double[][] { { 1, 0, 2, 0, 2, 1, 1, 1 } }, true);
+        assertEquals(13, conversion.getConvertedVertexCount());
+        assertEquals(3, conversion.getReusedVertexCount());
+    }
+
+    @Test(expected = CoordinateConversionException.class)
+    public void shortRing_ShouldBeRejectedBeforeConverting() throws Exception {
+        JavaSession session = new JavaSession(gtUtility, 0);
+
+        try {
+            new GeometryConversion(session, TOLERANCE).convert(new double[][] { { 0, 0, 1, 0, 1, 1 }, { 0, 0, 1, 0 } }, true);
+        } finally {
+            assertEquals(0, session.converted);
+        }
+    }
+
+    /**
+     * Returns the source coordinates, moved north by bend times the square of
+     * the longitude.
+     */
+    private static class JavaSession extends ConversionSession {
+
+        private final double bend;
+        int converted;
+
+        JavaSession(GeoTransUtility gtUtility, double bend) throws Exception {
+            super(gtUtility);
+            this.bend = bend;
+        }
+
+        @Override
+        public int getTargetCoordinateType() {
+            return CoordinateType.GEODETIC;
+        }
+
+        @Override
+        public ConvertResults[] convert(CoordinateTuple[] sourceTuples, Accuracy[] sourceAccuracies) throws Exception {
+            ConvertResults[] results = new ConvertResults[sourceTuples.length];
+
+            for (int i = 0; i < sourceTuples.length; i++) {
+                GeodeticCoordinates source = (GeodeticCoordinates) sourceTuples[i];
+                double longitude = source.getLongitude();
+
+                results[i] = new ConvertResults(new GeodeticCoordinates(CoordinateType.GEODETIC, longitude, source.getLatitude() + bend
+                        * longitude * longitude, 0), new Accuracy());
+            }
+            converted += sourceTuples.length;
+            return results;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.Accuracy;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.GeodeticCoordinates;
+import geotrans3.enumerations.CoordinateType;
+import geotrans3.exception.CoordinateConversionException;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the buffer layout of GridConversion with sessions that pass the
+ * source coordinates through, failing at one node, so the records can be
+ * traced back to their nodes.
+ */
+public class GridConversionTest {
+
+    private static final int COLUMNS = 5;
+    private static final int ROWS = 7;
+    private static final int RECORD_BYTES = 24;
+
+    private static final int FAILED_COLUMN = 2;
+    private static final int FAILED_ROW = 3;
+
+    private GeoTransUtility gtUtility;
+    private Map<String, Object> lattice;
+
+    @Before
+    public void setUp() throws Exception {
+        gtUtility = new GeoTransUtility(new JSONObject()
+                .put("sourceDatum", "WGE")
+                .put("sourceCoordinateType", "10")
+                .put("sourceHeightType", "0")
+                .put("targetDatum", "WGE")
+                .put("targetCoordinateType", "10")
+                .put("targetHeightType", "0"));
+        gtUtility.initializeForConversion();
+
+        lattice = new HashMap<String, Object>();
+        lattice.put(GeoTransConstants.ORIGIN_X, "10");
+        lattice.put(GeoTransConstants.ORIGIN_Y, "50");
+        lattice.put(GeoTransConstants.STEP_X, "0.5");
+        lattice.put(GeoTransConstants.STEP_Y, "-0.25");
+        lattice.put(GeoTransConstants.COLUMNS, String.valueOf(COLUMNS));
+        lattice.put(GeoTransConstants.ROWS, String.valueOf(ROWS));
+    }
+
+    @Test
+    public void records_ShouldBeWrittenAtTheirNodeOffsets() throws Exception {
+        ByteBuffer buffer = OffHeapBulkConversion.allocateResultBuffer(COLUMNS * ROWS * RECORD_BYTES + 100);
+
+        GridConversion conversion = newConversion();
+        conversion.run(buffer);
+
+        assertEquals(RECORD_BYTES, conversion.getRecordBytes());
+        assertEquals(0, buffer.position());
+        assertEquals(COLUMNS * ROWS * RECORD_BYTES, buffer.limit());
+
+        for (int row = 0; row < ROWS; row++) {
+            for (int column = 0; column < COLUMNS; column++) {
+                int offset = (row * COLUMNS + column) * RECORD_BYTES;
+
+                if (row == FAILED_ROW && column == FAILED_COLUMN) {
+                    assertEquals(0, buffer.getDouble(offset), 0);
+                    assertEquals(0, buffer.getDouble(offset + 8), 0);
+                } else {
+                    assertEquals(10 + column * 0.5, buffer.getDouble(offset), 1e-9);
+                    assertEquals(50 - row * 0.25, buffer.getDouble(offset + 8), 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void failedNodes_ShouldBeIndexedByRowAndColumn() throws Exception {
+        GridConversion conversion = newConversion();
+        conversion.run(OffHeapBulkConversion.allocateResultBuffer(COLUMNS * ROWS * RECORD_BYTES));
+
+        BitSet expected = new BitSet();
+        expected.set(FAILED_ROW * COLUMNS + FAILED_COLUMN);
+
+        assertEquals(expected, conversion.getFailedNodes());
+    }
+
+    @Test(expected = CoordinateConversionException.class)
+    public void smallBuffer_ShouldBeRejected() throws Exception {
+        newConversion().run(OffHeapBulkConversion.allocateResultBuffer(COLUMNS * ROWS * RECORD_BYTES - 1));
+    }
+
+    private GridConversion newConversion() throws Exception {
+        return new GridConversion(gtUtility, lattice, new GridConversion.Sessions() {
+            @Override
+            public ConversionSession open() throws Exception {
+                return new PassThroughSession(gtUtility);
+            }
+        });
+    }
+
+    /**
+     * Returns the source coordinates as results, and fails like GeoTrans for
+     * the whole call if it includes the failing node.
+     */
+    private static class PassThroughSession extends ConversionSession {
+
+        PassThroughSession(GeoTransUtility gtUtility) throws Exception {
+            super(gtUtility);
+        }
+
+        @Override
+        public int getTargetCoordinateType() {
+            return CoordinateType.GEODETIC;
+        }
+
+        @Override
+        public ConvertResults[] convert(CoordinateTuple[] sourceTuples, Accuracy[] sourceAccuracies) throws Exception {
+            ConvertResults[] results = new ConvertResults[sourceTuples.length];
+
+            for (int i = 0; i < sourceTuples.length; i++) {
+                GeodeticCoordinates source = (GeodeticCoordinates) sourceTuples[i];
+
+                if (Math.abs(Math.toDegrees(source.getLongitude()) - (10 + FAILED_COLUMN * 0.5)) < 1e-9
+                        && Math.abs(Math.toDegrees(source.getLatitude()) - (50 - FAILED_ROW * 0.25)) < 1e-9) {
+                    throw new CoordinateConversionException("Latitude out of range");
+                }
+                results[i] = new ConvertResults(source, new Accuracy());
+            }
+            return results;
+        }
+    }
+}
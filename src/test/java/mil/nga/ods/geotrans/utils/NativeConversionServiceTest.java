@@ -0,0 +1,57 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.enumerations.CoordinateType;
+import geotrans3.enumerations.HeightType;
+import geotrans3.exception.CoordinateConversionException;
+import geotrans3.parameters.CoordinateSystemParameters;
+import geotrans3.parameters.GeodeticParameters;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NativeConversionServiceTest {
+
+    private static final long LEAK_TIMEOUT_MILLIS = 10000;
+
+    private CoordinateSystemParameters geodetic = new GeodeticParameters(CoordinateType.GEODETIC, HeightType.NO_HEIGHT);
+
+    @Test
+    public void close_ShouldReleaseServiceOnce() throws Exception {
+        int live = NativeConversionService.getLiveServices();
+
+        NativeConversionService service = newService();
+        assertEquals(live + 1, NativeConversionService.getLiveServices());
+
+        service.close();
+        service.close();
+        assertEquals(live, NativeConversionService.getLiveServices());
+    }
+
+    @Test(expected = CoordinateConversionException.class)
+    public void closedService_ShouldRejectCalls() throws Exception {
+        NativeConversionService service = newService();
+        service.close();
+
+        service.getDatumLibrary();
+    }
+
+    @Test
+    public void unclosedService_ShouldBeReleasedWhenUnreachable() throws Exception {
+        long leaked = NativeConversionService.getLeakedServices();
+
+        newService();
+
+        long deadline = System.currentTimeMillis() + LEAK_TIMEOUT_MILLIS;
+        while (NativeConversionService.getLeakedServices() == leaked && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertTrue("The unclosed service was not released", NativeConversionService.getLeakedServices() > leaked);
+    }
+
+    private NativeConversionService newService() throws CoordinateConversionException {
+        return new NativeConversionService(GeoTransConstants.WGS84_DATUM_CODE, geodetic, GeoTransConstants.WGS84_DATUM_CODE, geodetic);
+    }
+}
@@ -0,0 +1,145 @@
+package mil.nga.ods.geotrans.utils;
+
+import geotrans3.coordinates.Accuracy;
+import geotrans3.coordinates.ConvertResults;
+import geotrans3.coordinates.CoordinateTuple;
+import geotrans3.coordinates.GeodeticCoordinates;
+import geotrans3.enumerations.CoordinateType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds a transform grid over a session with an affine conversion, which
+ * bilinear interpolation reproduces, and runs a single point request and a
+ * bulk request with the same source and target through it.
+ */
+public class TransformGridTest {
+
+    private TransformGrid grid;
+
+    @Before
+    public void setUp() throws Exception {
+        GeoTransUtility gtUtility = new GeoTransUtility(header());
+        gtUtility.initializeForConversion();
+
+        Map<String, Object> approximation = new HashMap<String, Object>();
+        approximation.put(GeoTransConstants.MIN_X, "10");
+        approximation.put(GeoTransConstants.MIN_Y, "50");
+        approximation.put(GeoTransConstants.MAX_X, "12");
+        approximation.put(GeoTransConstants.MAX_Y, "51");
+        approximation.put(GeoTransConstants.MAX_ERROR, "1");
+
+        grid = TransformGrid.build(new AffineSession(gtUtility), approximation);
+    }
+
+    @Test
+    public void singlePointRequest_ShouldBeInterpolated() throws Exception {
+        GeoTransUtility gtUtility = new GeoTransUtility(header()
+                .put("sourceLongitude", "11.25")
+                .put("sourceLatitude", "50.5")
+                .put("sourceHeight", "0"));
+
+        assertTrue(grid.matches(gtUtility.getHeaderFields()));
+
+        gtUtility.initializeForConversion();
+        assertInterpolated(gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, false)[0]);
+    }
+
+    @Test
+    public void bulkRequest_ShouldBeInterpolatedInsideTheBox() throws Exception {
+        JSONArray coordinates = new JSONArray();
+        coordinates.put(new JSONObject().put("sourceLongitude", "10.1").put("sourceLatitude", "50.9").put("sourceHeight", "0"));
+        coordinates.put(new JSONObject().put("sourceLongitude", "11.7").put("sourceLatitude", "50.2").put("sourceHeight", "0"));
+        coordinates.put(new JSONObject().put("sourceLongitude", "13").put("sourceLatitude", "50.5").put("sourceHeight", "0"));
+
+        GeoTransUtility gtUtility = new GeoTransUtility(header().put("sourceCoordinates", coordinates));
+
+        assertTrue(grid.matches(gtUtility.getHeaderFields()));
+
+        gtUtility.initializeForConversion();
+        CoordinateTuple[] sources = gtUtility.retrieveCoordinates(GeoTransConstants.SOURCE_PREFIX, false);
+
+        assertEquals(3, sources.length);
+        assertInterpolated(sources[0]);
+        assertInterpolated(sources[1]);
+        assertNull(grid.interpolate(sources[2]));
+    }
+
+    @Test
+    public void otherTarget_ShouldNotMatch() throws Exception {
+        GeoTransUtility gtUtility = new GeoTransUtility(header()
+                .put("targetDatum", "NAS-C")
+                .put("sourceLongitude", "11.25")
+                .put("sourceLatitude", "50.5"));
+
+        assertFalse(grid.matches(gtUtility.getHeaderFields()));
+    }
+
+    private void assertInterpolated(CoordinateTuple source) {
+        ConvertResults result = grid.interpolate(source);
+        GeodeticCoordinates expected = AffineSession.convert((GeodeticCoordinates) source);
+        GeodeticCoordinates target = (GeodeticCoordinates) result.getCoordinateTuple();
+
+        assertEquals(expected.getLongitude(), target.getLongitude(), 1e-9);
+        assertEquals(expected.getLatitude(), target.getLatitude(), 1e-9);
+        assertEquals(AffineSession.ce90((GeodeticCoordinates) source), result.getAccuracy().getCE90(), 1e-6);
+        assertEquals(2, result.getAccuracy().getLE90(), 0);
+        assertEquals(-1, result.getAccuracy().getSE90(), 0);
+    }
+
+    private static JSONObject header() throws Exception {
+        return new JSONObject()
+                .put("sourceDatum", "WGE")
+                .put("sourceCoordinateType", "10")
+                .put("sourceHeightType", "0")
+                .put("targetDatum", "WGE")
+                .put("targetCoordinateType", "10")
+                .put("targetHeightType", "0");
+    }
+
+    /**
+     * Shifts the longitude and halves the latitude, with a circular error
+     * that grows to the east and an unknown spherical error.
+     */
+    private static class AffineSession extends ConversionSession {
+
+        AffineSession(GeoTransUtility gtUtility) throws Exception {
+            super(gtUtility);
+        }
+
+        static GeodeticCoordinates convert(GeodeticCoordinates source) {
+            return new GeodeticCoordinates(CoordinateType.GEODETIC, source.getLongitude() + 0.01, source.getLatitude() / 2, 0);
+        }
+
+        static double ce90(GeodeticCoordinates source) {
+            return 1 + 100 * source.getLongitude();
+        }
+
+        @Override
+        public int getTargetCoordinateType() {
+            return CoordinateType.GEODETIC;
+        }
+
+        @Override
+        public ConvertResults[] convert(CoordinateTuple[] sourceTuples, Accuracy[] sourceAccuracies) throws Exception {
+            ConvertResults[] results = new ConvertResults[sourceTuples.length];
+
+            for (int i = 0; i < sourceTuples.length; i++) {
+                GeodeticCoordinates source = (GeodeticCoordinates) sourceTuples[i];
+                results[i] = new ConvertResults(convert(source), new Accuracy(ce90(source), 2, -1));
+            }
+            return results;
+        }
+    }
+}